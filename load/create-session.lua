@@ -0,0 +1,20 @@
+-- wrk script posting a sample session create request, see README "Virtual thread mode"
+wrk.method = "POST"
+wrk.headers["Content-Type"] = "application/json"
+
+local counter = 0
+
+request = function()
+    counter = counter + 1
+    local body = string.format([[{
+  "orderId": "load%d",
+  "country": "GB",
+  "customer": { "number": "load%d" },
+  "payment": { "amount": 19.99, "currency": "GBP", "reference": "load test" },
+  "callback": {
+    "returnUrl": "https://127.0.0.1:8080/payment/success",
+    "cancelUrl": "https://127.0.0.1:8080/payment/cancel"
+  }
+}]], counter, counter)
+    return wrk.format(nil, nil, nil, body)
+end
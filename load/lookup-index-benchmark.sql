@@ -0,0 +1,67 @@
+-- Lookup latency of the repository queries while transaction_log_info grows to 10M rows.
+-- Run against a scratch database migrated by the service (or by flyway), e.g.
+--   psql -h localhost -U postgres -d payment_bench -f load/lookup-index-benchmark.sql
+-- Each stage adds rows and runs the same lookups, latency should stay flat from 100k to 10M.
+
+\timing on
+\set ON_ERROR_STOP on
+
+TRUNCATE transaction_log_info, customer_registration_info RESTART IDENTITY;
+
+-- 1M customers, each order below belongs to one of them
+INSERT INTO customer_registration_info (profile_id, optile_customer_id, optile_customer_password)
+SELECT 'profile-' || g, 'optile-' || g, 'password1'
+  FROM generate_series(1, 1000000) g;
+
+CREATE OR REPLACE FUNCTION bench_fill(from_row BIGINT, to_row BIGINT) RETURNS VOID AS $$
+    -- two sessions per order on average, the second one newer
+    INSERT INTO transaction_log_info (id, transaction_id, timestamp, list_id, order_id, charge_id, customer_registration_info_id)
+    SELECT g,
+           g || '-o' || (g / 2) || '-profile-' || (g % 1000000 + 1),
+           1514764800000 + g * 1000,
+           'list-' || g,
+           'o' || (g / 2),
+           CASE WHEN g % 2 = 1 THEN 'charge-' || g END,
+           g % 1000000 + 1
+      FROM generate_series(from_row, to_row) g;
+$$ LANGUAGE SQL;
+
+CREATE OR REPLACE FUNCTION bench_lookups(max_row BIGINT) RETURNS TABLE (query TEXT, plan TEXT) AS $$
+DECLARE
+    probe BIGINT := max_row / 3;
+BEGIN
+    RETURN QUERY SELECT 'findFirstByOrderIdOrderByTimestampDesc', p
+        FROM bench_explain(format('SELECT * FROM transaction_log_info WHERE order_id = %L ORDER BY timestamp DESC LIMIT 1', 'o' || (probe / 2))) p;
+    RETURN QUERY SELECT 'findFirstByProfileId', p
+        FROM bench_explain(format('SELECT * FROM customer_registration_info WHERE profile_id = %L LIMIT 1', 'profile-' || (probe % 1000000 + 1))) p;
+    RETURN QUERY SELECT 'findByListId', p
+        FROM bench_explain(format('SELECT * FROM transaction_log_info WHERE list_id = %L', 'list-' || probe)) p;
+    RETURN QUERY SELECT 'findByChargeId', p
+        FROM bench_explain(format('SELECT * FROM transaction_log_info WHERE charge_id = %L', 'charge-' || (probe | 1))) p;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION bench_explain(statement TEXT) RETURNS SETOF TEXT AS $$
+BEGIN
+    RETURN QUERY EXECUTE 'EXPLAIN (ANALYZE, BUFFERS, COSTS OFF) ' || statement;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 100k
+SELECT bench_fill(1, 100000);
+ANALYZE transaction_log_info;
+SELECT * FROM bench_lookups(100000);
+
+-- 1M
+SELECT bench_fill(100001, 1000000);
+ANALYZE transaction_log_info;
+SELECT * FROM bench_lookups(1000000);
+
+-- 10M
+SELECT bench_fill(1000001, 10000000);
+ANALYZE transaction_log_info;
+SELECT * FROM bench_lookups(10000000);
+
+DROP FUNCTION bench_lookups(BIGINT);
+DROP FUNCTION bench_explain(TEXT);
+DROP FUNCTION bench_fill(BIGINT, BIGINT);
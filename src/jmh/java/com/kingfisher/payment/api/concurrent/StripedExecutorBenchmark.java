@@ -0,0 +1,73 @@
+package com.kingfisher.payment.api.concurrent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Notification-like tasks (a few microseconds of CPU each) for 1024 charges pushed through a StripedExecutor by one
+ * dispatcher, as NotificationQueue does. Throughput in tasks per millisecond should grow about linearly with the
+ * lanes up to the number of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StripedExecutorBenchmark {
+
+    private static final int TASKS = 10000;
+    private static final int CHARGES = 1024;
+
+    @Param({"1", "2", "4", "8", "16"})
+    private int lanes;
+
+    // CPU work per task in Blackhole.consumeCPU tokens
+    @Param({"2000"})
+    private int work;
+
+    private StripedExecutor executor;
+    private String[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        executor = new StripedExecutor("benchmark", lanes, 1024);
+        keys = new String[CHARGES];
+        for(int charge = 0; charge < CHARGES; charge++) {
+            keys[charge] = "1514764800000-" + charge;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TASKS)
+    public void notifications() throws InterruptedException {
+
+        CountDownLatch done = new CountDownLatch(TASKS);
+        int cost = work;
+
+        for(int task = 0; task < TASKS; task++) {
+            executor.execute(keys[task % CHARGES], () -> {
+                Blackhole.consumeCPU(cost);
+                done.countDown();
+            });
+        }
+
+        done.await();
+    }
+}
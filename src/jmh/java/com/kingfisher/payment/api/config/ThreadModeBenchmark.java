@@ -0,0 +1,198 @@
+package com.kingfisher.payment.api.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kingfisher.payment.api.optile.circuit.OptileCircuitBreakers;
+import com.kingfisher.payment.api.optile.model.NetworkList;
+import com.kingfisher.payment.api.optile.service.OptileOperation;
+import com.kingfisher.payment.api.optile.service.RestTemplateExtension;
+import com.kingfisher.payment.api.validator.ValidatorUtil;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Session creation load in the default platform thread mode against payment.threads.virtual=true: the Optile LIST call
+ * through RestTemplateExtension.executeAsync and the persistence step on paymentTaskExecutor, with the beans of
+ * HttpConfig, AsyncConfig and VirtualThreadConfig built from optile.properties. Optile is a local stub answering after
+ * optileDelay ms. The persistence step holds one of the 10 connections of a default Hikari pool for persistenceTime ms,
+ * inside a monitor as the Postgres driver does, so on JDK 21 a virtual thread pins its carrier while it waits
+ * (pinning=false waits outside the monitor).
+ * The requests are sent by clients concurrent callers. Needs JDK 21 for the virtual mode and is left out of ./gradlew jmh,
+ * run it alone from the jmhJar as the README shows. Peak thread counts and failed requests are printed at the end of each
+ * trial, the results are recorded in the README.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ThreadModeBenchmark {
+
+    private static final int REQUESTS = 2000;
+    private static final int DATABASE_CONNECTIONS = 10;
+    private static final String LIST_RESPONSE = "{\"links\":{\"self\":\"https://api.sandbox.oscato.com/api/lists/5a4f8b1e2d3c4b5a6f7e8d9c\"}," +
+            "\"timestamp\":\"2018-01-15T10:23:45.123+0000\",\"operation\":\"LIST\",\"resultCode\":\"00000.11.000\"," +
+            "\"resultInfo\":\"4 applicable and 0 registered networks are found\",\"returnCode\":{\"name\":\"OK\",\"source\":\"GATEWAY\"}," +
+            "\"status\":{\"code\":\"listed\",\"reason\":\"listed\"},\"interaction\":{\"code\":\"PROCEED\",\"reason\":\"OK\"}," +
+            "\"identification\":{\"longId\":\"5a4f8b1e2d3c4b5a6f7e8d9c\",\"shortId\":\"01234-56789\",\"transactionId\":\"1514764800000-42\"}}";
+
+    @Param({"false", "true"})
+    private boolean virtual;
+
+    @Param({"100", "1000"})
+    private int clients;
+
+    @Param({"50"})
+    private int optileDelay;
+
+    @Param({"5"})
+    private int persistenceTime;
+
+    // false: the wait is not inside a monitor, as with a driver which does not hold one during I/O
+    @Param({"true", "false"})
+    private boolean pinning;
+
+    private HttpServer optile;
+    private ExecutorService optileWorkers;
+    private AnnotationConfigApplicationContext context;
+    private RestTemplateExtension restTemplateExtension;
+    private Executor paymentTaskExecutor;
+    private HttpEntity<String> listRequest;
+
+    private BlockingQueue<Object> connections;
+    private final AtomicInteger failures = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+
+        // as many workers as the http client opens connections, the stub is never the limit
+        optileWorkers = Executors.newFixedThreadPool(200);
+        optile = HttpServer.create(new InetSocketAddress("localhost", 0), 1000);
+        optile.setExecutor(optileWorkers);
+        optile.createContext("/lists", exchange -> {
+            try {
+                Thread.sleep(optileDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = LIST_RESPONSE.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+            exchange.sendResponseHeaders(201, body.length);
+            try(OutputStream response = exchange.getResponseBody()) {
+                response.write(body);
+            }
+        });
+        optile.start();
+
+        context = new AnnotationConfigApplicationContext();
+        // conditions are evaluated against the environment when the configurations are registered
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark",
+                Collections.singletonMap(VirtualThreadConfig.VIRTUAL_THREADS_PROPERTY, String.valueOf(virtual))));
+        context.register(PropertiesConfig.class, JacksonConfig.class, HttpConfig.class, AsyncConfig.class, VirtualThreadConfig.class,
+                LocalValidatorFactoryBean.class, ValidatorUtil.class, OptileCircuitBreakers.class, RestTemplateExtension.class);
+        // auto-configured by Spring Boot in the service
+        context.registerBean(MappingJackson2HttpMessageConverter.class, () -> new MappingJackson2HttpMessageConverter(context.getBean(ObjectMapper.class)));
+        context.refresh();
+
+        restTemplateExtension = context.getBean(RestTemplateExtension.class);
+        ReflectionTestUtils.setField(restTemplateExtension, "baseURL", "http://localhost:" + optile.getAddress().getPort());
+        paymentTaskExecutor = context.getBean(AsyncConfig.PAYMENT_TASK_EXECUTOR, Executor.class);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        listRequest = new HttpEntity<>("{\"transactionId\":\"1514764800000-42\",\"country\":\"GB\"}", headers);
+
+        connections = new ArrayBlockingQueue<>(DATABASE_CONNECTIONS);
+        for(int connection = 0; connection < DATABASE_CONNECTIONS; connection++) {
+            connections.add(new Object());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println("virtual=" + virtual + " clients=" + clients + " pinning=" + pinning
+                + " peak platform threads (200 of the stub included) " + ManagementFactory.getThreadMXBean().getPeakThreadCount()
+                + ", failed requests " + failures.get());
+        context.close();
+        optile.stop(0);
+        optileWorkers.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public void createSession() throws InterruptedException {
+
+        Semaphore callers = new Semaphore(clients);
+        CountDownLatch done = new CountDownLatch(REQUESTS);
+
+        for(int request = 0; request < REQUESTS; request++) {
+            callers.acquire();
+            restTemplateExtension.executeAsync(OptileOperation.LISTS, NetworkList.class, "/lists", HttpMethod.POST, listRequest)
+                    .thenApply(ResponseEntity::getBody)
+                    .thenApplyAsync(this::persist, paymentTaskExecutor)
+                    .whenComplete((list, e) -> {
+                        if(e != null) {
+                            failures.incrementAndGet();
+                        }
+                        callers.release();
+                        done.countDown();
+                    });
+        }
+
+        done.await();
+    }
+
+    private NetworkList persist(NetworkList list) {
+
+        try {
+            Object connection = connections.take();
+            try {
+                if(pinning) {
+                    synchronized (connection) {
+                        Thread.sleep(persistenceTime);
+                    }
+                } else {
+                    Thread.sleep(persistenceTime);
+                }
+            } finally {
+                connections.add(connection);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return list;
+    }
+}
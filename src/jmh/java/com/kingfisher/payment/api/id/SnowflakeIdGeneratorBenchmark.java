@@ -0,0 +1,64 @@
+package com.kingfisher.payment.api.id;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transaction id generation: the Snowflake id and its base 36 form against the "millis-orderId-customer" string and a
+ * random UUID, single threaded and with 8 threads sharing one generator.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SnowflakeIdGeneratorBenchmark {
+
+    private static final String ORDER_ID = "o2314i91";
+    private static final String CUSTOMER_NUMBER = "1011021666";
+
+    private final SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1);
+
+    @Benchmark
+    @Threads(1)
+    public long snowflake() {
+        return generator.nextId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long snowflakeContended() {
+        return generator.nextId();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String snowflakeEncoded() {
+        return TransactionIdGenerator.encode(generator.nextId());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String snowflakeEncodedContended() {
+        return TransactionIdGenerator.encode(generator.nextId());
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String legacyTransactionId() {
+        return DateTime.now().getMillis() + "-" + ORDER_ID + "-" + CUSTOMER_NUMBER;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String randomUuid() {
+        return UUID.randomUUID().toString();
+    }
+}
@@ -0,0 +1,96 @@
+package com.kingfisher.payment.api.mapper;
+
+import com.kingfisher.payment.api.model.ListRequestDTO;
+import com.kingfisher.payment.api.optile.model.Callback;
+import com.kingfisher.payment.api.optile.model.Customer;
+import com.kingfisher.payment.api.optile.model.Payment;
+import com.kingfisher.payment.api.optile.model.Product;
+import com.kingfisher.payment.api.optile.model.Transaction;
+import org.dozer.DozerBeanMapper;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generated TransactionMapper against the DozerBeanMapper it replaced. The single shot benchmarks measure the first
+ * call on a fresh mapper, which is what every request paid right after a deploy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TransactionMapperBenchmark {
+
+    @Param({"1", "50"})
+    private int products;
+
+    private ListRequestDTO request;
+    private DozerBeanMapper dozerBeanMapper;
+    private TransactionMapper transactionMapper;
+
+    @Setup
+    public void setUp() {
+        request = new ListRequestDTO();
+        request.setOrderId("o2314i91");
+        request.setCountry("GB");
+
+        Customer customer = new Customer();
+        customer.setNumber("1011021666");
+        request.setCustomer(customer);
+
+        Payment payment = new Payment();
+        payment.setAmount(19.99);
+        payment.setCurrency("GBP");
+        payment.setReference("B&Q UK 22-11-2017");
+        request.setPayment(payment);
+
+        Callback callback = new Callback();
+        callback.setReturnUrl("https://127.0.0.1:8080/payment/success");
+        callback.setCancelUrl("https://127.0.0.1:8080/payment/cancel");
+        request.setCallback(callback);
+
+        for(int i = 0; i < products; i++) {
+            Product product = new Product();
+            product.setCode("SKU" + i);
+            product.setName("Product " + i);
+            product.setAmount(1.99);
+            product.setQuantity(1);
+            request.addProductsItem(product);
+        }
+
+        dozerBeanMapper = new DozerBeanMapper();
+        dozerBeanMapper.map(request, Transaction.class);
+        transactionMapper = Mappers.getMapper(TransactionMapper.class);
+    }
+
+    @Benchmark
+    public Transaction dozer() {
+        return dozerBeanMapper.map(request, Transaction.class);
+    }
+
+    @Benchmark
+    public Transaction generated() {
+        return transactionMapper.toTransaction(request);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Transaction dozerFirstCall() {
+        return new DozerBeanMapper().map(request, Transaction.class);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Transaction generatedFirstCall() {
+        return Mappers.getMapper(TransactionMapper.class).toTransaction(request);
+    }
+}
@@ -0,0 +1,156 @@
+package com.kingfisher.payment.api.notification;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.MethodParameter;
+import org.springframework.format.datetime.joda.JodaTimeFormatterRegistrar;
+import org.springframework.format.support.DefaultFormattingConversionService;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.support.ConfigurableWebBindingInitializer;
+import org.springframework.web.bind.support.DefaultDataBinderFactory;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.annotation.RequestParamMethodArgumentResolver;
+
+import java.lang.reflect.Method;
+import java.net.URLDecoder;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binding an Optile notification with NotificationEventArgumentResolver against the 28 @RequestParam values the
+ * controller was bound from before, each resolved and converted by RequestParamMethodArgumentResolver. The
+ * @RequestParam side leaves out the resolver lookup per parameter Spring does on top, so it is rather too fast.
+ * Run with the gc profiler to see the allocation per notification.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NotificationBindingBenchmark {
+
+    private static final String QUERY = "transactionId=1514764800000-42&longId=5a4f8b1e2d3c4b5a6f7e8d9c&shortId=01234-56789" +
+            "&entity=payment&statusCode=charged&reasonCode=debited&interactionCode=PROCEED&interactionReason=OK" +
+            "&resultCode=00000.11.000&resultInfo=Approved+by+PSP&notificationId=1234567890" +
+            "&timestamp=2018-01-15T10%3A23%3A45.123%2B01%3A00&previousStatusCode=pending&previousReasonCode=debit_requested" +
+            "&returnCodeName=OK&returnCodeSource=GATEWAY&pspCode=WORLDPAY&network=VISA&amount=19.99&currency=GBP" +
+            "&reference=Order+o2314i91";
+
+    private ServletWebRequest webRequest;
+
+    private RequestParamMethodArgumentResolver requestParamResolver;
+    private DefaultDataBinderFactory binderFactory;
+    private MethodParameter[] requestParams;
+
+    private NotificationEventArgumentResolver notificationEventResolver;
+    private MethodParameter notificationEventParam;
+
+    @Setup
+    public void setUp() throws Exception {
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/notification");
+        request.setQueryString(QUERY);
+        // what the servlet container parses for request.getParameter
+        for(String pair : QUERY.split("&")) {
+            String[] nameAndValue = pair.split("=", 2);
+            request.addParameter(nameAndValue[0], URLDecoder.decode(nameAndValue[1], "UTF-8"));
+        }
+        webRequest = new ServletWebRequest(request);
+
+        // ISO, as Optile sends it; the conversion service otherwise expects a locale specific short format
+        DefaultFormattingConversionService conversionService = new DefaultFormattingConversionService(false);
+        JodaTimeFormatterRegistrar jodaTimeFormatterRegistrar = new JodaTimeFormatterRegistrar();
+        jodaTimeFormatterRegistrar.setUseIsoFormat(true);
+        jodaTimeFormatterRegistrar.registerFormatters(conversionService);
+
+        ConfigurableWebBindingInitializer initializer = new ConfigurableWebBindingInitializer();
+        initializer.setConversionService(conversionService);
+        binderFactory = new DefaultDataBinderFactory(initializer);
+        requestParamResolver = new RequestParamMethodArgumentResolver(false);
+
+        // the class itself, JMH runs a generated subclass
+        Method requestParamMethod = Arrays.stream(NotificationBindingBenchmark.class.getDeclaredMethods())
+                .filter(method -> method.getName().equals("requestParamSignature"))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+        requestParams = new MethodParameter[requestParamMethod.getParameterCount()];
+        for(int index = 0; index < requestParams.length; index++) {
+            requestParams[index] = new MethodParameter(requestParamMethod, index);
+            requestParams[index].initParameterNameDiscovery(new DefaultParameterNameDiscoverer());
+        }
+
+        notificationEventResolver = new NotificationEventArgumentResolver();
+        notificationEventParam = new MethodParameter(
+                NotificationBindingBenchmark.class.getDeclaredMethod("notificationEventSignature", NotificationEvent.class), 0);
+    }
+
+    @Benchmark
+    public NotificationEvent requestParams() throws Exception {
+
+        Object[] arguments = new Object[requestParams.length];
+        for(int index = 0; index < requestParams.length; index++) {
+            arguments[index] = requestParamResolver.resolveArgument(requestParams[index], null, webRequest, binderFactory);
+        }
+
+        // as the controller built it
+        NotificationEvent event = new NotificationEvent();
+        event.setTransactionId((String) arguments[0]);
+        event.setLongId((String) arguments[1]);
+        event.setEntity((String) arguments[3]);
+        event.setStatusCode((String) arguments[4]);
+        event.setReasonCode((String) arguments[5]);
+        event.setInteractionCode((String) arguments[6]);
+        event.setResultCode((String) arguments[8]);
+        event.setNotificationId((String) arguments[10]);
+        event.setTimestamp(((DateTime) arguments[11]).getMillis());
+        event.setPreviousStatusCode((String) arguments[12]);
+        event.setPreviousReasonCode((String) arguments[13]);
+        return event;
+    }
+
+    @Benchmark
+    public Object notificationEventResolver() throws Exception {
+        return notificationEventResolver.resolveArgument(notificationEventParam, null, webRequest, null);
+    }
+
+    @SuppressWarnings("unused")
+    private void requestParamSignature(@RequestParam String transactionId,
+                                       @RequestParam String longId,
+                                       @RequestParam String shortId,
+                                       @RequestParam String entity,
+                                       @RequestParam String statusCode,
+                                       @RequestParam String reasonCode,
+                                       @RequestParam String interactionCode,
+                                       @RequestParam String interactionReason,
+                                       @RequestParam String resultCode,
+                                       @RequestParam String resultInfo,
+                                       @RequestParam String notificationId,
+                                       @RequestParam DateTime timestamp,
+                                       @RequestParam String previousStatusCode,
+                                       @RequestParam String previousReasonCode,
+                                       @RequestParam(required = false) String returnCodeName,
+                                       @RequestParam(required = false) String returnCodeSource,
+                                       @RequestParam(required = false) String pspCode,
+                                       @RequestParam(required = false) String institutionCode,
+                                       @RequestParam(required = false) String customerRegistrationId,
+                                       @RequestParam(required = false) String customerRegistrationPassword,
+                                       @RequestParam(required = false) String hasRecurringAccount,
+                                       @RequestParam(required = false) String network,
+                                       @RequestParam(required = false) Double amount,
+                                       @RequestParam(required = false) String currency,
+                                       @RequestParam(required = false) String reference,
+                                       @RequestParam(required = false) DateTime retryAfter,
+                                       @RequestParam(required = false) DateTime autoRetryAfter,
+                                       @RequestParam(required = false) Integer rejectionCount) {
+    }
+
+    @SuppressWarnings("unused")
+    private void notificationEventSignature(NotificationEvent event) {
+    }
+}
@@ -1,21 +1,10 @@
 package com.kingfisher.payment.api;
 
-import com.kingfisher.payment.api.config.*;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.context.annotation.Import;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
-import springfox.documentation.swagger2.annotations.EnableSwagger2;
 
 @SpringBootApplication
-@Import({
-        HttpConfig.class,
-        PropertiesConfig.class,
-        ApiDocumentationConfiguration.class,
-        JacksonConfig.class,
-        DozerConfig.class
-})
-@EnableSwagger2
 @EnableTransactionManagement
 public class PaymentServiceApp {
 
@@ -0,0 +1,97 @@
+package com.kingfisher.payment.api.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue for many producers and a single consumer, an array ring in which every slot carries a
+ * sequence telling whose turn it is (D. Vyukov's bounded queue). Producers claim a slot with one CAS on the tail and
+ * publish the element with an ordered write of the slot sequence; the consumer needs no CAS at all.
+ */
+public class BoundedMpscQueue<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    // slot i is free for the producer of position p when sequence == p, readable when sequence == p + 1
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    // written by the consumer only, read by size()
+    private volatile long head;
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public BoundedMpscQueue(int capacity) {
+
+        if(capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity out of range: " + capacity);
+        }
+
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        mask = size - 1;
+        elements = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for(int slot = 0; slot < size; slot++) {
+            sequences.set(slot, slot);
+        }
+    }
+
+    /**
+     * @return false when the queue is full
+     */
+    public boolean offer(E element) {
+
+        if(element == null) {
+            throw new NullPointerException();
+        }
+
+        while(true) {
+            long position = tail.get();
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - position;
+
+            if(difference == 0) {
+                if(tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(slot, element);
+                    sequences.lazySet(slot, position + 1);
+                    return true;
+                }
+            } else if(difference < 0) {
+                // the slot still holds the element of the previous round
+                return false;
+            }
+            // another producer took the position, retry with the new tail
+        }
+    }
+
+    /**
+     * Consumer thread only.
+     *
+     * @return null when the queue is empty
+     */
+    public E poll() {
+
+        long position = head;
+        int slot = (int) position & mask;
+
+        if(sequences.get(slot) != position + 1) {
+            return null;
+        }
+
+        E element = elements.get(slot);
+        elements.lazySet(slot, null);
+        sequences.lazySet(slot, position + mask + 1);
+        head = position + 1;
+
+        return element;
+    }
+
+    public int size() {
+        return (int) Math.max(0, Math.min(tail.get() - head, capacity()));
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
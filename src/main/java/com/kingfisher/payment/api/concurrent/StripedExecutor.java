@@ -0,0 +1,183 @@
+package com.kingfisher.payment.api.concurrent;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Executes tasks on a fixed number of lanes, each a single thread draining its own bounded lock-free queue. Tasks
+ * with equal keys always run on the same lane, one after the other in submission order, so state per key needs no
+ * locking when it is only touched by tasks of that key; different keys spread over all lanes and run in parallel.
+ */
+public class StripedExecutor implements MeterBinder {
+
+    // an idle lane rechecks its queue at least this often, in case a wakeup raced with going to sleep
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final String name;
+    private final Lane[] lanes;
+    private final AtomicLong fullWaits = new AtomicLong();
+    private volatile boolean running = true;
+
+    public StripedExecutor(String name, int laneCount, int laneCapacity) {
+
+        if(laneCount < 1) {
+            throw new IllegalArgumentException("At least one lane required");
+        }
+
+        this.name = name;
+        this.lanes = new Lane[laneCount];
+        for(int lane = 0; lane < laneCount; lane++) {
+            lanes[lane] = new Lane(name + "-" + lane, laneCapacity);
+            lanes[lane].thread.start();
+        }
+    }
+
+    public int laneCount() {
+        return lanes.length;
+    }
+
+    public int laneOf(Object key) {
+        int hash = key.hashCode();
+        // spread the high bits, Strings of similar ids differ mostly in their last characters
+        return Math.floorMod(hash ^ (hash >>> 16), lanes.length);
+    }
+
+    /**
+     * @return false when the key's lane is full
+     */
+    public boolean tryExecute(Object key, Runnable task) {
+        checkRunning();
+        return lanes[laneOf(key)].offer(task);
+    }
+
+    /**
+     * Waits for room in the key's lane, the backpressure a full lane puts on the submitter.
+     */
+    public void execute(Object key, Runnable task) throws InterruptedException {
+
+        Lane lane = lanes[laneOf(key)];
+
+        while(!lane.offer(task)) {
+            checkRunning();
+            if(Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            fullWaits.incrementAndGet();
+            LockSupport.parkNanos(this, FULL_PARK_NANOS);
+        }
+    }
+
+    public int backlog(int lane) {
+        return lanes[lane].queue.size();
+    }
+
+    /**
+     * Lanes finish the tasks already queued and stop.
+     */
+    public void shutdown() {
+        running = false;
+        for(Lane lane : lanes) {
+            LockSupport.unpark(lane.thread);
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        for(Lane lane : lanes) {
+            long remaining = deadline - System.nanoTime();
+            if(remaining > 0) {
+                TimeUnit.NANOSECONDS.timedJoin(lane.thread, remaining);
+            }
+            if(lane.thread.isAlive()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for(int lane = 0; lane < lanes.length; lane++) {
+            int index = lane;
+            Gauge.builder(name + ".lane.backlog", this, executor -> executor.backlog(index))
+                    .description("Tasks queued on the lane")
+                    .tag("lane", String.valueOf(lane))
+                    .register(registry);
+        }
+        FunctionCounter.builder(name + ".lane.full", fullWaits, AtomicLong::get)
+                .description("Times a submitter waited for room in a full lane")
+                .register(registry);
+    }
+
+    private void checkRunning() {
+        if(!running) {
+            throw new RejectedExecutionException(name + " is shut down");
+        }
+    }
+
+    private class Lane implements Runnable {
+
+        private final BoundedMpscQueue<Runnable> queue;
+        private final Thread thread;
+        private volatile boolean idle;
+
+        private Lane(String threadName, int capacity) {
+            this.queue = new BoundedMpscQueue<>(capacity);
+            this.thread = new Thread(this, threadName);
+            this.thread.setDaemon(true);
+        }
+
+        boolean offer(Runnable task) {
+
+            if(!queue.offer(task)) {
+                return false;
+            }
+
+            if(idle) {
+                LockSupport.unpark(thread);
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+
+            while(true) {
+                Runnable task = queue.poll();
+
+                if(task == null) {
+                    if(!running) {
+                        return;
+                    }
+                    idle = true;
+                    if(queue.size() == 0) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    idle = false;
+                    continue;
+                }
+
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.error("Task on {} failed", thread.getName(), e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.kingfisher.payment.api.config;
+
+import com.kingfisher.payment.api.metrics.RequestEndpoint;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+
+@Configuration
+public class AsyncConfig {
+
+    public static final String PAYMENT_TASK_EXECUTOR = "paymentTaskExecutor";
+
+    @Value("${payment.executor.core-pool-size}")
+    private int corePoolSize;
+    @Value("${payment.executor.max-pool-size}")
+    private int maxPoolSize;
+    @Value("${payment.executor.queue-capacity}")
+    private int queueCapacity;
+
+    // runs the persistence steps which follow an Optile response, so they never block the http client I/O threads
+    @Bean(name = PAYMENT_TASK_EXECUTOR)
+    @ConditionalOnProperty(name = VirtualThreadConfig.VIRTUAL_THREADS_PROPERTY, havingValue = "false", matchIfMissing = true)
+    public Executor paymentTaskExecutor() {
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("payment-");
+        executor.setTaskDecorator(RequestEndpoint::propagate);
+        executor.initialize();
+
+        return executor;
+    }
+}
@@ -0,0 +1,105 @@
+package com.kingfisher.payment.api.config;
+
+import com.kingfisher.payment.api.database.routing.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.beans.factory.support.GenericBeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+// replicas share the credentials and the spring.datasource.hikari settings of the primary, only their urls differ
+@Configuration
+@ConditionalOnProperty(DataSourceRoutingConfig.REPLICA_URLS_PROPERTY)
+public class DataSourceRoutingConfig {
+
+    public static final String REPLICA_URLS_PROPERTY = "payment.datasource.replica.urls";
+    public static final String PRIMARY_DATA_SOURCE = "primaryDataSource";
+    public static final String REPLICA_DATA_SOURCE = "replicaDataSource";
+
+    private static final String HIKARI_PROPERTIES = "spring.datasource.hikari";
+
+    @Bean(name = PRIMARY_DATA_SOURCE, destroyMethod = "close")
+    @ConfigurationProperties(HIKARI_PROPERTIES)
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    // a pool bean per url, replicaDataSource0, replicaDataSource1, ...; static, it registers bean definitions
+    @Bean
+    public static BeanDefinitionRegistryPostProcessor replicaDataSourceRegistrar(Environment environment) {
+        return new BeanDefinitionRegistryPostProcessor() {
+            @Override
+            public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) {
+
+                String[] urls = replicaUrls(environment);
+                BeanFactory beanFactory = (BeanFactory) registry;
+
+                for(int replica = 0; replica < urls.length; replica++) {
+                    String url = urls[replica];
+                    GenericBeanDefinition definition = new GenericBeanDefinition();
+                    definition.setBeanClass(HikariDataSource.class);
+                    String name = REPLICA_DATA_SOURCE + replica;
+                    definition.setInstanceSupplier(() -> replicaDataSource(beanFactory.getBean(DataSourceProperties.class), environment, name, url));
+                    definition.setDestroyMethodName("close");
+                    registry.registerBeanDefinition(name, definition);
+                }
+            }
+
+            @Override
+            public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+            }
+        };
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Autowired @Qualifier(PRIMARY_DATA_SOURCE) DataSource primary, BeanFactory beanFactory,
+                                 Environment environment) {
+
+        List<DataSource> replicas = new ArrayList<>();
+        for(int replica = 0; replica < replicaUrls(environment).length; replica++) {
+            replicas.add(beanFactory.getBean(REPLICA_DATA_SOURCE + replica, DataSource.class));
+        }
+
+        return new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(primary, replicas));
+    }
+
+    // bound like @ConfigurationProperties binds the primary, which is not applied to a bean registered this way; url and
+    // pool name are set afterwards, a spring.datasource.hikari.jdbc-url or pool-name is meant for the primary
+    private static HikariDataSource replicaDataSource(DataSourceProperties properties, Environment environment, String name, String url) {
+
+        HikariDataSource replica = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind(HIKARI_PROPERTIES, Bindable.ofInstance(replica));
+        replica.setJdbcUrl(url);
+        replica.setPoolName(name);
+
+        return replica;
+    }
+
+    private static String[] replicaUrls(Environment environment) {
+
+        String[] urls = environment.getRequiredProperty(REPLICA_URLS_PROPERTY, String[].class);
+        for(int replica = 0; replica < urls.length; replica++) {
+            urls[replica] = urls[replica].trim();
+        }
+
+        return urls;
+    }
+}
@@ -1,15 +0,0 @@
-package com.kingfisher.payment.api.config;
-
-import org.dozer.DozerBeanMapper;
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-
-@Configuration
-public class DozerConfig {
-
-    @Bean()
-    public DozerBeanMapper dozerBean() {
-        return new DozerBeanMapper();
-    }
-}
-
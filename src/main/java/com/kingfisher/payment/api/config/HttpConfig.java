@@ -1,17 +1,44 @@
 package com.kingfisher.payment.api.config;
 
 import com.kingfisher.payment.api.optile.error.RestTemplateErrorHandler;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.ssl.SSLContexts;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.AsyncClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsAsyncClientHttpRequestFactory;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.client.AsyncRestTemplate;
 import org.springframework.web.client.ResponseErrorHandler;
 import org.springframework.web.client.RestTemplate;
 
+import javax.net.ssl.SSLContext;
+import java.security.GeneralSecurityException;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Configuration
@@ -23,12 +50,124 @@ public class HttpConfig {
     private int connectionTimeout;
     @Value("${http.resttemplate.connection.read-timeout}")
     private int readTimeout;
+    @Value("${http.connection.pool.max-total}")
+    private int maxTotalConnections;
+    @Value("${http.connection.pool.max-per-route}")
+    private int maxConnectionsPerRoute;
+    @Value("${http.connection.pool.validate-after-inactivity}")
+    private int validateAfterInactivity;
+    @Value("${http.connection.pool.keep-alive}")
+    private long keepAlive;
+    @Value("${http.connection.pool.idle-timeout}")
+    private long idleTimeout;
+    @Value("${http.connection.pool.eviction-interval}")
+    private long evictionInterval;
+    @Value("${http.connection.ssl.session-cache-size}")
+    private int sslSessionCacheSize;
+    @Value("${http.connection.ssl.session-timeout}")
+    private int sslSessionTimeout;
+    @Value("${http.async.io-threads}")
+    private int ioThreads;
+
+    // single SSLContext for both pools, so TLS sessions are resumed instead of renegotiated per connection
+    @Bean
+    public SSLContext optileSslContext() throws GeneralSecurityException {
+        SSLContext sslContext = SSLContexts.custom().build();
+        sslContext.getClientSessionContext().setSessionCacheSize(sslSessionCacheSize);
+        sslContext.getClientSessionContext().setSessionTimeout(sslSessionTimeout);
+        return sslContext;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public PoolingHttpClientConnectionManager optileConnectionManager(@Autowired SSLContext sslContext) {
+
+        Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new SSLConnectionSocketFactory(sslContext, SSLConnectionSocketFactory.getDefaultHostnameVerifier()))
+                .build();
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+        connectionManager.setMaxTotal(maxTotalConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        connectionManager.setValidateAfterInactivity(validateAfterInactivity);
+
+        return connectionManager;
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
+    public IdleConnectionEvictor optileIdleConnectionEvictor(@Autowired PoolingHttpClientConnectionManager connectionManager) {
+        return new IdleConnectionEvictor(connectionManager, evictionInterval, TimeUnit.MILLISECONDS, idleTimeout, TimeUnit.MILLISECONDS);
+    }
 
     @Bean
-    public HttpComponentsClientHttpRequestFactory customHttpRequestFactory() {
+    public ConnectionKeepAliveStrategy optileKeepAliveStrategy() {
+        return (response, context) -> {
+            long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAlive) : keepAlive;
+        };
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient optileHttpClient(@Autowired PoolingHttpClientConnectionManager connectionManager,
+                                                @Autowired ConnectionKeepAliveStrategy keepAliveStrategy) {
+        return HttpClients.custom()
+                .useSystemProperties()
+                .setConnectionManager(connectionManager)
+                .setConnectionManagerShared(true)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .disableConnectionState()
+                .build();
+    }
 
-        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory();
+    @Bean(destroyMethod = "shutdown")
+    public PoolingNHttpClientConnectionManager optileAsyncConnectionManager(@Autowired SSLContext sslContext) throws IOReactorException {
 
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(ioThreads)
+                .setConnectTimeout(connectionTimeout)
+                .setSoTimeout(readTimeout)
+                .build();
+
+        Registry<SchemeIOSessionStrategy> sessionStrategyRegistry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                .register("http", NoopIOSessionStrategy.INSTANCE)
+                .register("https", new SSLIOSessionStrategy(sslContext, SSLIOSessionStrategy.getDefaultHostnameVerifier()))
+                .build();
+
+        PoolingNHttpClientConnectionManager connectionManager = new PoolingNHttpClientConnectionManager(
+                new DefaultConnectingIOReactor(ioReactorConfig), sessionStrategyRegistry);
+        connectionManager.setMaxTotal(maxTotalConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+
+        return connectionManager;
+    }
+
+    // not shared: the async client only runs the I/O reactor of a connection manager it owns, a shared one is never
+    // started and no request completes
+    @Bean
+    public CloseableHttpAsyncClient optileHttpAsyncClient(@Autowired PoolingNHttpClientConnectionManager connectionManager,
+                                                          @Autowired ConnectionKeepAliveStrategy keepAliveStrategy) {
+        return HttpAsyncClients.custom()
+                .useSystemProperties()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .disableConnectionState()
+                .build();
+    }
+
+    @Bean
+    public HttpConnectionPoolMetrics optileConnectionPoolMetrics(@Autowired PoolingHttpClientConnectionManager connectionManager) {
+        return new HttpConnectionPoolMetrics(connectionManager, "optile");
+    }
+
+    @Bean
+    public HttpConnectionPoolMetrics optileAsyncConnectionPoolMetrics(@Autowired PoolingNHttpClientConnectionManager connectionManager) {
+        return new HttpConnectionPoolMetrics(connectionManager, "optile-async");
+    }
+
+    @Bean
+    public HttpComponentsClientHttpRequestFactory customHttpRequestFactory(@Autowired CloseableHttpClient httpClient) {
+
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
 
         requestFactory.setConnectionRequestTimeout(connectionRequestTimeout);
         requestFactory.setConnectTimeout(connectionTimeout);
@@ -58,6 +197,33 @@ public class HttpConfig {
         return template;
     }
 
+    // the factory starts the async client on init and closes it on destroy; declared by its interface, it extends the
+    // blocking factory and would make customRestTemplate's parameter ambiguous
+    @Bean
+    public AsyncClientHttpRequestFactory customAsyncHttpRequestFactory(@Autowired CloseableHttpAsyncClient httpAsyncClient) {
+
+        HttpComponentsAsyncClientHttpRequestFactory requestFactory = new HttpComponentsAsyncClientHttpRequestFactory(httpAsyncClient);
+
+        requestFactory.setConnectionRequestTimeout(connectionRequestTimeout);
+        requestFactory.setConnectTimeout(connectionTimeout);
+        requestFactory.setReadTimeout(readTimeout);
+
+        return requestFactory;
+    }
+
+    @Bean
+    @SuppressWarnings("deprecation")
+    public AsyncRestTemplate customAsyncRestTemplate(@Autowired AsyncClientHttpRequestFactory asyncHttpRequestFactory,
+                                                     @Autowired RestTemplate customRestTemplate,
+                                                     @Autowired ResponseErrorHandler errorHandler) {
+
+        AsyncRestTemplate template = new AsyncRestTemplate(asyncHttpRequestFactory);
+        template.setErrorHandler(errorHandler);
+        template.setMessageConverters(customRestTemplate.getMessageConverters());
+
+        return template;
+    }
+
     @Bean
     public ResponseErrorHandler genericErrorHandler() {
         return new RestTemplateErrorHandler();
@@ -0,0 +1,39 @@
+package com.kingfisher.payment.api.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPoolControl;
+
+/**
+ * Publishes leased/pending/available/max gauges of an http client connection pool, visible under /actuator/metrics.
+ */
+public class HttpConnectionPoolMetrics implements MeterBinder {
+
+    private static final String METRIC_NAME = "http.client.pool.connections";
+
+    private final ConnPoolControl<HttpRoute> connectionManager;
+    private final String poolName;
+
+    public HttpConnectionPoolMetrics(ConnPoolControl<HttpRoute> connectionManager, String poolName) {
+        this.connectionManager = connectionManager;
+        this.poolName = poolName;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder(METRIC_NAME, connectionManager, cm -> cm.getTotalStats().getLeased())
+                .tags("pool", poolName, "state", "leased")
+                .register(registry);
+        Gauge.builder(METRIC_NAME, connectionManager, cm -> cm.getTotalStats().getPending())
+                .tags("pool", poolName, "state", "pending")
+                .register(registry);
+        Gauge.builder(METRIC_NAME, connectionManager, cm -> cm.getTotalStats().getAvailable())
+                .tags("pool", poolName, "state", "available")
+                .register(registry);
+        Gauge.builder(METRIC_NAME, connectionManager, cm -> cm.getTotalStats().getMax())
+                .tags("pool", poolName, "state", "max")
+                .register(registry);
+    }
+}
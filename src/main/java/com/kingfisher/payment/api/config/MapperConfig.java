@@ -0,0 +1,15 @@
+package com.kingfisher.payment.api.config;
+
+import com.kingfisher.payment.api.mapper.TransactionMapper;
+import org.mapstruct.factory.Mappers;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MapperConfig {
+
+    @Bean()
+    public TransactionMapper transactionMapper() {
+        return Mappers.getMapper(TransactionMapper.class);
+    }
+}
@@ -0,0 +1,63 @@
+package com.kingfisher.payment.api.config;
+
+import com.kingfisher.payment.api.metrics.ConnectionHoldTimeDataSource;
+import com.kingfisher.payment.api.metrics.RequestEndpointInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.SmartInstantiationAwareBeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Configuration
+public class PersistenceMetricsConfig {
+
+    // static, the post processor is created before the rest of the context; the registry is only looked up on first use.
+    // Only the pools are wrapped: a proxy or router in front of them (replica routing) hands out their connections, and
+    // a lazy proxy takes its connection on the first statement, not when the transaction takes it. A pool referenced
+    // while it is still being created (the data source initializer resolving the routing data source) is wrapped at
+    // that point, so the early reference and the bean are the same wrapper
+    @Bean
+    public static BeanPostProcessor connectionHoldTimeDataSourcePostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new SmartInstantiationAwareBeanPostProcessor() {
+
+            private final Set<String> earlyWrapped = ConcurrentHashMap.newKeySet();
+
+            @Override
+            public Object getEarlyBeanReference(Object bean, String beanName) {
+                earlyWrapped.add(beanName);
+                return wrap(bean);
+            }
+
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return earlyWrapped.remove(beanName) ? bean : wrap(bean);
+            }
+
+            private Object wrap(Object bean) {
+                if(bean instanceof DataSource && !(bean instanceof DelegatingDataSource) && !(bean instanceof AbstractRoutingDataSource)) {
+                    return new ConnectionHoldTimeDataSource((DataSource) bean, meterRegistry::getIfAvailable);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public WebMvcConfigurer requestEndpointConfigurer() {
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(new RequestEndpointInterceptor());
+            }
+        };
+    }
+}
@@ -0,0 +1,80 @@
+package com.kingfisher.payment.api.config;
+
+import com.kingfisher.payment.api.metrics.RequestEndpoint;
+import org.apache.coyote.AbstractProtocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Opt-in mode (payment.threads.virtual=true, JDK 21+): servlet requests, Optile calls and persistence steps run on
+ * virtual threads, so waiting on Optile or Postgres no longer holds a Tomcat worker.
+ */
+@Configuration
+@ConditionalOnProperty(name = VirtualThreadConfig.VIRTUAL_THREADS_PROPERTY, havingValue = "true")
+public class VirtualThreadConfig {
+
+    public static final String VIRTUAL_THREADS_PROPERTY = "payment.threads.virtual";
+    public static final String OPTILE_CALL_EXECUTOR = "optileCallExecutor";
+    public static final String VIRTUAL_THREAD_EXECUTOR = "virtualThreadExecutor";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final List<ExecutorService> executors = new CopyOnWriteArrayList<>();
+
+    // shut down here, a destroyMethod is invoked reflectively on the JDK's non-public executor class and fails on JDK 21
+    @Bean(name = VIRTUAL_THREAD_EXECUTOR, destroyMethod = "")
+    public ExecutorService virtualThreadExecutor() {
+        logger.info("Running payment tasks on virtual threads");
+        return newVirtualThreadPerTaskExecutor();
+    }
+
+    @Bean(name = AsyncConfig.PAYMENT_TASK_EXECUTOR)
+    public Executor virtualPaymentTaskExecutor(@Autowired @Qualifier(VIRTUAL_THREAD_EXECUTOR) ExecutorService executor) {
+        return RequestEndpoint.propagating(executor);
+    }
+
+    @Bean(name = OPTILE_CALL_EXECUTOR, destroyMethod = "")
+    public ExecutorService optileCallExecutor() {
+        return newVirtualThreadPerTaskExecutor();
+    }
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadTomcatCustomizer(
+            @Autowired @Qualifier(VIRTUAL_THREAD_EXECUTOR) ExecutorService executor) {
+        return factory -> factory.addConnectorCustomizers(connector -> {
+            if(connector.getProtocolHandler() instanceof AbstractProtocol) {
+                ((AbstractProtocol<?>) connector.getProtocolHandler()).setExecutor(executor);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executors.forEach(ExecutorService::shutdown);
+    }
+
+    // looked up reflectively, project is compiled for Java 8
+    private ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            executors.add(executor);
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads require JDK 21 or newer, disable " + VIRTUAL_THREADS_PROPERTY, e);
+        }
+    }
+}
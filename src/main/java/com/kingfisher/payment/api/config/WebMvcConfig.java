@@ -0,0 +1,18 @@
+package com.kingfisher.payment.api.config;
+
+import com.kingfisher.payment.api.notification.NotificationEventArgumentResolver;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    // custom resolvers come before the catch-all one which would bind an unannotated NotificationEvent as model attribute
+    @Override
+    public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers) {
+        resolvers.add(new NotificationEventArgumentResolver());
+    }
+}
@@ -1,24 +1,34 @@
 package com.kingfisher.payment.api.controller;
 
+import com.kingfisher.payment.api.notification.NotificationEvent;
+import com.kingfisher.payment.api.notification.NotificationQueue;
 import com.kingfisher.payment.api.optile.model.ErrorInfo;
 import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiImplicitParam;
+import io.swagger.annotations.ApiImplicitParams;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import springfox.documentation.annotations.ApiIgnore;
 
 @RestController
 @Api(tags = {"Payment API"}, description="Payment API")
 public class NotificationController {
 
+    // the notification's columns in transaction_log_info and optile_notification_audit are VARCHAR(255)
+    private static final int MAX_LENGTH = 255;
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    @Autowired
+    private NotificationQueue notificationQueue;
+
     @ApiOperation(value = "Accept Optile notification", response = String.class)
     @ApiResponses({
             @ApiResponse(code =  404, message ="Not found", response = ErrorInfo.class),
@@ -26,40 +36,71 @@ public class NotificationController {
             @ApiResponse(code =  200, message ="Notification accepted"),
             @ApiResponse(code =  503, message ="Server Internal Error", response = ErrorInfo.class)
     })
+    @ApiImplicitParams({
+            @ApiImplicitParam(name = "transactionId", required = true, paramType = "query", dataType = "string"),
+            @ApiImplicitParam(name = "longId", required = true, paramType = "query", dataType = "string"),
+            @ApiImplicitParam(name = "shortId", required = true, paramType = "query", dataType = "string"),
+            @ApiImplicitParam(name = "entity", required = true, paramType = "query", dataType = "string"),
+            @ApiImplicitParam(name = "statusCode", required = true, paramType = "query", dataType = "string"),
+            @ApiImplicitParam(name = "reasonCode", required = true, paramType = "query", dataType = "string"),
+            @ApiImplicitParam(name = "interactionCode", required = true, paramType = "query", dataType = "string"),
+            @ApiImplicitParam(name = "interactionReason", required = true, paramType = "query", dataType = "string"),
+            @ApiImplicitParam(name = "resultCode", required = true, paramType = "query", dataType = "string"),
+            @ApiImplicitParam(name = "resultInfo", required = true, paramType = "query", dataType = "string"),
+            @ApiImplicitParam(name = "notificationId", required = true, paramType = "query", dataType = "string"),
+            @ApiImplicitParam(name = "timestamp", required = true, paramType = "query", dataType = "dateTime"),
+            @ApiImplicitParam(name = "previousStatusCode", required = true, paramType = "query", dataType = "string"),
+            @ApiImplicitParam(name = "previousReasonCode", required = true, paramType = "query", dataType = "string"),
+            @ApiImplicitParam(name = "amount", paramType = "query", dataType = "number"),
+            @ApiImplicitParam(name = "currency", paramType = "query", dataType = "string")
+    })
+    // presence and format of the parameters are checked by NotificationEventArgumentResolver
     @GetMapping("/notification")
-    @SuppressWarnings("squid:S00107")
-    public ResponseEntity getOptileNotification(@RequestParam String transactionId,
-                                                @RequestParam String longId,
-                                                @RequestParam String shortId,
-                                                @RequestParam String entity,
-                                                @RequestParam String statusCode,
-                                                @RequestParam String reasonCode,
-                                                @RequestParam String interactionCode,
-                                                @RequestParam String interactionReason,
-                                                @RequestParam String resultCode,
-                                                @RequestParam String resultInfo,
-                                                @RequestParam String notificationId,
-                                                @RequestParam DateTime timestamp,
-                                                @RequestParam String previousStatusCode,
-                                                @RequestParam String previousReasonCode,
-                                                @RequestParam(required = false) String returnCodeName,
-                                                @RequestParam(required = false) String returnCodeSource,
-                                                @RequestParam(required = false) String pspCode,
-                                                @RequestParam(required = false) String institutionCode,
-                                                @RequestParam(required = false) String customerRegistrationId,
-                                                @RequestParam(required = false) String customerRegistrationPassword,
-                                                @RequestParam(required = false) String hasRecurringAccount,
-                                                @RequestParam(required = false) String network,
-                                                @RequestParam(required = false) Double amount,
-                                                @RequestParam(required = false) String currency,
-                                                @RequestParam(required = false) String reference,
-                                                @RequestParam(required = false) DateTime retryAfter,
-                                                @RequestParam(required = false) DateTime autoRetryAfter,
-                                                @RequestParam(required = false) Integer rejectionCount) {
-        //TODO implement notification handling
-        logger.debug("notification received for transactionID: {}", transactionId);
+    public ResponseEntity getOptileNotification(@ApiIgnore NotificationEvent event) {
+        logger.debug("notification received for transactionID: {}", event.getTransactionId());
+
+        String tooLong = tooLong(event);
+        if(tooLong != null) {
+            return ResponseEntity.badRequest().body(new ErrorInfo("Errors: " + tooLong + " is longer than " + MAX_LENGTH + " characters"));
+        }
+
+        event.setReceivedAt(System.currentTimeMillis());
+
+        // applied to the transaction log by the queue's workers, Optile gets its 200 once the notification is durable;
+        // the event is the resolver's per-thread instance, the queue only keeps its encoded copy
+        if(!notificationQueue.enqueue(event)) {
+            logger.debug("notification {} redelivered, already queued", event.getNotificationId());
+        }
+
         return ResponseEntity.ok().build();
     }
 
+    // a value the database cannot store would fail the notification's group commit once it is queued
+    private static String tooLong(NotificationEvent event) {
+        if(isTooLong(event.getNotificationId())) {
+            return "notificationId";
+        }
+        if(isTooLong(event.getTransactionId())) {
+            return "transactionId";
+        }
+        if(isTooLong(event.getLongId())) {
+            return "longId";
+        }
+        if(isTooLong(event.getStatusCode())) {
+            return "statusCode";
+        }
+        if(isTooLong(event.getReasonCode())) {
+            return "reasonCode";
+        }
+        if(isTooLong(event.getPreviousStatusCode())) {
+            return "previousStatusCode";
+        }
+        return null;
+    }
+
+    private static boolean isTooLong(String value) {
+        return value != null && value.length() > MAX_LENGTH;
+    }
+
 }
 
@@ -1,31 +1,45 @@
 package com.kingfisher.payment.api.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kingfisher.payment.api.config.AsyncConfig;
 import com.kingfisher.payment.api.database.model.CustomerRegistrationInfo;
+import com.kingfisher.payment.api.database.model.LatestChargeView;
 import com.kingfisher.payment.api.database.model.TransactionLogInfo;
 import com.kingfisher.payment.api.database.service.CustomerService;
+import com.kingfisher.payment.api.database.service.IdempotencyService;
 import com.kingfisher.payment.api.database.service.TransactionLogService;
 import com.kingfisher.payment.api.error.InputDTOValidationException;
+import com.kingfisher.payment.api.mapper.TransactionMapper;
 import com.kingfisher.payment.api.model.ListRequestDTO;
 import com.kingfisher.payment.api.optile.model.*;
 import com.kingfisher.payment.api.optile.service.OptileService;
+import com.kingfisher.payment.api.optile.stream.ListResponseScanner;
+import com.kingfisher.payment.api.optile.stream.ListResponseSummary;
+import com.kingfisher.payment.api.optile.stream.RewrittenListRequest;
 import com.kingfisher.payment.api.validator.groups.PaymentAPI;
 import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiImplicitParam;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
-import org.dozer.DozerBeanMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.annotation.*;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
+import java.io.IOException;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicReference;
 
 @CrossOrigin
@@ -33,8 +47,15 @@ import java.util.concurrent.atomic.AtomicReference;
 @Api(tags = {"Payment API"}, description="Payment API")
 public class PaymentController {
 
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    @Value("${optile.list.pass-through}")
+    private boolean listPassThrough;
+    @Value("${optile.list.streaming-request}")
+    private boolean listStreamingRequest;
+
     @Autowired
     private OptileService optileService;
     @Autowired
@@ -42,43 +63,124 @@ public class PaymentController {
     @Autowired
     private TransactionLogService transactionLogService;
     @Autowired
-    private DozerBeanMapper dozerBeanMapper;
+    private IdempotencyService idempotencyService;
+    @Autowired
+    private TransactionMapper transactionMapper;
     @Autowired
     private Validator validator;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    @Qualifier(AsyncConfig.PAYMENT_TASK_EXECUTOR)
+    private Executor paymentTaskExecutor;
 
-    @ApiOperation(value = "Create Payment session for new transaction", nickname = "createPaymentSession")
+    @ApiOperation(value = "Create Payment session for new transaction", nickname = "createPaymentSession", response = NetworkList.class)
     @ApiResponses({
             @ApiResponse(code =  422, message ="Invalid input", response = ErrorInfo.class),
             @ApiResponse(code =  401, message ="Request is not authorized, wrong authentication token or missing payment role", response = ErrorInfo.class),
             @ApiResponse(code =  500, message ="Internal server error", response = ErrorInfo.class)
     })
+    @ApiImplicitParam(name = "request", required = true, dataType = "ListRequestDTO", paramType = "body")
     @PostMapping(
             path="/session/create",
             consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<NetworkList> createPaymentSession(@RequestBody ListRequestDTO request) throws InputDTOValidationException {
+    public CompletableFuture<ResponseEntity<?>> createPaymentSession(@RequestBody byte[] requestBody) throws InputDTOValidationException {
 
-        logger.debug("createPaymentSession(). OrderId: {}, Request Body: {}" , request.getOrderId(), request);
+        if(listStreamingRequest) {
+            return createPaymentSessionStreaming(requestBody);
+        }
 
-        Set<ConstraintViolation<ListRequestDTO>> violations = validator.validate(request, PaymentAPI.class);
+        ListRequestDTO request = readListRequest(requestBody);
 
-        if(!violations.isEmpty()) {
-            throw new InputDTOValidationException(violations);
-        }
+        logger.debug("createPaymentSession(). OrderId: {}, Request Body: {}" , request.getOrderId(), request);
+
+        validateListRequest(request);
 
-        Transaction transaction = dozerBeanMapper.map(request, Transaction.class);
+        Transaction transaction = transactionMapper.toTransaction(request);
         transactionLogService.populateTransactionWithOptileStaticDataAndGenerateTransactionId(transaction, request.getOrderId());
 
         Optional<CustomerRegistrationInfo> registrationInfo = customerService.getCustomerRegistrationInfo(request.getCustomer().getNumber());
         registrationInfo.ifPresent(regInfo -> customerService.populateRequestWithCustomerRegistrationInfo(regInfo, transaction));
 
-        NetworkList response = optileService.postListRequest(transaction);
+        // pass-through: Optile response bytes go to ATG as they are, only the fields logged are scanned out of them
+        if(listPassThrough) {
+            return optileService.postListRequestRawAsync(transaction).<ResponseEntity<?>>thenApplyAsync(response -> {
+
+                ListResponseSummary summary = ListResponseScanner.scan(response);
+                transactionLogService.initAndSaveNewTransactionLogInfo(transaction, summary, request.getOrderId(), registrationInfo);
+
+                logger.debug("createPaymentSession(). OrderId: {}, Transaction: {} END." , request.getOrderId(), transaction.getTransactionId());
+
+                return ResponseEntity.status(HttpStatus.CREATED).contentType(MediaType.APPLICATION_JSON_UTF8).body(response);
+            }, paymentTaskExecutor);
+        }
+
+        return optileService.postListRequestAsync(transaction).<ResponseEntity<?>>thenApplyAsync(response -> {
+
+            transactionLogService.initAndSaveNewTransactionLogInfo(transaction, response, request.getOrderId(), registrationInfo);
+
+            logger.debug("createPaymentSession(). OrderId: {}, Transaction: {} END." , request.getOrderId(), transaction.getTransactionId());
+
+            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        }, paymentTaskExecutor);
+    }
+
+    // streaming: the ATG body is rewritten into the Optile LIST request in one pass, no Transaction graph is mapped
+    private CompletableFuture<ResponseEntity<?>> createPaymentSessionStreaming(byte[] requestBody) throws InputDTOValidationException {
+
+        AtomicReference<Optional<CustomerRegistrationInfo>> registrationInfo = new AtomicReference<>(Optional.empty());
+        RewrittenListRequest listRequest;
+
+        // the rewriter checks the constraints of ListRequestDTO on its pass, no DTO is bound
+        try {
+            listRequest = transactionLogService.rewriteListRequestWithOptileStaticDataAndGenerateTransactionId(requestBody, customerNumber -> {
+                registrationInfo.set(customerService.getCustomerRegistrationInfo(customerNumber));
+                return registrationInfo.get().map(customerService::toRegistration);
+            });
+        } catch (IOException e) {
+            throw new HttpMessageNotReadableException("JSON parse error: " + e.getMessage(), e);
+        }
+
+        logger.debug("createPaymentSession(). OrderId: {}, Transaction: {}" , listRequest.getOrderId(), listRequest.getTransactionId());
+
+        if(listPassThrough) {
+            return optileService.postListRequestRawAsync(listRequest.getBody()).<ResponseEntity<?>>thenApplyAsync(response -> {
+
+                ListResponseSummary summary = ListResponseScanner.scan(response);
+                transactionLogService.initAndSaveNewTransactionLogInfo(listRequest.getCustomerNumber(), summary, listRequest.getOrderId(), registrationInfo.get());
+
+                logger.debug("createPaymentSession(). OrderId: {}, Transaction: {} END." , listRequest.getOrderId(), listRequest.getTransactionId());
+
+                return ResponseEntity.status(HttpStatus.CREATED).contentType(MediaType.APPLICATION_JSON_UTF8).body(response);
+            }, paymentTaskExecutor);
+        }
+
+        return optileService.postListRequestAsync(listRequest.getBody()).<ResponseEntity<?>>thenApplyAsync(response -> {
+
+            transactionLogService.initAndSaveNewTransactionLogInfo(listRequest.getCustomerNumber(), ListResponseSummary.of(response), listRequest.getOrderId(), registrationInfo.get());
+
+            logger.debug("createPaymentSession(). OrderId: {}, Transaction: {} END." , listRequest.getOrderId(), listRequest.getTransactionId());
+
+            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        }, paymentTaskExecutor);
+    }
+
+    private void validateListRequest(ListRequestDTO request) throws InputDTOValidationException {
 
-        transactionLogService.initAndSaveNewTransactionLogInfo(transaction, response, request.getOrderId(), registrationInfo);
+        Set<ConstraintViolation<ListRequestDTO>> violations = validator.validate(request, PaymentAPI.class);
 
-        logger.debug("createPaymentSession(). OrderId: {}, Transaction: {} END." , request.getOrderId(), transaction.getTransactionId());
+        if(!violations.isEmpty()) {
+            throw new InputDTOValidationException(violations);
+        }
+    }
 
-        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    private ListRequestDTO readListRequest(byte[] requestBody) {
+        try {
+            return objectMapper.readValue(requestBody, ListRequestDTO.class);
+        } catch (IOException e) {
+            throw new HttpMessageNotReadableException("JSON parse error: " + e.getMessage(), e);
+        }
     }
 
     @ApiOperation(value = "Close session transaction from ATG")
@@ -91,19 +193,15 @@ public class PaymentController {
             path = "/session/close/{profileId}/{orderId}",
             consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Payout> closePaymentCharge(@PathVariable("profileId") String profileId,
-                                                     @PathVariable("orderId") String orderId,
-                                                     @RequestBody Transaction transaction) {
-
-        //TODO handle case with chargeId not found
-        String chargeId = "";
-        Optional<TransactionLogInfo> logInfo = transactionLogService.getLatestOrderTransaction(orderId);
-
-        if(logInfo.isPresent() && logInfo.get().getCustomerRegistrationInfo().getProfileId().equalsIgnoreCase(profileId)) {
-            chargeId = logInfo.get().getChargeId();
-        }
-
-        return ResponseEntity.status(HttpStatus.OK).body(optileService.closePaymentCharge(chargeId, transaction));
+    public CompletableFuture<ResponseEntity<Payout>> closePaymentCharge(@PathVariable("profileId") String profileId,
+                                                                        @PathVariable("orderId") String orderId,
+                                                                        @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+                                                                        @RequestBody Transaction transaction) {
+
+        return idempotencyService.execute(IdempotencyService.CLOSE, idempotencyKey,
+                idempotencyService.fingerprint(IdempotencyService.CLOSE, transaction, profileId, orderId),
+                () -> closeCharge(profileId, orderId, transaction))
+                .thenApply(payout -> ResponseEntity.status(HttpStatus.OK).body(payout));
     }
 
     @ApiOperation(value = "Charge payment from ATG", nickname = "chargePayment")
@@ -114,32 +212,18 @@ public class PaymentController {
             path = "/session/charge/{orderId}",
             consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Payout> chargePayment(@PathVariable("orderId") String orderId,
-                                                @RequestBody String requestBody) throws InputDTOValidationException {
+    public CompletableFuture<ResponseEntity<Payout>> chargePayment(@PathVariable("orderId") String orderId,
+                                                                   @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+                                                                   @RequestBody String requestBody) throws InputDTOValidationException {
 
         if(!requestBody.equals("{}")) {
             throw new InputDTOValidationException("Request body for operation should be {}");
         }
 
-        final AtomicReference<Payout> payoutReference = new AtomicReference<>();
-
-        Optional<TransactionLogInfo> transactionLogInfo = transactionLogService.getLatestOrderTransaction(orderId);
-
-        transactionLogInfo.ifPresent(trnLogInfo -> {
-
-            Payout chargePayout = optileService.chargePayment(trnLogInfo.getListId(), requestBody);
-            customerService.saveOptileDataForCustomer(chargePayout);
-
-            if(chargePayout.getReturnCode().getName().equals("OK")) {
-                trnLogInfo.setChargeId(chargePayout.getIdentification().getLongId());
-                transactionLogService.saveOrUpdateTransaction(trnLogInfo);
-            }
-
-            payoutReference.set(chargePayout);
-
-        });
-
-        return ResponseEntity.status(HttpStatus.OK).body(payoutReference.get());
+        return idempotencyService.execute(IdempotencyService.CHARGE, idempotencyKey,
+                idempotencyService.fingerprint(IdempotencyService.CHARGE, requestBody, orderId),
+                () -> charge(orderId, requestBody))
+                .thenApply(payout -> ResponseEntity.status(HttpStatus.OK).body(payout));
     }
 
     //TODO refactor like chargePayment with input parameters order or profileId or both.
@@ -153,9 +237,13 @@ public class PaymentController {
             path = "/session/refund/{chargeId}",
             consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Payout> refundPayment(@PathVariable("chargeId") String chargeId,
-                                                @RequestBody Operation operation) {
-        return ResponseEntity.status(HttpStatus.OK).body(optileService.refundPayment(chargeId, operation));
+    public CompletableFuture<ResponseEntity<Payout>> refundPayment(@PathVariable("chargeId") String chargeId,
+                                                                   @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+                                                                   @RequestBody Operation operation) {
+        return idempotencyService.execute(IdempotencyService.REFUND, idempotencyKey,
+                idempotencyService.fingerprint(IdempotencyService.REFUND, operation, chargeId),
+                () -> optileService.refundPaymentAsync(chargeId, operation))
+                .thenApply(payout -> ResponseEntity.status(HttpStatus.OK).body(payout));
     }
 
     @ApiOperation(value = "Cancel session transaction")
@@ -170,5 +258,36 @@ public class PaymentController {
         return ResponseEntity.status(HttpStatus.OK).build();
     }
 
+    private CompletableFuture<Payout> closeCharge(String profileId, String orderId, Transaction transaction) {
+
+        //TODO handle case with chargeId not found
+        String chargeId = "";
+        Optional<LatestChargeView> latestCharge = transactionLogService.getLatestOrderCharge(orderId);
+
+        if(latestCharge.isPresent() && latestCharge.get().getProfileId().equalsIgnoreCase(profileId)) {
+            chargeId = latestCharge.get().getChargeId();
+        }
+
+        return optileService.closePaymentChargeAsync(chargeId, transaction);
+    }
+
+    private CompletableFuture<Payout> charge(String orderId, String requestBody) {
+
+        Optional<TransactionLogInfo> transactionLogInfo = transactionLogService.getLatestOrderTransaction(orderId);
+
+        if(!transactionLogInfo.isPresent()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        TransactionLogInfo trnLogInfo = transactionLogInfo.get();
+
+        return optileService.chargePaymentAsync(trnLogInfo.getListId(), requestBody).thenApplyAsync(chargePayout -> {
+
+            customerService.saveChargeResult(chargePayout, trnLogInfo);
+
+            return chargePayout;
+        }, paymentTaskExecutor);
+    }
+
 }
 
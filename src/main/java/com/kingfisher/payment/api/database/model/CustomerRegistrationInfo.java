@@ -1,6 +1,8 @@
 package com.kingfisher.payment.api.database.model;
 
+import org.hibernate.annotations.DynamicUpdate;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
@@ -8,11 +10,13 @@ import javax.persistence.Id;
 import javax.validation.constraints.NotNull;
 
 @Entity
+@DynamicUpdate
 public class CustomerRegistrationInfo {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private long id;
+    @Column(unique = true)
     private String profileId;
     private String optileCustomerId;
     private String optileCustomerPassword;
@@ -25,6 +29,14 @@ public class CustomerRegistrationInfo {
         this.profileId = profileId;
     }
 
+    // query projection, the instance is not managed by the persistence context
+    public CustomerRegistrationInfo(long id, String profileId, String optileCustomerId, String optileCustomerPassword) {
+        this.id = id;
+        this.profileId = profileId;
+        this.optileCustomerId = optileCustomerId;
+        this.optileCustomerPassword = optileCustomerPassword;
+    }
+
     public String getProfileId() {
         return profileId;
     }
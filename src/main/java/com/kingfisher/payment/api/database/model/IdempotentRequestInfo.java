@@ -0,0 +1,82 @@
+package com.kingfisher.payment.api.database.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+@Entity
+public class IdempotentRequestInfo {
+
+    // claimed by the instance calling Optile, the response is not there yet
+    public static final String PENDING = "PENDING";
+    public static final String COMPLETED = "COMPLETED";
+
+    @Id
+    private String idempotencyKey;
+    private String operation;
+    private String status = COMPLETED;
+    // hash of operation, path ids and body of the request the key was first used for
+    private String fingerprint;
+    private long timestamp;
+    @Column(columnDefinition = "text")
+    private String response;
+
+    public IdempotentRequestInfo() {
+        //empty
+    }
+
+    public IdempotentRequestInfo(String idempotencyKey, String operation, long timestamp, String response) {
+        this.idempotencyKey = idempotencyKey;
+        this.operation = operation;
+        this.timestamp = timestamp;
+        this.response = response;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public void setOperation(String operation) {
+        this.operation = operation;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public String getResponse() {
+        return response;
+    }
+
+    public void setResponse(String response) {
+        this.response = response;
+    }
+}
@@ -0,0 +1,23 @@
+package com.kingfisher.payment.api.database.model;
+
+/**
+ * What closing a charge needs from the latest session of an order.
+ */
+public class LatestChargeView {
+
+    private final String chargeId;
+    private final String profileId;
+
+    public LatestChargeView(String chargeId, String profileId) {
+        this.chargeId = chargeId;
+        this.profileId = profileId;
+    }
+
+    public String getChargeId() {
+        return chargeId;
+    }
+
+    public String getProfileId() {
+        return profileId;
+    }
+}
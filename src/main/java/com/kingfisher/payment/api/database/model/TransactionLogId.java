@@ -0,0 +1,54 @@
+package com.kingfisher.payment.api.database.model;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Key of TransactionLogInfo, the primary key of the partitioned table: the timestamp selects the month partition.
+ */
+public class TransactionLogId implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private long id;
+    private long timestamp;
+
+    public TransactionLogId() {
+        //empty
+    }
+
+    public TransactionLogId(long id, long timestamp) {
+        this.id = id;
+        this.timestamp = timestamp;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof TransactionLogId)) {
+            return false;
+        }
+        TransactionLogId other = (TransactionLogId) o;
+        return id == other.id && timestamp == other.timestamp;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, timestamp);
+    }
+
+    @Override
+    public String toString() {
+        return id + "@" + timestamp;
+    }
+}
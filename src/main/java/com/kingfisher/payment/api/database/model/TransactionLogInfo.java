@@ -1,17 +1,36 @@
 package com.kingfisher.payment.api.database.model;
 
-import javax.persistence.CascadeType;
+import org.hibernate.annotations.DynamicUpdate;
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.IdClass;
 import javax.persistence.ManyToOne;
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.Transient;
+import javax.persistence.Version;
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
 
+/**
+ * The id is assigned before saving, so the entity tells Spring Data itself whether it is new: new logs are persisted
+ * straight away instead of merged, which would select the row first. The key is (id, timestamp) like the primary key
+ * of the partitioned table, a lookup or merge by key only searches the partition of the timestamp.
+ */
 @Entity
-public class TransactionLogInfo {
+@DynamicUpdate
+@IdClass(TransactionLogId.class)
+public class TransactionLogInfo implements Persistable<TransactionLogId> {
 
+    // Snowflake id, see TransactionIdGenerator
     @Id
+    private long id;
+    @Column(unique = true)
     private String transactionId;
+    @Id
     private long timestamp;
     @NotNull
     @NotEmpty
@@ -20,10 +39,71 @@ public class TransactionLogInfo {
     @NotEmpty
     private String orderId;
     private String chargeId;
-
-    @ManyToOne(targetEntity = CustomerRegistrationInfo.class, cascade = CascadeType.MERGE)
+    @Version
+    private long version;
+    // set by Optile notifications only, not part of the lookup projections
+    private String statusCode;
+    private String reasonCode;
+    private long statusTimestamp;
+
+    // not cascaded, registrations are only created by CustomerRepository.upsertByProfileId
+    @ManyToOne(targetEntity = CustomerRegistrationInfo.class)
     private CustomerRegistrationInfo customerRegistrationInfo;
 
+    @Transient
+    private boolean isNew = true;
+
+    public TransactionLogInfo() {
+        //empty
+    }
+
+    // query projection of a stored log and its registration, the instances are not managed by the persistence context
+    public TransactionLogInfo(long id, String transactionId, long timestamp, String listId, String orderId, String chargeId, long version,
+                              long customerRegistrationInfoId, String profileId, String optileCustomerId, String optileCustomerPassword) {
+        this.id = id;
+        this.transactionId = transactionId;
+        this.timestamp = timestamp;
+        this.listId = listId;
+        this.orderId = orderId;
+        this.chargeId = chargeId;
+        this.version = version;
+        this.customerRegistrationInfo = new CustomerRegistrationInfo(customerRegistrationInfoId, profileId, optileCustomerId, optileCustomerPassword);
+        this.isNew = false;
+    }
+
+    @Override
+    public TransactionLogId getId() {
+        return new TransactionLogId(id, timestamp);
+    }
+
+    public long getLogId() {
+        return id;
+    }
+
+    // detached copy to change without touching an instance other requests may be reading (e.g. a cached one)
+    public TransactionLogInfo copy() {
+        TransactionLogInfo copy = new TransactionLogInfo(id, transactionId, timestamp, listId, orderId, chargeId, version,
+                customerRegistrationInfo.getId(), customerRegistrationInfo.getProfileId(),
+                customerRegistrationInfo.getOptileCustomerId(), customerRegistrationInfo.getOptileCustomerPassword());
+        copy.isNew = isNew;
+        return copy;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        isNew = false;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
     public String getTransactionId() {
         return transactionId;
     }
@@ -65,6 +145,14 @@ public class TransactionLogInfo {
     }
 
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     public long getTimestamp() {
         return timestamp;
     }
@@ -72,4 +160,28 @@ public class TransactionLogInfo {
     public void setTimestamp(long timestamp) {
         this.timestamp = timestamp;
     }
+
+    public String getStatusCode() {
+        return statusCode;
+    }
+
+    public void setStatusCode(String statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    public String getReasonCode() {
+        return reasonCode;
+    }
+
+    public void setReasonCode(String reasonCode) {
+        this.reasonCode = reasonCode;
+    }
+
+    public long getStatusTimestamp() {
+        return statusTimestamp;
+    }
+
+    public void setStatusTimestamp(long statusTimestamp) {
+        this.statusTimestamp = statusTimestamp;
+    }
 }
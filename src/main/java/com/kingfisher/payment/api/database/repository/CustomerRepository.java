@@ -2,7 +2,11 @@ package com.kingfisher.payment.api.database.repository;
 
 import com.kingfisher.payment.api.database.model.CustomerRegistrationInfo;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
@@ -11,4 +15,22 @@ public interface CustomerRepository extends JpaRepository<CustomerRegistrationIn
 
     Optional<CustomerRegistrationInfo> findFirstByProfileId(String profileId);
 
+    // unmanaged projection for the read-through cache, profile_id is unique
+    @Transactional(readOnly = true)
+    @Query("select new com.kingfisher.payment.api.database.model.CustomerRegistrationInfo(" +
+            "c.id, c.profileId, c.optileCustomerId, c.optileCustomerPassword) from CustomerRegistrationInfo c where c.profileId = :profileId")
+    Optional<CustomerRegistrationInfo> findProjectionByProfileId(@Param("profileId") String profileId);
+
+    // concurrent first sessions of a customer all get the one row, the unique profile_id index decides; the no-op
+    // update on conflict is what makes RETURNING hand back the existing row
+    @Transactional
+    @Query(value = "INSERT INTO customer_registration_info (profile_id) VALUES (:profileId) " +
+            "ON CONFLICT (profile_id) DO UPDATE SET profile_id = EXCLUDED.profile_id RETURNING *", nativeQuery = true)
+    CustomerRegistrationInfo upsertByProfileId(@Param("profileId") String profileId);
+
+    @Transactional
+    @Modifying
+    @Query("update CustomerRegistrationInfo c set c.optileCustomerId = :optileCustomerId, c.optileCustomerPassword = :optileCustomerPassword where c.id = :id")
+    int updateOptileRegistration(@Param("id") long id, @Param("optileCustomerId") String optileCustomerId, @Param("optileCustomerPassword") String optileCustomerPassword);
+
 }
@@ -0,0 +1,40 @@
+package com.kingfisher.payment.api.database.repository;
+
+import com.kingfisher.payment.api.database.model.IdempotentRequestInfo;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface IdempotentRequestRepository extends CrudRepository<IdempotentRequestInfo, String> {
+
+    // 1 if this request now holds the key, 0 if any instance claimed it before; the primary key decides
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO idempotent_request_info (idempotency_key, operation, status, fingerprint, timestamp) " +
+            "VALUES (:key, :operation, 'PENDING', :fingerprint, :timestamp) ON CONFLICT (idempotency_key) DO NOTHING", nativeQuery = true)
+    int claim(@Param("key") String key, @Param("operation") String operation, @Param("fingerprint") String fingerprint,
+              @Param("timestamp") long timestamp);
+
+    // takes over a claim still as it was read, of an instance which died before completing it
+    @Transactional
+    @Modifying
+    @Query("update IdempotentRequestInfo i set i.timestamp = :timestamp where i.idempotencyKey = :key " +
+            "and i.status = 'PENDING' and i.timestamp = :claimedAt")
+    int reclaim(@Param("key") String key, @Param("claimedAt") long claimedAt, @Param("timestamp") long timestamp);
+
+    @Transactional
+    @Modifying
+    @Query("update IdempotentRequestInfo i set i.status = 'COMPLETED', i.response = :response, i.timestamp = :timestamp " +
+            "where i.idempotencyKey = :key")
+    int complete(@Param("key") String key, @Param("response") String response, @Param("timestamp") long timestamp);
+
+    // a failed call is not stored, the next retry goes to Optile again
+    @Transactional
+    @Modifying
+    @Query("delete from IdempotentRequestInfo i where i.idempotencyKey = :key and i.status = 'PENDING'")
+    int release(@Param("key") String key);
+}
@@ -1,16 +1,61 @@
 package com.kingfisher.payment.api.database.repository;
 
+import com.kingfisher.payment.api.database.model.LatestChargeView;
+import com.kingfisher.payment.api.database.model.TransactionLogId;
 import com.kingfisher.payment.api.database.model.TransactionLogInfo;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.validation.constraints.NotNull;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface TransactionLogRepository extends CrudRepository<TransactionLogInfo, String> {
+public interface TransactionLogRepository extends CrudRepository<TransactionLogInfo, TransactionLogId> {
 
-    Optional<TransactionLogInfo> findFirstByOrderIdOrderByTimestampDesc (@NotNull String orderId);
+    // reads select columns into unmanaged instances: no entity hydration, snapshot or dirty-checking for data that is
+    // only read or changed through the update queries below. Read-only, so outside a write they are served by a replica
+    String TRANSACTION_LOG_PROJECTION = "select new com.kingfisher.payment.api.database.model.TransactionLogInfo(" +
+            "t.id, t.transactionId, t.timestamp, t.listId, t.orderId, t.chargeId, t.version, " +
+            "c.id, c.profileId, c.optileCustomerId, c.optileCustomerPassword) " +
+            "from TransactionLogInfo t join t.customerRegistrationInfo c ";
 
-}
+    // The table is partitioned by month of timestamp (V5), every query bounds timestamp so only the partitions that
+    // can hold the row are searched.
+
+    // latest session first, callers pass a page of one
+    @Transactional(readOnly = true)
+    @Query(TRANSACTION_LOG_PROJECTION + "where t.orderId = :orderId and t.timestamp >= :since order by t.timestamp desc")
+    List<TransactionLogInfo> findLatestByOrderId(@NotNull @Param("orderId") String orderId, @Param("since") long since, Pageable pageable);
+
+    @Transactional(readOnly = true)
+    @Query(TRANSACTION_LOG_PROJECTION + "where t.id = :id and t.timestamp between :from and :to")
+    Optional<TransactionLogInfo> findProjectionById(@Param("id") long id, @Param("from") long from, @Param("to") long to);
+
+    // transactionIds of the former "millis-orderId-customer" format, generated ones are looked up by id
+    @Transactional(readOnly = true)
+    @Query(TRANSACTION_LOG_PROJECTION + "where t.transactionId = :transactionId and t.timestamp between :from and :to")
+    Optional<TransactionLogInfo> findProjectionByTransactionId(@NotNull @Param("transactionId") String transactionId,
+                                                               @Param("from") long from, @Param("to") long to);
 
+    @Transactional(readOnly = true)
+    @Query("select new com.kingfisher.payment.api.database.model.LatestChargeView(t.chargeId, c.profileId) " +
+            "from TransactionLogInfo t join t.customerRegistrationInfo c " +
+            "where t.orderId = :orderId and t.timestamp >= :since order by t.timestamp desc")
+    List<LatestChargeView> findLatestChargeByOrderId(@NotNull @Param("orderId") String orderId, @Param("since") long since, Pageable pageable);
+
+    // chargeId is the only column changing after creation besides the notification status (NotificationStatusWriter):
+    // a single UPDATE instead of merging (and selecting) the detached log, 0 rows when the version moved on since the
+    // log was read
+    @Transactional
+    @Modifying
+    @Query("update TransactionLogInfo t set t.chargeId = :chargeId, t.version = t.version + 1 " +
+            "where t.id = :id and t.timestamp = :timestamp and t.version = :version")
+    int updateChargeId(@Param("id") long id, @Param("timestamp") long timestamp, @Param("chargeId") String chargeId, @Param("version") long version);
+
+}
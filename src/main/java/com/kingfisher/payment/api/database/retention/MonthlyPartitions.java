@@ -0,0 +1,51 @@
+package com.kingfisher.payment.api.database.retention;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Names and bounds of the monthly transaction_log_info partitions: transaction_log_info_pYYYYMM holds the timestamps
+ * (epoch millis, UTC) from the first of the month up to the first of the next.
+ */
+final class MonthlyPartitions {
+
+    static final String TABLE = "transaction_log_info";
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final String UPPER_BOUND = " TO (";
+
+    private MonthlyPartitions() {
+    }
+
+    static String name(YearMonth month) {
+        return TABLE + "_p" + month.format(SUFFIX);
+    }
+
+    static long startOf(YearMonth month) {
+        return month.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    static YearMonth monthOf(long timestamp) {
+        return YearMonth.from(Instant.ofEpochMilli(timestamp).atOffset(ZoneOffset.UTC));
+    }
+
+    /**
+     * @param partitionBound pg_get_expr(relpartbound), e.g. FOR VALUES FROM ('1514764800000') TO ('1517443200000')
+     * @return the exclusive upper bound, Long.MAX_VALUE for MAXVALUE and -1 for the default partition
+     */
+    static long upperBound(String partitionBound) {
+
+        int start = partitionBound.indexOf(UPPER_BOUND);
+        if(start < 0) {
+            return -1;
+        }
+
+        String bound = partitionBound.substring(start + UPPER_BOUND.length(), partitionBound.indexOf(')', start))
+                .replace("'", "")
+                .trim();
+
+        return "MAXVALUE".equals(bound) ? Long.MAX_VALUE : Long.parseLong(bound);
+    }
+}
@@ -0,0 +1,318 @@
+package com.kingfisher.payment.api.database.retention;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the monthly transaction_log_info partitions (V5) going: creates the coming months ahead of time and retires
+ * months past retention. A retired partition is detached first (a short lock on the parent, bounded by lock_timeout),
+ * then emptied in small batches, each batch appended to a gzip'd CSV in the archive directory before its delete
+ * commits, and finally dropped. Nothing on the request path waits for it and no lock is held for a whole month.
+ * Detached partitions are recorded in transaction_log_partition_retired (V5) in the transaction detaching them, a
+ * partition detached but not yet emptied when the service stops is picked up again on the next run. A run holds an
+ * advisory lock, so of several instances only one maintains the partitions at a time.
+ */
+@Component
+@ConditionalOnProperty(name = "transaction.log.partition.maintenance", havingValue = "true", matchIfMissing = true)
+public class TransactionLogPartitionMaintenance implements MeterBinder {
+
+    private static final String PARTITIONS_QUERY =
+            "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = 'transaction_log_info'::regclass";
+
+    private static final String RETIRED_QUERY = "SELECT partition_name FROM transaction_log_partition_retired ORDER BY detached_at";
+    private static final String RETIRE = "INSERT INTO transaction_log_partition_retired (partition_name, detached_at) VALUES (?, ?)";
+    private static final String FORGET = "DELETE FROM transaction_log_partition_retired WHERE partition_name = ?";
+
+    // pg_try_advisory_lock key of the maintenance run, cluster wide
+    private static final long LOCK_KEY = 0x74786c6f67706d00L;
+
+    private static final String ARCHIVED_COLUMNS =
+            "id, transaction_id, timestamp, list_id, order_id, charge_id, customer_registration_info_id, version";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Value("${transaction.log.partition.months-ahead}")
+    private int monthsAhead;
+    @Value("${transaction.log.partition.maintenance-interval}")
+    private long maintenanceInterval;
+    @Value("${transaction.log.retention.months}")
+    private int retentionMonths;
+    @Value("${transaction.log.retention.batch-size}")
+    private int batchSize;
+    @Value("${transaction.log.retention.lock-timeout}")
+    private long lockTimeout;
+    @Value("${transaction.log.retention.archive-path}")
+    private String archivePath;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong archivedRows = new AtomicLong();
+    private final AtomicLong droppedPartitions = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "transaction-log-partitions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::maintain, 0, maintenanceInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // a batch in progress rolls back when interrupted, its rows are archived again by the next run
+        scheduler.shutdownNow();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("transaction.log.retention.archived.rows", archivedRows, AtomicLong::get)
+                .description("Transaction log rows archived and deleted past retention")
+                .register(registry);
+        FunctionCounter.builder("transaction.log.retention.dropped.partitions", droppedPartitions, AtomicLong::get)
+                .description("Monthly transaction log partitions dropped after archiving")
+                .register(registry);
+    }
+
+    void maintain() {
+
+        try {
+            // the lock belongs to this connection's session, the work runs on other connections of the pool; it is
+            // released with the connection if the instance dies
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+
+                if(!advisoryLock(connection, "pg_try_advisory_lock")) {
+                    logger.debug("Transaction log partitions are maintained by another instance");
+                    return null;
+                }
+
+                try {
+                    maintainPartitions();
+                } finally {
+                    advisoryLock(connection, "pg_advisory_unlock");
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // the next run starts over from the catalog
+            logger.error("Transaction log partition maintenance failed", e);
+        }
+    }
+
+    private void maintainPartitions() {
+
+        YearMonth now = YearMonth.now(ZoneOffset.UTC);
+        List<Partition> partitions = jdbcTemplate.query(PARTITIONS_QUERY,
+                (rs, row) -> new Partition(rs.getString(1), MonthlyPartitions.upperBound(rs.getString(2))));
+
+        createAhead(partitions, now.plusMonths(monthsAhead));
+        detachExpired(partitions, MonthlyPartitions.startOf(now.minusMonths(retentionMonths)));
+
+        for(String table : jdbcTemplate.queryForList(RETIRED_QUERY, String.class)) {
+            archiveAndDrop(table);
+        }
+    }
+
+    private static boolean advisoryLock(Connection connection, String function) throws SQLException {
+        try(PreparedStatement statement = connection.prepareStatement("SELECT " + function + "(?)")) {
+            statement.setLong(1, LOCK_KEY);
+            try(ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private void createAhead(List<Partition> partitions, YearMonth last) {
+
+        long covered = partitions.stream()
+                .mapToLong(Partition::getUpperBound)
+                .filter(bound -> bound != Long.MAX_VALUE)
+                .max()
+                .orElse(-1);
+
+        if(covered < 0) {
+            logger.warn("{} has no range partitions, was V5 migrated?", MonthlyPartitions.TABLE);
+            return;
+        }
+
+        // partitions are contiguous, new months start where the last one ends
+        for(YearMonth month = MonthlyPartitions.monthOf(covered); !month.isAfter(last); month = month.plusMonths(1)) {
+
+            String name = MonthlyPartitions.name(month);
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF " + MonthlyPartitions.TABLE +
+                    " FOR VALUES FROM (" + MonthlyPartitions.startOf(month) + ") TO (" + MonthlyPartitions.startOf(month.plusMonths(1)) + ")");
+            logger.info("Created transaction log partition {}", name);
+        }
+    }
+
+    private void detachExpired(List<Partition> partitions, long retainedFrom) {
+
+        for(Partition partition : partitions) {
+
+            if(partition.getUpperBound() < 0 || partition.getUpperBound() > retainedFrom) {
+                continue;
+            }
+
+            // waits for lock_timeout at most instead of queueing every insert behind a long running read
+            transactionTemplate.execute(status -> {
+                jdbcTemplate.execute("SET LOCAL lock_timeout = " + lockTimeout);
+                jdbcTemplate.execute("ALTER TABLE " + MonthlyPartitions.TABLE + " DETACH PARTITION " + partition.getName());
+                jdbcTemplate.update(RETIRE, partition.getName(), System.currentTimeMillis());
+                return null;
+            });
+            logger.info("Detached transaction log partition {} for archiving", partition.getName());
+        }
+    }
+
+    private void archiveAndDrop(String table) {
+
+        if(jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NULL", Boolean.class, table)) {
+            logger.warn("Retired transaction log partition {} no longer exists", table);
+            jdbcTemplate.update(FORGET, table);
+            return;
+        }
+
+        Path archive = Paths.get(archivePath, table + ".csv.gz");
+        String deleteBatch = "DELETE FROM " + table + " WHERE id IN (SELECT id FROM " + table + " LIMIT ?) RETURNING " + ARCHIVED_COLUMNS;
+
+        try {
+            Files.createDirectories(archive.getParent());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        int archived;
+
+        do {
+            if(Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            archived = transactionTemplate.execute(status -> {
+                List<String> rows = jdbcTemplate.query(deleteBatch, (rs, row) -> {
+                    StringBuilder line = new StringBuilder();
+                    for(int column = 1; column <= rs.getMetaData().getColumnCount(); column++) {
+                        line.append(column > 1 ? "," : "").append(csv(rs.getString(column)));
+                    }
+                    return line.toString();
+                }, batchSize);
+
+                // on disk before the rows are gone; a failed commit archives them once more, never loses them
+                append(archive, rows);
+                return rows.size();
+            });
+
+            archivedRows.addAndGet(archived);
+        } while(archived == batchSize);
+
+        transactionTemplate.execute(status -> {
+            jdbcTemplate.execute("DROP TABLE " + table);
+            jdbcTemplate.update(FORGET, table);
+            return null;
+        });
+        droppedPartitions.incrementAndGet();
+        logger.info("Archived transaction log partition {} to {} and dropped it", table, archive);
+    }
+
+    // every batch is its own gzip member, concatenated members read back as one stream (zcat, GZIPInputStream)
+    private static void append(Path archive, List<String> rows) {
+
+        if(rows.isEmpty()) {
+            return;
+        }
+
+        try(FileChannel channel = FileChannel.open(archive, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+
+            GZIPOutputStream gzip = new GZIPOutputStream(Channels.newOutputStream(channel));
+            Writer writer = new OutputStreamWriter(gzip, StandardCharsets.UTF_8);
+            for(String row : rows) {
+                writer.write(row);
+                writer.write('\n');
+            }
+            writer.flush();
+            gzip.finish();
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Archiving to " + archive + " failed", e);
+        }
+    }
+
+    private static String csv(String value) {
+
+        if(value == null) {
+            return "";
+        }
+
+        return value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                ? value
+                : '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static class Partition {
+
+        private final String name;
+        private final long upperBound;
+
+        private Partition(String name, long upperBound) {
+            this.name = name;
+            this.upperBound = upperBound;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        long getUpperBound() {
+            return upperBound;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.kingfisher.payment.api.database.routing;
+
+import java.util.function.Supplier;
+
+/**
+ * Lets the current thread pin its reads to the primary, e.g. to read back its own recent write which a replica may not
+ * have replayed yet. Without it read-only transactions go to a replica, see ReplicaRoutingDataSource.
+ */
+public final class DataSourceRouting {
+
+    private static final ThreadLocal<Boolean> PRIMARY = new ThreadLocal<>();
+
+    private DataSourceRouting() {
+    }
+
+    public static <T> T onPrimary(Supplier<T> read) {
+
+        Boolean previous = PRIMARY.get();
+        PRIMARY.set(Boolean.TRUE);
+
+        try {
+            return read.get();
+        } finally {
+            if(previous == null) {
+                PRIMARY.remove();
+            }
+        }
+    }
+
+    static boolean isPrimaryRequired() {
+        return PRIMARY.get() != null;
+    }
+}
@@ -0,0 +1,56 @@
+package com.kingfisher.payment.api.database.routing;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Transactions and profiles this instance wrote within the last max-lag milliseconds. Reads of those go to the
+ * primary, a replica lagging behind would return the state before the write.
+ * <p>
+ * Read-your-writes only holds on the instance which wrote: writes of other instances are not recorded here, and a read
+ * following one of them may see the replica's older state. Lookups which typically follow a write made elsewhere read
+ * the primary with DataSourceRouting.onPrimary instead of relying on this, e.g. the latest log of an order that charge
+ * and close look up and the log a notification is applied to (TransactionLogService).
+ */
+@Component
+public class RecentWrites {
+
+    @Value("${payment.datasource.replica.max-lag}")
+    private long maxLag;
+    @Value("${payment.datasource.replica.recent-writes.maximum-size}")
+    private long maximumSize;
+
+    private Cache<String, Boolean> writes;
+
+    @PostConstruct
+    public void init() {
+        writes = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(maxLag, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    public static String transaction(String transactionId) {
+        return "transaction:" + transactionId;
+    }
+
+    public static String profile(String profileId) {
+        return "profile:" + profileId;
+    }
+
+    public void record(String... keys) {
+        for(String key : keys) {
+            writes.put(key, Boolean.TRUE);
+        }
+    }
+
+    public <T> T read(String key, Supplier<T> read) {
+        return writes.getIfPresent(key) != null ? DataSourceRouting.onPrimary(read) : read.get();
+    }
+}
@@ -0,0 +1,56 @@
+package com.kingfisher.payment.api.database.schema;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Refuses to start the service when an index created by the db/migration scripts is missing, the lookups on the
+ * session, charge and close paths would silently fall back to sequential scans. Runs after all singletons (and so
+ * the flyway migration) are created and before the web server accepts requests.
+ */
+@Component
+@ConditionalOnProperty(name = "payment.schema.verify-indexes", havingValue = "true", matchIfMissing = true)
+public class SchemaIndexVerifier implements SmartInitializingSingleton {
+
+    static final List<String> EXPECTED_INDEXES = Arrays.asList(
+            "ux_customer_registration_info_profile_id",
+            "ix_transaction_log_info_order_id_timestamp",
+            "ix_transaction_log_info_list_id",
+            "ix_transaction_log_info_charge_id",
+            "ix_transaction_log_info_customer_registration_info_id",
+            "ux_transaction_log_info_transaction_id");
+
+    private static final String INDEX_QUERY = "SELECT indexname FROM pg_indexes WHERE schemaname = current_schema()";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+
+        Set<String> indexes = new HashSet<>(jdbcTemplate.queryForList(INDEX_QUERY, String.class));
+
+        List<String> missing = EXPECTED_INDEXES.stream()
+                .filter(index -> !indexes.contains(index))
+                .collect(Collectors.toList());
+
+        if(!missing.isEmpty()) {
+            throw new IllegalStateException("Missing database indexes " + missing + ", run the db/migration scripts");
+        }
+
+        logger.info("Verified database indexes {}", EXPECTED_INDEXES);
+    }
+}
@@ -0,0 +1,88 @@
+package com.kingfisher.payment.api.database.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.kingfisher.payment.api.database.model.CustomerRegistrationInfo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Read-through cache of CustomerRegistrationInfo by profileId. Bounded by an estimate of the retained bytes, eviction
+ * is Caffeine's W-TinyLFU so one-off customers do not push returning ones out. Writers of the entity put the saved
+ * instance back so the next session sees the new Optile registration without waiting for the TTL.
+ */
+@Component
+public class CustomerRegistrationCache implements MeterBinder {
+
+    private static final String CACHE_NAME = "customerRegistrationInfo";
+
+    // object headers, the long id and references, roughly what an entry costs besides its strings
+    private static final int ENTRY_OVERHEAD = 96;
+
+    @Value("${customer.cache.maximum-weight}")
+    private long maximumWeight;
+    @Value("${customer.cache.expire-after-write}")
+    private long expireAfterWrite;
+
+    private Cache<String, CustomerRegistrationInfo> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher(CustomerRegistrationCache::weigh)
+                .expireAfterWrite(expireAfterWrite, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public Optional<CustomerRegistrationInfo> get(String profileId, Function<String, Optional<CustomerRegistrationInfo>> loader) {
+
+        CustomerRegistrationInfo registrationInfo = cache.getIfPresent(profileId);
+
+        if(registrationInfo != null) {
+            return Optional.of(registrationInfo);
+        }
+
+        // customers without a registration are not cached, their first session creates one and puts it here
+        Optional<CustomerRegistrationInfo> loaded = loader.apply(profileId);
+        loaded.ifPresent(this::put);
+
+        return loaded;
+    }
+
+    // inside a transaction the entry is only published once the transaction commits
+    public void put(CustomerRegistrationInfo registrationInfo) {
+        if(registrationInfo != null && registrationInfo.getProfileId() != null) {
+            TransactionCallbacks.afterCommit(() -> cache.put(registrationInfo.getProfileId(), registrationInfo));
+        }
+    }
+
+    public void invalidate(String profileId) {
+        cache.invalidate(profileId);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+    }
+
+    private static int weigh(String profileId, CustomerRegistrationInfo registrationInfo) {
+        return ENTRY_OVERHEAD
+                + 2 * length(profileId)
+                + 2 * length(registrationInfo.getOptileCustomerId())
+                + 2 * length(registrationInfo.getOptileCustomerPassword());
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+}
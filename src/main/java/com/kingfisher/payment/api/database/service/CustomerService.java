@@ -1,14 +1,20 @@
 package com.kingfisher.payment.api.database.service;
 
 import com.kingfisher.payment.api.database.model.CustomerRegistrationInfo;
+import com.kingfisher.payment.api.database.model.TransactionLogInfo;
 import com.kingfisher.payment.api.database.repository.CustomerRepository;
+import com.kingfisher.payment.api.database.routing.RecentWrites;
+import com.kingfisher.payment.api.mapper.TransactionMapper;
 import com.kingfisher.payment.api.optile.model.Payout;
 import com.kingfisher.payment.api.optile.model.Registration;
 import com.kingfisher.payment.api.optile.model.Transaction;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.Optional;
+import java.util.function.Supplier;
 
 @Service
 public class CustomerService {
@@ -17,33 +23,107 @@ public class CustomerService {
     private CustomerRepository customerRepository;
     @Autowired
     private TransactionLogService transactionLogService;
+    @Autowired
+    private TransactionMapper transactionMapper;
+    @Autowired
+    private CustomerRegistrationCache customerRegistrationCache;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private RecentWrites recentWrites;
 
     public Optional<CustomerRegistrationInfo> getCustomerRegistrationInfo(String profileId) {
-        return customerRepository.findFirstByProfileId(profileId);
+        return customerRegistrationCache.get(profileId,
+                id -> recentWrites.read(RecentWrites.profile(id), () -> customerRepository.findProjectionByProfileId(id)));
     }
 
     public void populateRequestWithCustomerRegistrationInfo(CustomerRegistrationInfo registrationInfo, Transaction transactionRequest) {
-        Registration registration = new Registration();
-        registration.setId(registrationInfo.getOptileCustomerId());
-        registration.setPassword(registrationInfo.getOptileCustomerPassword());
-        transactionRequest.getCustomer().setRegistration(registration);
+        transactionRequest.getCustomer().setRegistration(toRegistration(registrationInfo));
+    }
+
+    public Registration toRegistration(CustomerRegistrationInfo registrationInfo) {
+        return transactionMapper.toRegistration(registrationInfo);
     }
 
+    @Transactional
     public void saveOptileDataForCustomer(Payout response) {
-        response.getRedirect()
+        saveOptileDataForCustomer(response, () -> transactionLogService.getTransactionLogById(response.getIdentification().getTransactionId()));
+    }
+
+    // the charge path already holds the log of the session, the lookup by transactionId is only needed when it differs
+    @Transactional
+    public void saveOptileDataForCustomer(Payout response, TransactionLogInfo transactionLogInfo) {
+        saveOptileDataForSession(response, transactionLogInfo);
+    }
+
+    // the session's log as it is after the registration was saved
+    private TransactionLogInfo saveOptileDataForSession(Payout response, TransactionLogInfo transactionLogInfo) {
+        if(transactionLogInfo.getTransactionId().equals(response.getIdentification().getTransactionId())) {
+            return saveOptileDataForCustomer(response, () -> Optional.of(transactionLogInfo)).orElse(transactionLogInfo);
+        }
+        saveOptileDataForCustomer(response);
+        return transactionLogInfo;
+    }
+
+    /**
+     * The log may be an instance other requests are reading (e.g. the cached latest one of the order), the registration
+     * is therefore changed on a copy, which is only published to the caches once the transaction commits.
+     *
+     * @return the updated copy, empty when the response carries no registration or the log is not found
+     */
+    private Optional<TransactionLogInfo> saveOptileDataForCustomer(Payout response, Supplier<Optional<TransactionLogInfo>> transactionLogInfo) {
+        return response.getRedirect()
                 .getParameters()
                 .stream()
                 .filter( p -> p.getName().equals("customerRegistrationId"))
                 .findFirst()
-                .ifPresent( customerRegId -> transactionLogService.getTransactionLogById(response.getIdentification().getTransactionId())
-                        .ifPresent(transactionLogInfo -> {
-                            CustomerRegistrationInfo customerRegistrationInfo = transactionLogInfo.getCustomerRegistrationInfo();
+                .flatMap( customerRegId -> transactionLogInfo.get()
+                        .map(logInfo -> {
+                            TransactionLogInfo updated = logInfo.copy();
+                            CustomerRegistrationInfo customerRegistrationInfo = updated.getCustomerRegistrationInfo();
                             customerRegistrationInfo.setOptileCustomerId(customerRegId.getValue());
                             customerRegistrationInfo.setOptileCustomerPassword("password1");
-                            customerRepository.saveAndFlush(customerRegistrationInfo);
+
+                            if(transactionLogService.isWriteBehind()) {
+                                // journaled together with the log, the writer upserts the registration by profileId
+                                transactionLogService.saveOrUpdateTransaction(updated);
+                                customerRegistrationCache.put(customerRegistrationInfo);
+                            } else {
+                                customerRepository.updateOptileRegistration(customerRegistrationInfo.getId(),
+                                        customerRegistrationInfo.getOptileCustomerId(), customerRegistrationInfo.getOptileCustomerPassword());
+                                recentWrites.record(RecentWrites.profile(customerRegistrationInfo.getProfileId()));
+                                customerRegistrationCache.put(customerRegistrationInfo);
+                            }
+                            return updated;
                         }));
     }
 
+    // one unit of work for everything a charge response changes, runs after the Optile call returned
+    public void saveChargeResult(Payout chargePayout, TransactionLogInfo transactionLogInfo) {
+
+        if(transactionLogService.isWriteBehind()) {
+            applyChargeResult(chargePayout, transactionLogInfo);
+            return;
+        }
+
+        transactionTemplate.execute(status -> {
+            applyChargeResult(chargePayout, transactionLogInfo);
+            return null;
+        });
+    }
+
+    private void applyChargeResult(Payout chargePayout, TransactionLogInfo transactionLogInfo) {
+
+        // the chargeId goes onto the copy carrying the new registration, a write-behind save of the original would
+        // journal the registration as it was
+        TransactionLogInfo current = saveOptileDataForSession(chargePayout, transactionLogInfo);
+
+        if(chargePayout.getReturnCode().getName().equals("OK")) {
+            String chargeId = chargePayout.getIdentification().getLongId();
+            transactionLogService.updateTransaction(current, logInfo -> logInfo.setChargeId(chargeId));
+        }
+    }
+
     public boolean isCustomerRegistrationProvided(Transaction request) {
         Registration registration = request.getCustomer().getRegistration();
         return registration != null && registration.getId() != null;
@@ -0,0 +1,284 @@
+package com.kingfisher.payment.api.database.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kingfisher.payment.api.config.AsyncConfig;
+import com.kingfisher.payment.api.database.model.IdempotentRequestInfo;
+import com.kingfisher.payment.api.database.repository.IdempotentRequestRepository;
+import com.kingfisher.payment.api.database.routing.DataSourceRouting;
+import com.kingfisher.payment.api.error.IdempotencyConflictException;
+import com.kingfisher.payment.api.error.InputDTOValidationException;
+import com.kingfisher.payment.api.optile.model.Payout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates retried charge/close/refund requests carrying the same Idempotency-Key. The key is claimed in the
+ * database before Optile is called, so a retry on any instance either replays the stored Payout or, while the first
+ * request is still running elsewhere, gets a 409. Concurrent requests on this instance share the one in-flight call.
+ * A key reused for a different request (operation, path ids or body) is rejected with 422.
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String CHARGE = "charge";
+    public static final String CLOSE = "close";
+    public static final String REFUND = "refund";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Value("${payment.idempotency.cache-size}")
+    private int cacheSize;
+    // a claim older than this belongs to an instance which died during the Optile call
+    @Value("${payment.idempotency.claim-timeout}")
+    private long claimTimeout;
+
+    @Autowired
+    private IdempotentRequestRepository repository;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    @Qualifier(AsyncConfig.PAYMENT_TASK_EXECUTOR)
+    private Executor paymentTaskExecutor;
+
+    private final ConcurrentMap<String, Request> inFlight = new ConcurrentHashMap<>();
+    private Map<String, Request> completed;
+
+    @PostConstruct
+    public void init() {
+        completed = Collections.synchronizedMap(new LinkedHashMap<String, Request>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Request> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * @return hex SHA-256 over operation, path ids and body, binding an Idempotency-Key to its request
+     */
+    public String fingerprint(String operation, Object body, String... pathIds) {
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(operation.getBytes(StandardCharsets.UTF_8));
+            for(String pathId : pathIds) {
+                digest.update((byte) 0);
+                digest.update(String.valueOf(pathId).getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((byte) 0);
+            String json = body instanceof String ? (String) body : objectMapper.writeValueAsString(body);
+            digest.update(json.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder hex = new StringBuilder(64);
+            for(byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("Request fingerprint failed", e);
+        }
+    }
+
+    public CompletableFuture<Payout> execute(String operation, String idempotencyKey, String fingerprint,
+                                             Supplier<CompletableFuture<Payout>> call) {
+
+        if(idempotencyKey == null || idempotencyKey.isEmpty()) {
+            return call.get();
+        }
+
+        String key = operation + ":" + idempotencyKey;
+
+        Request request = new Request(fingerprint);
+        Request running = inFlight.putIfAbsent(key, request);
+
+        if(running != null) {
+            if(!running.matches(fingerprint)) {
+                return failed(mismatch(idempotencyKey));
+            }
+            logger.debug("Joining in-flight {} request for Idempotency-Key {}", operation, idempotencyKey);
+            return running.payout;
+        }
+
+        CompletableFuture<Payout> result = request.payout;
+
+        try {
+            Optional<Payout> stored = claimOrReplay(key, operation, idempotencyKey, fingerprint);
+
+            if(stored.isPresent()) {
+                logger.debug("Replaying stored {} response for Idempotency-Key {}", operation, idempotencyKey);
+                inFlight.remove(key, request);
+                result.complete(stored.get());
+                return result;
+            }
+
+            call.get().whenCompleteAsync((payout, e) -> {
+                if(e == null) {
+                    storeResponse(key, request, payout);
+                    inFlight.remove(key, request);
+                    result.complete(payout);
+                } else {
+                    // failures are not stored, a retry goes to Optile again
+                    releaseClaim(key);
+                    inFlight.remove(key, request);
+                    result.completeExceptionally(e);
+                }
+            }, command -> {
+                try {
+                    paymentTaskExecutor.execute(command);
+                } catch (RejectedExecutionException e) {
+                    // the completion never runs, the request fails instead of waiting forever
+                    releaseClaim(key);
+                    inFlight.remove(key, request);
+                    result.completeExceptionally(e);
+                }
+            });
+
+        } catch (InputDTOValidationException | IdempotencyConflictException e) {
+            inFlight.remove(key, request);
+            result.completeExceptionally(e);
+        } catch (RuntimeException e) {
+            releaseClaim(key);
+            inFlight.remove(key, request);
+            result.completeExceptionally(e);
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the stored response of a completed request, empty if this request now holds the claim and calls Optile
+     */
+    private Optional<Payout> claimOrReplay(String key, String operation, String idempotencyKey, String fingerprint)
+            throws InputDTOValidationException {
+
+        Request cached = completed.get(key);
+
+        if(cached != null) {
+            if(!cached.matches(fingerprint)) {
+                throw mismatch(idempotencyKey);
+            }
+            return Optional.of(cached.payout.join());
+        }
+
+        long now = System.currentTimeMillis();
+
+        if(repository.claim(key, operation, fingerprint, now) == 1) {
+            return Optional.empty();
+        }
+
+        // claimed or completed by another request, possibly on another instance; a replica may not have the row yet
+        Optional<IdempotentRequestInfo> stored = DataSourceRouting.onPrimary(() -> repository.findById(key));
+
+        if(!stored.isPresent()) {
+            // the other request failed and released its claim in between
+            if(repository.claim(key, operation, fingerprint, now) == 1) {
+                return Optional.empty();
+            }
+            throw new IdempotencyConflictException(idempotencyKey);
+        }
+
+        IdempotentRequestInfo info = stored.get();
+
+        if(!info.getFingerprint().equals(fingerprint)) {
+            throw mismatch(idempotencyKey);
+        }
+
+        if(IdempotentRequestInfo.COMPLETED.equals(info.getStatus())) {
+            Payout payout = readPayout(info.getResponse());
+            completed.put(key, new Request(info.getFingerprint(), payout));
+            return Optional.of(payout);
+        }
+
+        if(info.getTimestamp() < now - claimTimeout && repository.reclaim(key, info.getTimestamp(), now) == 1) {
+            logger.warn("Taking over {} request for Idempotency-Key {} claimed at {} and never completed", operation, idempotencyKey, info.getTimestamp());
+            return Optional.empty();
+        }
+
+        throw new IdempotencyConflictException(idempotencyKey);
+    }
+
+    private void storeResponse(String key, Request request, Payout payout) {
+
+        if(payout == null) {
+            releaseClaim(key);
+            return;
+        }
+
+        completed.put(key, new Request(request.fingerprint, payout));
+
+        try {
+            repository.complete(key, objectMapper.writeValueAsString(payout), System.currentTimeMillis());
+        } catch (Exception e) {
+            // served from memory here; retries on other instances get 409 until the claim times out
+            logger.error("Could not store response for Idempotency-Key {}", key, e);
+        }
+    }
+
+    private void releaseClaim(String key) {
+        try {
+            repository.release(key);
+        } catch (Exception e) {
+            logger.error("Could not release claim of Idempotency-Key {}, retries get 409 until it times out", key, e);
+        }
+    }
+
+    private Payout readPayout(String response) {
+        try {
+            return objectMapper.readValue(response, Payout.class);
+        } catch (IOException e) {
+            throw new IllegalStateException("Stored idempotent response is not readable", e);
+        }
+    }
+
+    private static InputDTOValidationException mismatch(String idempotencyKey) {
+        return new InputDTOValidationException("Idempotency-Key " + idempotencyKey + " was used for a different request");
+    }
+
+    private static CompletableFuture<Payout> failed(Throwable e) {
+        CompletableFuture<Payout> result = new CompletableFuture<>();
+        result.completeExceptionally(e);
+        return result;
+    }
+
+    private static class Request {
+
+        private final String fingerprint;
+        private final CompletableFuture<Payout> payout;
+
+        private Request(String fingerprint) {
+            this.fingerprint = fingerprint;
+            this.payout = new CompletableFuture<>();
+        }
+
+        private Request(String fingerprint, Payout payout) {
+            this.fingerprint = fingerprint;
+            this.payout = CompletableFuture.completedFuture(payout);
+        }
+
+        private boolean matches(String other) {
+            return fingerprint.equals(other);
+        }
+    }
+}
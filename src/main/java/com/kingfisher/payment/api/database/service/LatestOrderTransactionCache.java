@@ -0,0 +1,92 @@
+package com.kingfisher.payment.api.database.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.kingfisher.payment.api.database.model.TransactionLogInfo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * orderId to latest TransactionLogInfo, filled when the session is created so charge and close find the listId and
+ * chargeId without querying. A write invalidates the entry of its order before it starts and publishes the written log
+ * only once it committed, so a rolled back write is never served and a lookup meanwhile goes to the database. An entry
+ * is only replaced by a log with the same or a newer timestamp, a late load of an older version cannot hide the latest.
+ * Writes of other instances are not seen here before the entry expires.
+ */
+@Component
+public class LatestOrderTransactionCache implements MeterBinder {
+
+    private static final String CACHE_NAME = "latestOrderTransaction";
+
+    @Value("${transaction.cache.maximum-size}")
+    private long maximumSize;
+    @Value("${transaction.cache.expire-after-write}")
+    private long expireAfterWrite;
+
+    private Cache<String, TransactionLogInfo> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public Optional<TransactionLogInfo> get(String orderId, Function<String, Optional<TransactionLogInfo>> loader) {
+
+        TransactionLogInfo transactionLogInfo = cache.getIfPresent(orderId);
+
+        if(transactionLogInfo != null) {
+            return Optional.of(transactionLogInfo);
+        }
+
+        Optional<TransactionLogInfo> loaded = loader.apply(orderId);
+        loaded.ifPresent(this::merge);
+
+        return loaded;
+    }
+
+    public Optional<TransactionLogInfo> getIfPresent(String orderId) {
+        return Optional.ofNullable(cache.getIfPresent(orderId));
+    }
+
+    // inside a transaction the entry is only published once the transaction commits
+    public void put(TransactionLogInfo transactionLogInfo) {
+        if(transactionLogInfo != null && transactionLogInfo.getOrderId() != null) {
+            TransactionCallbacks.afterCommit(() -> merge(transactionLogInfo));
+        }
+    }
+
+    public void invalidate(String orderId) {
+        if(orderId != null) {
+            cache.invalidate(orderId);
+        }
+    }
+
+    private void merge(TransactionLogInfo transactionLogInfo) {
+        cache.asMap().merge(transactionLogInfo.getOrderId(), transactionLogInfo, LatestOrderTransactionCache::newer);
+    }
+
+    // the latest session of the order, for the same session the latest version
+    private static TransactionLogInfo newer(TransactionLogInfo cached, TransactionLogInfo updated) {
+        if(updated.getTimestamp() != cached.getTimestamp()) {
+            return updated.getTimestamp() > cached.getTimestamp() ? updated : cached;
+        }
+        return updated.getVersion() >= cached.getVersion() ? updated : cached;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+    }
+}
@@ -1,80 +1,297 @@
 package com.kingfisher.payment.api.database.service;
 
 import com.kingfisher.payment.api.database.model.CustomerRegistrationInfo;
+import com.kingfisher.payment.api.database.model.LatestChargeView;
 import com.kingfisher.payment.api.database.model.TransactionLogInfo;
+import com.kingfisher.payment.api.database.repository.CustomerRepository;
 import com.kingfisher.payment.api.database.repository.TransactionLogRepository;
+import com.kingfisher.payment.api.database.routing.DataSourceRouting;
+import com.kingfisher.payment.api.database.routing.RecentWrites;
+import com.kingfisher.payment.api.database.writebehind.TransactionLogWriteBehind;
+import com.kingfisher.payment.api.error.InputDTOValidationException;
+import com.kingfisher.payment.api.id.TransactionIdGenerator;
 import com.kingfisher.payment.api.optile.model.NetworkList;
+import com.kingfisher.payment.api.optile.model.Registration;
 import com.kingfisher.payment.api.optile.model.Transaction;
-import org.joda.time.DateTime;
+import com.kingfisher.payment.api.optile.stream.ListRequestRewriter;
+import com.kingfisher.payment.api.optile.stream.ListResponseSummary;
+import com.kingfisher.payment.api.optile.stream.RewrittenListRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.annotation.PostConstruct;
 import javax.validation.constraints.NotNull;
+import java.io.IOException;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongFunction;
 
 @Service
 public class TransactionLogService {
 
+    static final PageRequest LATEST = PageRequest.of(0, 1);
+    private static final long CREATED_AT_SLACK = TimeUnit.DAYS.toMillis(1);
+
     @Value("${optile.DTO.transaction.integration.mode}")
     private String integrationMode;
     @Value("${optile.DTO.transaction.updateOnly}")
     private boolean updateOnly;
     @Value("${optile.notification.url}")
     private String notificationUrl;
+    @Value("${transaction.log.update.max-attempts}")
+    private int updateMaxAttempts;
+    @Value("${transaction.log.order-lookup-window}")
+    private long orderLookupWindow;
 
     @Autowired
     private TransactionLogRepository repository;
+    @Autowired
+    private CustomerRepository customerRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private CustomerRegistrationCache customerRegistrationCache;
+    @Autowired
+    private LatestOrderTransactionCache latestOrderTransactionCache;
+    @Autowired
+    private TransactionIdGenerator transactionIdGenerator;
+    @Autowired
+    private RecentWrites recentWrites;
+    // present in write-behind mode only
+    @Autowired(required = false)
+    private TransactionLogWriteBehind writeBehind;
+
+    private ListRequestRewriter listRequestRewriter;
+
+    @PostConstruct
+    public void init() {
+        listRequestRewriter = new ListRequestRewriter(integrationMode, updateOnly, notificationUrl, this::generateTransactionId);
+    }
+
+    public TransactionLogInfo saveOrUpdateTransaction(TransactionLogInfo transactionLogInfo) {
+
+        latestOrderTransactionCache.invalidate(transactionLogInfo.getOrderId());
+
+        if(writeBehind != null) {
+            writeBehind.save(transactionLogInfo);
+            recordWrite(transactionLogInfo);
+            latestOrderTransactionCache.put(transactionLogInfo);
+            return transactionLogInfo;
+        }
+
+        TransactionLogInfo saved = transactionTemplate.execute(status -> {
+            CustomerRegistrationInfo registrationInfo = transactionLogInfo.getCustomerRegistrationInfo();
+            // a first session creates the registration ahead of the log referencing it, or gets the row a concurrent
+            // session of the same customer created
+            if(transactionLogInfo.isNew() && registrationInfo.getId() == 0) {
+                transactionLogInfo.setCustomerRegistrationInfo(customerRepository.upsertByProfileId(registrationInfo.getProfileId()));
+            }
+            return repository.save(transactionLogInfo);
+        });
+        recordWrite(saved);
+        recentWrites.record(RecentWrites.profile(saved.getCustomerRegistrationInfo().getProfileId()));
+        latestOrderTransactionCache.put(saved);
+        return saved;
+    }
 
+    /**
+     * Applies change to a copy of the log and writes it unless the row was updated since the log was read, in which
+     * case the change is applied again to the current row. No row lock is taken, concurrent writers (charge and Optile
+     * notifications) just retry. Only chargeId is written, the status is NotificationStatusWriter's.
+     *
+     * @return the updated copy
+     * @throws OptimisticLockingFailureException when every attempt lost against a concurrent update
+     */
+    public TransactionLogInfo updateTransaction(TransactionLogInfo transactionLogInfo, Consumer<TransactionLogInfo> change) {
+
+        TransactionLogInfo current = transactionLogInfo.copy();
+
+        if(writeBehind != null || current.isNew()) {
+            change.accept(current);
+            return saveOrUpdateTransaction(current);
+        }
+
+        latestOrderTransactionCache.invalidate(current.getOrderId());
+
+        for(int attempt = 1; ; attempt++) {
+
+            change.accept(current);
+
+            if(tryUpdate(current)) {
+                current.setVersion(current.getVersion() + 1);
+                recordWrite(current);
+                latestOrderTransactionCache.put(current);
+                return current;
+            }
+
+            if(attempt == updateMaxAttempts) {
+                throw new OptimisticLockingFailureException("TransactionLogInfo " + current.getLogId() + " still changing after " + attempt + " attempts");
+            }
+
+            long id = current.getLogId();
+            long timestamp = current.getTimestamp();
+            // the row a concurrent writer just changed, a replica may not have it yet
+            current = DataSourceRouting.onPrimary(() -> repository.findProjectionById(id, timestamp, timestamp))
+                    .orElseThrow(() -> new OptimisticLockingFailureException("TransactionLogInfo " + id + " no longer exists"));
+        }
+    }
+
+    private boolean tryUpdate(TransactionLogInfo transactionLogInfo) {
+        try {
+            return repository.updateChargeId(transactionLogInfo.getLogId(), transactionLogInfo.getTimestamp(),
+                    transactionLogInfo.getChargeId(), transactionLogInfo.getVersion()) == 1;
+        } catch (ConcurrencyFailureException e) {
+            // databases without row re-checks (H2) fail the statement instead of updating no row
+            return false;
+        }
+    }
+
+    private void recordWrite(TransactionLogInfo transactionLogInfo) {
+        recentWrites.record(RecentWrites.transaction(transactionLogInfo.getTransactionId()));
+    }
 
-    public void saveOrUpdateTransaction(TransactionLogInfo transactionLogInfo) {
-        repository.save(transactionLogInfo);
+    public boolean isWriteBehind() {
+        return writeBehind != null;
     }
 
     public Optional<TransactionLogInfo> getTransactionLogById(@NotNull String transactionId) {
-        return  repository.findById(transactionId);
+
+        if(writeBehind != null) {
+            Optional<TransactionLogInfo> pending = writeBehind.getPending(transactionId);
+            if(pending.isPresent()) {
+                return pending;
+            }
+        }
+
+        return recentWrites.read(RecentWrites.transaction(transactionId), () -> findStoredTransactionLog(transactionId));
+    }
+
+    /**
+     * @return true while the log of the transactionId is in this instance's write-behind journal and not inserted yet
+     */
+    public boolean isWritePending(@NotNull String transactionId) {
+        return writeBehind != null && writeBehind.getPending(transactionId).isPresent();
+    }
+
+    /**
+     * The log of the transactionId as stored, read from the primary. Notifications for a session may be processed on
+     * another instance than the one which created it a moment before, a replica may not have the row yet. Logs only in
+     * the write-behind journal are not returned, check isWritePending before.
+     */
+    public Optional<TransactionLogInfo> getStoredTransactionLog(@NotNull String transactionId) {
+        return DataSourceRouting.onPrimary(() -> findStoredTransactionLog(transactionId));
+    }
+
+    private Optional<TransactionLogInfo> findStoredTransactionLog(String transactionId) {
+
+        long id = TransactionIdGenerator.decode(transactionId);
+        // the log is stamped shortly after its id was generated, which narrows the read to one or two partitions
+        long createdAt = TransactionIdGenerator.createdAt(transactionId);
+        long from = createdAt < 0 ? Long.MIN_VALUE : createdAt - CREATED_AT_SLACK;
+        long to = createdAt < 0 ? Long.MAX_VALUE : createdAt + CREATED_AT_SLACK;
+
+        return id > 0 ? repository.findProjectionById(id, from, to) : repository.findProjectionByTransactionId(transactionId, from, to);
     }
 
+    /**
+     * Served from LatestOrderTransactionCache, which the session and charge written on this instance fill. On a miss
+     * the log is read from the primary: the session or charge may have been written by another instance and a replica
+     * may not have it yet. In write-behind mode a log this instance has not flushed yet is newer than the database and
+     * is served from the journal.
+     */
     public Optional<TransactionLogInfo> getLatestOrderTransaction(String orderId) {
-        return repository.findFirstByOrderIdOrderByTimestampDesc(orderId);
+
+        if(writeBehind != null) {
+            Optional<TransactionLogInfo> pending = writeBehind.getPendingLatestOrderTransaction(orderId);
+            if(pending.isPresent()) {
+                return pending;
+            }
+        }
+
+        return latestOrderTransactionCache.get(orderId,
+                id -> DataSourceRouting.onPrimary(() -> findLatest(since -> repository.findLatestByOrderId(id, since, LATEST))));
+    }
+
+    // closing only needs two columns, a cache miss reads just those and leaves the cache to the charge path. A cached
+    // log without chargeId is not trusted: the charge may have been made on another instance.
+    public Optional<LatestChargeView> getLatestOrderCharge(String orderId) {
+
+        Optional<TransactionLogInfo> known = latestOrderTransactionCache.getIfPresent(orderId)
+                .filter(logInfo -> logInfo.getChargeId() != null);
+
+        if(!known.isPresent() && writeBehind != null) {
+            known = writeBehind.getPendingLatestOrderTransaction(orderId);
+        }
+
+        if(known.isPresent()) {
+            return known.map(logInfo -> new LatestChargeView(logInfo.getChargeId(), logInfo.getCustomerRegistrationInfo().getProfileId()));
+        }
+
+        return DataSourceRouting.onPrimary(() -> findLatest(since -> repository.findLatestChargeByOrderId(orderId, since, LATEST)));
     }
 
     public void populateTransactionWithOptileStaticDataAndGenerateTransactionId(Transaction transaction, String orderId) {
         transaction.setIntegration(Transaction.IntegrationEnum.fromValue(integrationMode));
-        transaction.setTransactionId(generateTransactionId(orderId, transaction.getCustomer().getNumber()));
+        transaction.setTransactionId(generateTransactionId());
         transaction.setUpdateOnly(updateOnly);
         transaction.getCallback().setNotificationUrl(notificationUrl);
     }
 
+    public RewrittenListRequest rewriteListRequestWithOptileStaticDataAndGenerateTransactionId(byte[] atgRequest, Function<String, Optional<Registration>> registrationLookup) throws InputDTOValidationException, IOException {
+        return listRequestRewriter.rewrite(atgRequest, registrationLookup);
+    }
+
     public void initAndSaveNewTransactionLogInfo(Transaction request, NetworkList response, String orderId, Optional<CustomerRegistrationInfo> registrationInfo) {
+        initAndSaveNewTransactionLogInfo(request, ListResponseSummary.of(response), orderId, registrationInfo);
+    }
+
+    public void initAndSaveNewTransactionLogInfo(Transaction request, ListResponseSummary response, String orderId, Optional<CustomerRegistrationInfo> registrationInfo) {
+        initAndSaveNewTransactionLogInfo(request.getCustomer().getNumber(), response, orderId, registrationInfo);
+    }
+
+    public void initAndSaveNewTransactionLogInfo(String customerNumber, ListResponseSummary response, String orderId, Optional<CustomerRegistrationInfo> registrationInfo) {
 
         CustomerRegistrationInfo customerRegistrationInfo;
 
         if(!registrationInfo.isPresent()) {
-            customerRegistrationInfo = new CustomerRegistrationInfo(request.getCustomer().getNumber());
+            customerRegistrationInfo = new CustomerRegistrationInfo(customerNumber);
         }else {
             customerRegistrationInfo = registrationInfo.get();
         }
 
+        long id = TransactionIdGenerator.decode(response.getTransactionId());
+
         TransactionLogInfo transactionLogInfo = new TransactionLogInfo();
-        transactionLogInfo.setTimestamp(response.getTimestamp().getMillis());
+        transactionLogInfo.setId(id > 0 ? id : transactionIdGenerator.nextId());
+        transactionLogInfo.setTimestamp(response.getTimestamp());
         transactionLogInfo.setCustomerRegistrationInfo(customerRegistrationInfo);
-        transactionLogInfo.setTransactionId(response.getIdentification().getTransactionId());
-        transactionLogInfo.setListId(response.getIdentification().getLongId());
+        transactionLogInfo.setTransactionId(response.getTransactionId());
+        transactionLogInfo.setListId(response.getLongId());
         transactionLogInfo.setOrderId(orderId);
 
-        saveOrUpdateTransaction(transactionLogInfo);
+        // the saved registration (carrying the generated id unless written behind) is cached for the customer's next session
+        customerRegistrationCache.put(saveOrUpdateTransaction(transactionLogInfo).getCustomerRegistrationInfo());
     }
 
-    private String generateTransactionId(@NotNull String orderId, @NotNull String customerId) {
+    // orders are charged and closed within days of their session, so the partitions of the lookup window are searched
+    // first; an older order is still found, by a second query over all partitions
+    private <T> Optional<T> findLatest(LongFunction<List<T>> querySince) {
+
+        Optional<T> recent = querySince.apply(System.currentTimeMillis() - orderLookupWindow).stream().findFirst();
 
-        return new StringBuilder()
-                .append(DateTime.now().getMillis())
-                .append("-")
-                .append(orderId)
-                .append("-")
-                .append(customerId).toString();
+        return recent.isPresent() ? recent : querySince.apply(Long.MIN_VALUE).stream().findFirst();
+    }
 
+    private String generateTransactionId() {
+        return TransactionIdGenerator.encode(transactionIdGenerator.nextId());
     }
 
 }
@@ -0,0 +1,89 @@
+package com.kingfisher.payment.api.database.writebehind;
+
+import com.kingfisher.payment.api.database.model.CustomerRegistrationInfo;
+import com.kingfisher.payment.api.database.model.TransactionLogInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Journal representation of a TransactionLogInfo together with its CustomerRegistrationInfo. The leading version byte
+ * makes a record of any other format fail on replay rather than be misread.
+ */
+final class TransactionLogRecordCodec {
+
+    private static final byte VERSION = 2;
+
+    private TransactionLogRecordCodec() {
+    }
+
+    static byte[] encode(TransactionLogInfo transactionLogInfo) {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+
+        try(DataOutputStream out = new DataOutputStream(bytes)) {
+
+            CustomerRegistrationInfo registrationInfo = transactionLogInfo.getCustomerRegistrationInfo();
+
+            out.writeByte(VERSION);
+            out.writeLong(transactionLogInfo.getLogId());
+            writeNullable(out, transactionLogInfo.getTransactionId());
+            out.writeLong(transactionLogInfo.getTimestamp());
+            writeNullable(out, transactionLogInfo.getListId());
+            writeNullable(out, transactionLogInfo.getOrderId());
+            writeNullable(out, transactionLogInfo.getChargeId());
+            writeNullable(out, registrationInfo.getProfileId());
+            writeNullable(out, registrationInfo.getOptileCustomerId());
+            writeNullable(out, registrationInfo.getOptileCustomerPassword());
+
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    static TransactionLogInfo decode(byte[] record) {
+
+        try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+
+            byte version = in.readByte();
+            if(version != VERSION) {
+                throw new IllegalStateException("Unknown transaction log record version " + version);
+            }
+
+            TransactionLogInfo transactionLogInfo = new TransactionLogInfo();
+            transactionLogInfo.setId(in.readLong());
+            transactionLogInfo.setTransactionId(readNullable(in));
+            transactionLogInfo.setTimestamp(in.readLong());
+            transactionLogInfo.setListId(readNullable(in));
+            transactionLogInfo.setOrderId(readNullable(in));
+            transactionLogInfo.setChargeId(readNullable(in));
+
+            CustomerRegistrationInfo registrationInfo = new CustomerRegistrationInfo(readNullable(in));
+            registrationInfo.setOptileCustomerId(readNullable(in));
+            registrationInfo.setOptileCustomerPassword(readNullable(in));
+            transactionLogInfo.setCustomerRegistrationInfo(registrationInfo);
+
+            return transactionLogInfo;
+
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if(value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
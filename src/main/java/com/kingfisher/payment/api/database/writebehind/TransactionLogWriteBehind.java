@@ -0,0 +1,301 @@
+package com.kingfisher.payment.api.database.writebehind;
+
+import com.kingfisher.payment.api.database.model.TransactionLogInfo;
+import com.kingfisher.payment.api.journal.DeadLetterFile;
+import com.kingfisher.payment.api.journal.JournalFullException;
+import com.kingfisher.payment.api.journal.JournalRecord;
+import com.kingfisher.payment.api.journal.MappedJournal;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind for TransactionLogInfo (transaction.log.write-behind=true). A save appends the log and its customer
+ * registration to a local fsync'd journal and returns; a single writer thread drains the journal to Postgres in JDBC
+ * batches of idempotent upserts and checkpoints it. Records still in the journal after a restart are replayed.
+ * Until a record is written the log is served from memory, so a charge right after session creation finds it.
+ * A batch failing max-attempts times in a row is written record by record, records the database rejects are moved to
+ * a dead-letter file instead of holding up the journal.
+ */
+@Component
+@ConditionalOnProperty(name = TransactionLogWriteBehind.WRITE_BEHIND_PROPERTY, havingValue = "true")
+public class TransactionLogWriteBehind implements MeterBinder {
+
+    public static final String WRITE_BEHIND_PROPERTY = "transaction.log.write-behind";
+
+    private static final String UPSERT_CUSTOMER_REGISTRATION =
+            "INSERT INTO customer_registration_info (profile_id, optile_customer_id, optile_customer_password) VALUES (?, ?, ?) " +
+            "ON CONFLICT (profile_id) DO UPDATE SET " +
+            "optile_customer_id = COALESCE(EXCLUDED.optile_customer_id, customer_registration_info.optile_customer_id), " +
+            "optile_customer_password = COALESCE(EXCLUDED.optile_customer_password, customer_registration_info.optile_customer_password) " +
+            "WHERE EXCLUDED.optile_customer_id IS NOT NULL AND customer_registration_info.optile_customer_id IS DISTINCT FROM EXCLUDED.optile_customer_id " +
+            "OR EXCLUDED.optile_customer_password IS NOT NULL AND customer_registration_info.optile_customer_password IS DISTINCT FROM EXCLUDED.optile_customer_password";
+
+    private static final String UPSERT_TRANSACTION_LOG =
+            "INSERT INTO transaction_log_info (id, transaction_id, timestamp, list_id, order_id, charge_id, customer_registration_info_id) " +
+            "VALUES (COALESCE(?, nextval('transaction_log_info_legacy_id_seq')), ?, ?, ?, ?, ?, (SELECT id FROM customer_registration_info WHERE profile_id = ?)) " +
+            "ON CONFLICT (transaction_id, timestamp) DO UPDATE SET charge_id = COALESCE(EXCLUDED.charge_id, transaction_log_info.charge_id), " +
+            "version = transaction_log_info.version + 1";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Value("${transaction.log.journal.path}")
+    private String journalPath;
+    @Value("${transaction.log.journal.capacity}")
+    private int journalCapacity;
+    @Value("${transaction.log.journal.append-timeout}")
+    private long appendTimeout;
+    @Value("${transaction.log.write-behind.batch-size}")
+    private int batchSize;
+    @Value("${transaction.log.write-behind.flush-interval}")
+    private long flushInterval;
+    @Value("${transaction.log.write-behind.max-attempts}")
+    private int maxAttempts;
+    @Value("${transaction.log.journal.dead-letter-path}")
+    private String deadLetterPath;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private MappedJournal journal;
+    private DeadLetterFile deadLetters;
+    private TransactionTemplate transactionTemplate;
+    private ScheduledExecutorService writer;
+    // consecutive failed writes of the batch at the head of the journal, writer thread only
+    private int failedAttempts;
+
+    // append and track happen together, otherwise the writer could untrack a record before it is tracked
+    private final Object trackLock = new Object();
+    private final ConcurrentMap<String, PendingLog> pendingById = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, PendingLog> pendingByOrder = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() throws IOException {
+
+        journal = new MappedJournal(Paths.get(journalPath), journalCapacity);
+        deadLetters = new DeadLetterFile(Paths.get(deadLetterPath));
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        List<JournalRecord> replay = journal.readPending(Integer.MAX_VALUE);
+        replay.forEach(record -> track(TransactionLogRecordCodec.decode(record.getPayload()), record.getSequence()));
+
+        if(!replay.isEmpty()) {
+            logger.info("Replaying {} transaction log records from {}", replay.size(), journalPath);
+        }
+
+        writer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "transaction-log-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::drain, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException, InterruptedException {
+
+        writer.shutdown();
+        writer.awaitTermination(10, TimeUnit.SECONDS);
+
+        // last attempt, whatever is left is replayed on the next start
+        drain();
+        journal.close();
+        deadLetters.close();
+    }
+
+    /**
+     * Durably records the log, it is written to the database by the writer thread.
+     */
+    public void save(TransactionLogInfo transactionLogInfo) {
+
+        byte[] record = TransactionLogRecordCodec.encode(transactionLogInfo);
+
+        try {
+            synchronized (trackLock) {
+                track(transactionLogInfo, journal.append(record, appendTimeout, TimeUnit.MILLISECONDS));
+            }
+        } catch (JournalFullException e) {
+            throw new IllegalStateException("Transaction log journal is full, database writes are falling behind", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for journal space", e);
+        }
+    }
+
+    public Optional<TransactionLogInfo> getPending(String transactionId) {
+        return Optional.ofNullable(pendingById.get(transactionId)).map(PendingLog::getTransactionLogInfo);
+    }
+
+    public Optional<TransactionLogInfo> getPendingLatestOrderTransaction(String orderId) {
+        return Optional.ofNullable(pendingByOrder.get(orderId)).map(PendingLog::getTransactionLogInfo);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("transaction.log.journal.pending", journal, MappedJournal::getPendingCount)
+                .description("Transaction log records journaled but not yet written to the database")
+                .register(registry);
+    }
+
+    synchronized void drain() {
+
+        List<JournalRecord> records;
+
+        while(!(records = journal.readPending(batchSize)).isEmpty()) {
+
+            long applied;
+
+            try {
+                write(records);
+                applied = records.get(records.size() - 1).getSequence();
+                failedAttempts = 0;
+            } catch (RuntimeException e) {
+                if(++failedAttempts < maxAttempts) {
+                    // records stay in the journal, the next run retries them
+                    logger.error("Writing journaled transaction logs failed (attempt {} of {}), {} pending",
+                            failedAttempts, maxAttempts, journal.getPendingCount(), e);
+                    return;
+                }
+                logger.error("Writing journaled transaction logs failed {} times, writing the batch record by record", failedAttempts, e);
+                applied = writeEach(records);
+            }
+
+            if(applied == 0) {
+                return;
+            }
+
+            failedAttempts = 0;
+            journal.checkpoint(applied);
+
+            synchronized (trackLock) {
+                untrack(applied);
+            }
+        }
+    }
+
+    /**
+     * Writes the records one by one, those which cannot be written are moved to the dead-letter file. Stops at the first
+     * record which fails for another reason (e.g. the database is unavailable), it is retried like a batch.
+     *
+     * @return sequence of the last record written or dead-lettered, 0 for none
+     */
+    private long writeEach(List<JournalRecord> records) {
+
+        long applied = 0;
+
+        for(JournalRecord record : records) {
+            try {
+                write(Collections.singletonList(record));
+            } catch (RuntimeException e) {
+                if(!isRejected(e) || !deadLetter(record, e)) {
+                    return applied;
+                }
+            }
+            applied = record.getSequence();
+        }
+
+        return applied;
+    }
+
+    private boolean deadLetter(JournalRecord record, RuntimeException e) {
+        try {
+            deadLetters.append(record);
+            logger.error("Transaction log record {} cannot be written, moved to {}", record.getSequence(), deadLetterPath, e);
+            return true;
+        } catch (IOException ioe) {
+            logger.error("Could not dead-letter transaction log record {}, it stays in the journal", record.getSequence(), ioe);
+            return false;
+        }
+    }
+
+    private void write(List<JournalRecord> records) {
+
+        List<Object[]> registrations = new ArrayList<>(records.size());
+        List<Object[]> logs = new ArrayList<>(records.size());
+
+        for(JournalRecord record : records) {
+            TransactionLogInfo log = TransactionLogRecordCodec.decode(record.getPayload());
+            registrations.add(new Object[]{
+                    log.getCustomerRegistrationInfo().getProfileId(),
+                    log.getCustomerRegistrationInfo().getOptileCustomerId(),
+                    log.getCustomerRegistrationInfo().getOptileCustomerPassword()});
+            logs.add(new Object[]{
+                    log.getLogId() > 0 ? log.getLogId() : null, log.getTransactionId(), log.getTimestamp(), log.getListId(), log.getOrderId(), log.getChargeId(),
+                    log.getCustomerRegistrationInfo().getProfileId()});
+        }
+
+        transactionTemplate.execute(status -> {
+            jdbcTemplate.batchUpdate(UPSERT_CUSTOMER_REGISTRATION, registrations);
+            jdbcTemplate.batchUpdate(UPSERT_TRANSACTION_LOG, logs);
+            return null;
+        });
+    }
+
+    // the record itself cannot be written (constraint, value too long, unreadable record), unlike a database which is
+    // unavailable
+    static boolean isRejected(RuntimeException e) {
+        return e instanceof NonTransientDataAccessException && !(e instanceof DataAccessResourceFailureException)
+                || e instanceof IllegalStateException || e instanceof UncheckedIOException;
+    }
+
+    private void track(TransactionLogInfo transactionLogInfo, long sequence) {
+
+        PendingLog pending = new PendingLog(transactionLogInfo, sequence);
+        pendingById.put(transactionLogInfo.getTransactionId(), pending);
+        pendingByOrder.merge(transactionLogInfo.getOrderId(), pending,
+                (current, updated) -> updated.getTransactionLogInfo().getTimestamp() >= current.getTransactionLogInfo().getTimestamp() ? updated : current);
+    }
+
+    // a log saved again after the batch was read keeps its entry until its newer record is written as well
+    private void untrack(long appliedSequence) {
+        pendingById.values().removeIf(pending -> pending.getSequence() <= appliedSequence);
+        pendingByOrder.values().removeIf(pending -> pending.getSequence() <= appliedSequence);
+    }
+
+    private static class PendingLog {
+
+        private final TransactionLogInfo transactionLogInfo;
+        private final long sequence;
+
+        private PendingLog(TransactionLogInfo transactionLogInfo, long sequence) {
+            this.transactionLogInfo = transactionLogInfo;
+            this.sequence = sequence;
+        }
+
+        TransactionLogInfo getTransactionLogInfo() {
+            return transactionLogInfo;
+        }
+
+        long getSequence() {
+            return sequence;
+        }
+    }
+}
@@ -10,6 +10,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.annotation.Order;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.ServletRequestBindingException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.client.ResourceAccessException;
@@ -78,6 +79,38 @@ class GlobalExceptionHandler {
         return ResponseEntity.status(status.value()).body(info);
     }
 
+    @ExceptionHandler({OptileCircuitOpenException.class})
+    public ResponseEntity handle(OptileCircuitOpenException e) {
+        logger.trace(PROCESSING, e.getStackTrace());
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getErrorInfo());
+    }
+
+    // Optile redelivers a notification which is not acknowledged with 200
+    @ExceptionHandler({NotificationQueueFullException.class})
+    public ResponseEntity handle(NotificationQueueFullException e) {
+        logger.warn(e.getMessage());
+
+        HttpStatus status = HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity.status(status.value()).body(new ErrorInfo(status.getReasonPhrase()));
+    }
+
+    // the client retried before its first request finished, possibly on another instance
+    @ExceptionHandler({IdempotencyConflictException.class})
+    public ResponseEntity handle(IdempotencyConflictException e) {
+        logger.debug(e.getMessage());
+
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(new ErrorInfo("Errors: " + e.getMessage()));
+    }
+
+    // missing or invalid request parameters, e.g. of an Optile notification
+    @ExceptionHandler({ServletRequestBindingException.class})
+    public ResponseEntity handle(ServletRequestBindingException e) {
+        logger.debug(e.getMessage());
+
+        return ResponseEntity.badRequest().body(new ErrorInfo("Errors: " + e.getMessage()));
+    }
+
     @ExceptionHandler({InputDTOValidationException.class})
     public ResponseEntity handle(InputDTOValidationException e) {
         logger.trace(PROCESSING, e.getStackTrace());
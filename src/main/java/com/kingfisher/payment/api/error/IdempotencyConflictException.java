@@ -0,0 +1,8 @@
+package com.kingfisher.payment.api.error;
+
+public class IdempotencyConflictException extends RuntimeException {
+
+    public IdempotencyConflictException(String idempotencyKey) {
+        super("Request with Idempotency-Key " + idempotencyKey + " is still in progress");
+    }
+}
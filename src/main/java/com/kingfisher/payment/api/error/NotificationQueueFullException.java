@@ -0,0 +1,8 @@
+package com.kingfisher.payment.api.error;
+
+public class NotificationQueueFullException extends RuntimeException {
+
+    public NotificationQueueFullException(long pending, Throwable cause) {
+        super("Notification queue full, " + pending + " notifications not processed yet", cause);
+    }
+}
@@ -0,0 +1,17 @@
+package com.kingfisher.payment.api.error;
+
+import com.kingfisher.payment.api.optile.model.ErrorInfo;
+
+public class OptileCircuitOpenException extends RuntimeException {
+
+    private final transient ErrorInfo errorInfo;
+
+    public OptileCircuitOpenException(String operation, ErrorInfo errorInfo) {
+        super("Circuit breaker for Optile operation " + operation + " is open");
+        this.errorInfo = errorInfo;
+    }
+
+    public ErrorInfo getErrorInfo() {
+        return errorInfo;
+    }
+}
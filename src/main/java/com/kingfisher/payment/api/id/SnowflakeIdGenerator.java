@@ -0,0 +1,71 @@
+package com.kingfisher.payment.api.id;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 64-bit time ordered ids: 41 bits of milliseconds since {@link #EPOCH}, 10 bits node id, 12 bits sequence.
+ *
+ * Timestamp and sequence of the last id are packed into one AtomicLong and advanced with a CAS, no lock is taken.
+ * When the 4096 ids of a millisecond are used up, or the clock moves backwards, the generator continues on the
+ * following millisecond instead of waiting, so ids stay unique and increasing per node; the borrowed time is given
+ * back as soon as the clock catches up.
+ */
+public class SnowflakeIdGenerator {
+
+    // 2018-01-01T00:00:00Z, gives ids until 2087
+    public static final long EPOCH = 1514764800000L;
+
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    public static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long nodeId;
+    private final LongSupplier clock;
+    // (millis since EPOCH << SEQUENCE_BITS) | sequence of the last id handed out
+    private final AtomicLong state = new AtomicLong();
+
+    public SnowflakeIdGenerator(long nodeId) {
+        this(nodeId, System::currentTimeMillis);
+    }
+
+    SnowflakeIdGenerator(long nodeId, LongSupplier clock) {
+        if(nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID + ", was " + nodeId);
+        }
+        this.nodeId = nodeId;
+        this.clock = clock;
+    }
+
+    public long nextId() {
+
+        while(true) {
+
+            long now = clock.getAsLong() - EPOCH;
+            long last = state.get();
+            long next;
+
+            if(now > last >>> SEQUENCE_BITS) {
+                next = now << SEQUENCE_BITS;
+            } else {
+                // same millisecond or clock behind: next sequence, overflowing into the following millisecond
+                next = last + 1;
+            }
+
+            if(state.compareAndSet(last, next)) {
+                return (next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS)
+                        | nodeId << SEQUENCE_BITS
+                        | next & SEQUENCE_MASK;
+            }
+        }
+    }
+
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+
+    public static long nodeIdOf(long id) {
+        return (id >>> SEQUENCE_BITS) & MAX_NODE_ID;
+    }
+}
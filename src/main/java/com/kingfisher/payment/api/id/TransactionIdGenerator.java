@@ -0,0 +1,80 @@
+package com.kingfisher.payment.api.id;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Transaction ids sent to Optile: a Snowflake id in base 36 (at most 13 characters). The numeric id is the primary key
+ * of TransactionLogInfo, the transactionId of a generated id decodes back to it.
+ */
+@Component
+public class TransactionIdGenerator {
+
+    private static final int RADIX = 36;
+
+    // unique per running instance, 0-1023
+    @Value("${transaction.id.node-id}")
+    private long nodeId;
+
+    private SnowflakeIdGenerator generator;
+
+    @PostConstruct
+    public void init() {
+        generator = new SnowflakeIdGenerator(nodeId);
+    }
+
+    public long nextId() {
+        return generator.nextId();
+    }
+
+    public static String encode(long id) {
+        return Long.toString(id, RADIX);
+    }
+
+    /**
+     * @return when the transactionId was generated, for both formats; -1 if it is neither
+     */
+    public static long createdAt(String transactionId) {
+
+        long id = decode(transactionId);
+        if(id > 0) {
+            return SnowflakeIdGenerator.timestampOf(id);
+        }
+
+        int separator = transactionId == null ? -1 : transactionId.indexOf('-');
+        if(separator <= 0) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(transactionId.substring(0, separator));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the numeric id of a generated transactionId, -1 for ids of the former "millis-orderId-customer" format
+     */
+    public static long decode(String transactionId) {
+
+        if(transactionId == null || transactionId.isEmpty() || transactionId.length() > 13) {
+            return -1;
+        }
+
+        for(int i = 0; i < transactionId.length(); i++) {
+            if(Character.digit(transactionId.charAt(i), RADIX) < 0) {
+                return -1;
+            }
+        }
+
+        try {
+            long id = Long.parseLong(transactionId, RADIX);
+            return id > 0 ? id : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.kingfisher.payment.api.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Journal records their consumer gave up on, so the journal can move past them. Appended in MappedJournal's record
+ * layout (length | crc32 | sequence | payload) to a file that only grows; every append is forced to disk.
+ */
+public class DeadLetterFile implements Closeable {
+
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES;
+
+    private final FileChannel channel;
+
+    public DeadLetterFile(Path path) throws IOException {
+
+        if(path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    public synchronized void append(JournalRecord record) throws IOException {
+
+        byte[] payload = record.getPayload();
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        buffer.putInt(payload.length)
+                .putInt(MappedJournal.crc(record.getSequence(), payload))
+                .putLong(record.getSequence())
+                .put(payload)
+                .flip();
+
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * @return the records of the file, a torn last record is left out
+     */
+    public static List<JournalRecord> read(Path path) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        List<JournalRecord> records = new ArrayList<>();
+
+        while(buffer.remaining() >= RECORD_HEADER_SIZE) {
+
+            int length = buffer.getInt();
+            int crc = buffer.getInt();
+            long sequence = buffer.getLong();
+
+            if(length <= 0 || length > buffer.remaining()) {
+                break;
+            }
+
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+
+            if(crc != MappedJournal.crc(sequence, payload)) {
+                break;
+            }
+
+            records.add(new JournalRecord(sequence, payload));
+        }
+
+        return records;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,8 @@
+package com.kingfisher.payment.api.journal;
+
+public class JournalFullException extends Exception {
+
+    public JournalFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,20 @@
+package com.kingfisher.payment.api.journal;
+
+public class JournalRecord {
+
+    private final long sequence;
+    private final byte[] payload;
+
+    public JournalRecord(long sequence, byte[] payload) {
+        this.sequence = sequence;
+        this.payload = payload;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+}
@@ -0,0 +1,299 @@
+package com.kingfisher.payment.api.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Journal in a single memory-mapped file used as a ring: records are appended behind the last one, wrap to the start
+ * of the file at its end and reuse the space of records the consumer has checkpointed. Every append is forced to disk
+ * before it returns, so an acknowledged record survives a crash of the process or the host.
+ *
+ * <pre>
+ * file   = header (record | wrap)*
+ * header = magic (int) | head (int) | checkpoint sequence (long)
+ *          everything up to the checkpoint has been applied by the consumer, head is where the records after it start
+ * record = length (int) | crc32 of sequence and payload (int) | sequence (long) | payload
+ * wrap   = -1 (int), the next record is at the start of the file; implied when the end leaves no room for it
+ * </pre>
+ *
+ * Sequences grow by one from record to record across the lifetime of the file. Recovery reads from head and stops at
+ * the first record which is empty, torn (crc mismatch) or not the successor of its predecessor, i.e. a leftover of an
+ * earlier lap.
+ */
+public class MappedJournal implements Closeable {
+
+    private static final int MAGIC = 0x4a524e32;
+    private static final int WRAP = -1;
+    private static final int HEAD_OFFSET = Integer.BYTES;
+    private static final int CHECKPOINT_OFFSET = Integer.BYTES + Integer.BYTES;
+    private static final int HEADER_SIZE = CHECKPOINT_OFFSET + Long.BYTES;
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    private long checkpoint;
+    private long lastSequence;
+    // behind the last record; equal to readPosition only when nothing is pending, a full ring keeps a byte between them
+    private int writePosition;
+    // first record after the checkpoint, where the consumer continues reading (head)
+    private int readPosition;
+
+    public MappedJournal(Path path, int capacity) throws IOException {
+
+        if(path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+
+        this.capacity = capacity;
+        this.file = new RandomAccessFile(path.toFile(), "rw");
+
+        if(file.length() < capacity) {
+            file.setLength(capacity);
+        }
+
+        this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+        int magic = buffer.getInt(0);
+
+        if(magic == 0) {
+            format();
+        } else if(magic != MAGIC) {
+            file.close();
+            throw new IOException(path + " is not a journal, magic " + Integer.toHexString(magic));
+        }
+
+        recover();
+    }
+
+    /**
+     * @return sequence of the appended record
+     * @throws JournalFullException when the record does not fit before the consumer catches up within the timeout
+     */
+    public synchronized long append(byte[] payload, long timeout, TimeUnit unit) throws InterruptedException, JournalFullException {
+
+        if(payload.length == 0) {
+            throw new IllegalArgumentException("Empty journal record");
+        }
+
+        int size = RECORD_HEADER_SIZE + payload.length;
+
+        if(HEADER_SIZE + size >= capacity) {
+            throw new JournalFullException("Record of " + payload.length + " bytes exceeds journal capacity " + capacity);
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int position;
+
+        // wait for the consumer to checkpoint records and free their space
+        while((position = positionFor(size)) < 0) {
+            long remaining = deadline - System.nanoTime();
+            if(remaining <= 0) {
+                throw new JournalFullException("Journal full, " + (lastSequence - checkpoint) + " records not applied yet");
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+
+        if(position != writePosition && writePosition + Integer.BYTES <= capacity) {
+            buffer.putInt(writePosition, WRAP);
+        }
+
+        long sequence = lastSequence + 1;
+
+        writeRecord(position, sequence, payload);
+        buffer.force();
+
+        writePosition = position + size;
+        lastSequence = sequence;
+
+        return sequence;
+    }
+
+    /**
+     * Records appended after the last checkpoint, oldest first.
+     */
+    public synchronized List<JournalRecord> readPending(int maxRecords) {
+
+        List<JournalRecord> records = new ArrayList<>();
+        int position = readPosition;
+
+        while(position != writePosition && records.size() < maxRecords) {
+            position = resolve(position);
+            JournalRecord record = readRecord(position);
+            records.add(record);
+            position += RECORD_HEADER_SIZE + record.getPayload().length;
+        }
+
+        return records;
+    }
+
+    /**
+     * Marks all records up to and including the sequence as applied, their space is reused by later appends.
+     */
+    public synchronized void checkpoint(long sequence) {
+
+        while(readPosition != writePosition) {
+            int position = resolve(readPosition);
+            if(buffer.getLong(position + Integer.BYTES + Integer.BYTES) > sequence) {
+                break;
+            }
+            readPosition = position + RECORD_HEADER_SIZE + buffer.getInt(position);
+        }
+
+        checkpoint = sequence;
+
+        if(readPosition == writePosition) {
+            // nothing pending, the next record goes to the start of the file without wrapping
+            writePosition = HEADER_SIZE;
+            readPosition = HEADER_SIZE;
+            buffer.putInt(HEADER_SIZE, 0);
+        }
+
+        writeHeader();
+        buffer.force();
+        notifyAll();
+    }
+
+    public synchronized long getPendingCount() {
+        return lastSequence - checkpoint;
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    // where a record of the size is written, -1 while the records not applied yet leave no room for it
+    private int positionFor(int size) {
+
+        if(writePosition >= readPosition) {
+            if(writePosition + size <= capacity) {
+                return writePosition;
+            }
+            return HEADER_SIZE + size < readPosition ? HEADER_SIZE : -1;
+        }
+
+        return writePosition + size < readPosition ? writePosition : -1;
+    }
+
+    // the position a record behind another one starts at, the start of the file once the end is reached
+    private int resolve(int position) {
+        if(position + Integer.BYTES > capacity || buffer.getInt(position) == WRAP) {
+            return HEADER_SIZE;
+        }
+        return position;
+    }
+
+    private void recover() {
+
+        checkpoint = buffer.getLong(CHECKPOINT_OFFSET);
+        readPosition = buffer.getInt(HEAD_OFFSET);
+        lastSequence = checkpoint;
+
+        if(readPosition < HEADER_SIZE || readPosition > capacity) {
+            throw new IllegalStateException("Journal head " + readPosition + " outside of the file");
+        }
+
+        writePosition = readPosition;
+        boolean wrapped = false;
+
+        while(true) {
+
+            int position = resolve(writePosition);
+            wrapped |= position < writePosition;
+
+            if(position + RECORD_HEADER_SIZE > capacity) {
+                break;
+            }
+
+            int length = buffer.getInt(position);
+
+            if(length <= 0 || position + RECORD_HEADER_SIZE + length > capacity
+                    || wrapped && position + RECORD_HEADER_SIZE + length >= readPosition) {
+                break;
+            }
+
+            long sequence = buffer.getLong(position + Integer.BYTES + Integer.BYTES);
+
+            if(sequence != lastSequence + 1 || buffer.getInt(position + Integer.BYTES) != crc(sequence, readPayload(position, length))) {
+                break;
+            }
+
+            lastSequence = sequence;
+            writePosition = position + RECORD_HEADER_SIZE + length;
+        }
+
+        if(lastSequence == checkpoint) {
+            // nothing pending, start again from the beginning of the file
+            writePosition = HEADER_SIZE;
+            readPosition = HEADER_SIZE;
+            buffer.putInt(HEADER_SIZE, 0);
+            writeHeader();
+            buffer.force();
+        }
+    }
+
+    // a new file, no record yet
+    private void format() {
+        checkpoint = 0;
+        readPosition = HEADER_SIZE;
+        buffer.putInt(HEADER_SIZE, 0);
+        writeHeader();
+        buffer.putInt(0, MAGIC);
+        buffer.force();
+    }
+
+    private void writeRecord(int position, long sequence, byte[] payload) {
+        buffer.putLong(position + Integer.BYTES + Integer.BYTES, sequence);
+        ByteBuffer target = buffer.duplicate();
+        target.position(position + RECORD_HEADER_SIZE);
+        target.put(payload);
+        buffer.putInt(position + Integer.BYTES, crc(sequence, payload));
+        // length last, a record without it is never read back
+        buffer.putInt(position, payload.length);
+    }
+
+    private void writeHeader() {
+        buffer.putInt(HEAD_OFFSET, readPosition);
+        buffer.putLong(CHECKPOINT_OFFSET, checkpoint);
+    }
+
+    private JournalRecord readRecord(int position) {
+        int length = buffer.getInt(position);
+        long sequence = buffer.getLong(position + Integer.BYTES + Integer.BYTES);
+        return new JournalRecord(sequence, readPayload(position, length));
+    }
+
+    private byte[] readPayload(int position, int length) {
+        byte[] payload = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(position + RECORD_HEADER_SIZE);
+        source.get(payload);
+        return payload;
+    }
+
+    static int crc(long sequence, byte[] payload) {
+        CRC32 crc = new CRC32();
+        for(int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (sequence >>> shift));
+        }
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,23 @@
+package com.kingfisher.payment.api.mapper;
+
+import com.kingfisher.payment.api.database.model.CustomerRegistrationInfo;
+import com.kingfisher.payment.api.model.ListRequestDTO;
+import com.kingfisher.payment.api.optile.model.Registration;
+import com.kingfisher.payment.api.optile.model.Transaction;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.ReportingPolicy;
+
+/**
+ * Mapping code is generated by MapStruct at compile time, no reflection at runtime. Nested Optile objects are
+ * reused as they are (the DTO is dropped right after mapping), only the products list is copied.
+ */
+@Mapper(unmappedTargetPolicy = ReportingPolicy.IGNORE)
+public interface TransactionMapper {
+
+    Transaction toTransaction(ListRequestDTO request);
+
+    @Mapping(source = "optileCustomerId", target = "id")
+    @Mapping(source = "optileCustomerPassword", target = "password")
+    Registration toRegistration(CustomerRegistrationInfo registrationInfo);
+}
@@ -0,0 +1,104 @@
+package com.kingfisher.payment.api.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Times how long each pooled connection is held, from getConnection to close, tagged with the endpoint that took it.
+ * A connection held across an Optile call shows up as a hold time close to the Optile latency.
+ */
+public class ConnectionHoldTimeDataSource extends DelegatingDataSource implements Closeable {
+
+    public static final String METRIC_NAME = "db.connection.hold";
+
+    private final Supplier<MeterRegistry> meterRegistry;
+
+    public ConnectionHoldTimeDataSource(DataSource targetDataSource, Supplier<MeterRegistry> meterRegistry) {
+        super(targetDataSource);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return track(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return track(super.getConnection(username, password));
+    }
+
+    // the pool bean's destroy method is looked up on this wrapper, so it closes the pool it wraps
+    @Override
+    public void close() throws IOException {
+        if(getTargetDataSource() instanceof Closeable) {
+            ((Closeable) getTargetDataSource()).close();
+        }
+    }
+
+    private Connection track(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                new HoldTimeHandler(connection, RequestEndpoint.get(), System.nanoTime()));
+    }
+
+    private void record(String endpoint, long heldNanos) {
+
+        MeterRegistry registry = meterRegistry.get();
+
+        if(registry != null) {
+            Timer.builder(METRIC_NAME)
+                    .description("Time a JDBC connection is held before being returned to the pool")
+                    .tag("endpoint", endpoint)
+                    .register(registry)
+                    .record(heldNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private class HoldTimeHandler implements InvocationHandler {
+
+        private final Connection target;
+        private final String endpoint;
+        private final long acquired;
+        private boolean closed;
+
+        private HoldTimeHandler(Connection target, String endpoint, long acquired) {
+            this.target = target;
+            this.endpoint = endpoint;
+            this.acquired = acquired;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+            if("equals".equals(method.getName())) {
+                return proxy == args[0];
+            }
+            if("hashCode".equals(method.getName())) {
+                return System.identityHashCode(proxy);
+            }
+            if("close".equals(method.getName()) && !closed) {
+                closed = true;
+                record(endpoint, System.nanoTime() - acquired);
+            }
+
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
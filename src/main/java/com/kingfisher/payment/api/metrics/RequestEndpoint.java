@@ -0,0 +1,49 @@
+package com.kingfisher.payment.api.metrics;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Endpoint (request mapping pattern) the current thread works for. Set by RequestEndpointInterceptor and carried over
+ * to the payment executor, so work finishing a request asynchronously is attributed to the same endpoint.
+ */
+public final class RequestEndpoint {
+
+    public static final String NONE = "none";
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private RequestEndpoint() {
+    }
+
+    public static String get() {
+        String endpoint = CURRENT.get();
+        return endpoint == null ? NONE : endpoint;
+    }
+
+    public static void set(String endpoint) {
+        CURRENT.set(endpoint);
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    public static Runnable propagate(Runnable task) {
+
+        String endpoint = CURRENT.get();
+
+        return () -> {
+            String previous = CURRENT.get();
+            CURRENT.set(endpoint);
+            try {
+                task.run();
+            } finally {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    public static Executor propagating(Executor executor) {
+        return task -> executor.execute(propagate(task));
+    }
+}
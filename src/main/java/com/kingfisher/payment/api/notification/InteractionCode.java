@@ -0,0 +1,25 @@
+package com.kingfisher.payment.api.notification;
+
+/**
+ * Optile's interactionCode values, what the client is told to do next.
+ */
+public enum InteractionCode {
+
+    PROCEED("PROCEED"),
+    RETRY("RETRY"),
+    TRY_OTHER_NETWORK("TRY_OTHER_NETWORK"),
+    TRY_OTHER_ACCOUNT("TRY_OTHER_ACCOUNT"),
+    RELOAD("RELOAD"),
+    VERIFY("VERIFY"),
+    ABORT("ABORT");
+
+    private final String code;
+
+    InteractionCode(String code) {
+        this.code = code;
+    }
+
+    public String getCode() {
+        return code;
+    }
+}
@@ -0,0 +1,136 @@
+package com.kingfisher.payment.api.notification;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recognizes notifications Optile delivers again because an earlier delivery was not acknowledged in time, by
+ * notificationId and without a database lookup. A TimeWindowedBloomFilter answers most checks: an id it has certainly
+ * not seen is new. An id it may have seen is looked up in an exact set of recent ids, and only an id found there is a
+ * duplicate. An id the exact set has already evicted counts as new and is processed again, which is harmless because
+ * processing is idempotent. Both structures are bounded in bytes. A delivery claims its id before it is checked, so of
+ * concurrent deliveries of one notification only one is queued.
+ */
+@Component
+public class NotificationDeduplicator implements MeterBinder {
+
+    private static final String CACHE_NAME = "notificationIds";
+
+    // String and cache node headers and references, roughly what an entry costs besides the id's chars
+    private static final int ENTRY_OVERHEAD = 112;
+
+    @Value("${optile.notification.dedup.window}")
+    private long window;
+    @Value("${optile.notification.dedup.filter-bytes}")
+    private long filterBytes;
+    @Value("${optile.notification.dedup.exact-bytes}")
+    private long exactBytes;
+
+    private TimeWindowedBloomFilter filter;
+    private Cache<String, Boolean> recentIds;
+    // ids between claim and accepted or release, as many as deliveries are being queued at the moment
+    private final Set<String> claimed = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong checked = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    // the filter said maybe but the exact set did not know the id: a false positive, or an id evicted already
+    private final AtomicLong filterMisses = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        filter = new TimeWindowedBloomFilter(filterBytes, window, System::currentTimeMillis);
+        // the filter remembers ids for one to two windows, the exact set for as long at most
+        recentIds = Caffeine.newBuilder()
+                .maximumWeight(exactBytes)
+                .weigher((String notificationId, Boolean seen) -> ENTRY_OVERHEAD + 2 * notificationId.length())
+                .expireAfterWrite(2 * window, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Claims the notificationId for queueing. Of concurrent deliveries of one id only the first gets the claim, which
+     * it settles with accepted once the notification is durably queued or gives back with release if it could not be.
+     *
+     * @return false if the notification was accepted before or is being queued right now, it is dropped
+     */
+    public boolean claim(String notificationId) {
+
+        checked.incrementAndGet();
+
+        if(!claimed.add(notificationId)) {
+            duplicates.incrementAndGet();
+            return false;
+        }
+
+        if(wasAccepted(notificationId)) {
+            claimed.remove(notificationId);
+            duplicates.incrementAndGet();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Remembers the claimed notificationId, once the notification is durably queued; remembered before the claim is
+     * given up, so a delivery claiming it next finds it.
+     */
+    public void accepted(String notificationId) {
+        filter.put(notificationId);
+        recentIds.put(notificationId, Boolean.TRUE);
+        claimed.remove(notificationId);
+    }
+
+    /**
+     * Gives back the claim of a notification which could not be queued, it has to be taken when Optile delivers it
+     * again.
+     */
+    public void release(String notificationId) {
+        claimed.remove(notificationId);
+    }
+
+    private boolean wasAccepted(String notificationId) {
+
+        if(!filter.mightContain(notificationId)) {
+            return false;
+        }
+
+        if(recentIds.getIfPresent(notificationId) == null) {
+            filterMisses.incrementAndGet();
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("optile.notification.dedup.checked", checked, AtomicLong::get)
+                .description("Notifications checked for redelivery")
+                .register(registry);
+        FunctionCounter.builder("optile.notification.dedup.duplicates", duplicates, AtomicLong::get)
+                .description("Redelivered notifications dropped")
+                .register(registry);
+        FunctionCounter.builder("optile.notification.dedup.filter.misses", filterMisses, AtomicLong::get)
+                .description("Ids the bloom filter may have seen but the exact set did not know")
+                .register(registry);
+        Gauge.builder("optile.notification.dedup.filter.false-positive-probability", filter, TimeWindowedBloomFilter::falsePositiveProbability)
+                .description("Estimated probability of the bloom filter reporting a new id as seen")
+                .register(registry);
+        CaffeineCacheMetrics.monitor(registry, recentIds, CACHE_NAME);
+    }
+}
@@ -0,0 +1,175 @@
+package com.kingfisher.payment.api.notification;
+
+import java.math.BigDecimal;
+
+/**
+ * The part of an Optile status notification the service acts on, as queued by NotificationController.
+ * NotificationEventArgumentResolver reuses one instance per request thread, whatever keeps a notification beyond the
+ * request has to copy it (NotificationQueue encodes it into its journal).
+ */
+public class NotificationEvent {
+
+    // amounts are fixed point with this many decimals, 19.99 is 199900
+    public static final int AMOUNT_SCALE = 4;
+    public static final long NO_AMOUNT = Long.MIN_VALUE;
+
+    private String notificationId;
+    private String transactionId;
+    private String longId;
+    private String entity;
+    private String statusCode;
+    private String reasonCode;
+    private String previousStatusCode;
+    private String previousReasonCode;
+    private String interactionCode;
+    private String resultCode;
+    private long amount = NO_AMOUNT;
+    private String currency;
+    // Optile's time of the status change, epoch millis
+    private long timestamp;
+    // when this service accepted the notification, epoch millis
+    private long receivedAt;
+
+    public String getNotificationId() {
+        return notificationId;
+    }
+
+    public void setNotificationId(String notificationId) {
+        this.notificationId = notificationId;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public void setTransactionId(String transactionId) {
+        this.transactionId = transactionId;
+    }
+
+    public String getLongId() {
+        return longId;
+    }
+
+    public void setLongId(String longId) {
+        this.longId = longId;
+    }
+
+    public String getEntity() {
+        return entity;
+    }
+
+    public void setEntity(String entity) {
+        this.entity = entity;
+    }
+
+    public String getStatusCode() {
+        return statusCode;
+    }
+
+    public void setStatusCode(String statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    public String getReasonCode() {
+        return reasonCode;
+    }
+
+    public void setReasonCode(String reasonCode) {
+        this.reasonCode = reasonCode;
+    }
+
+    public String getPreviousStatusCode() {
+        return previousStatusCode;
+    }
+
+    public void setPreviousStatusCode(String previousStatusCode) {
+        this.previousStatusCode = previousStatusCode;
+    }
+
+    public String getPreviousReasonCode() {
+        return previousReasonCode;
+    }
+
+    public void setPreviousReasonCode(String previousReasonCode) {
+        this.previousReasonCode = previousReasonCode;
+    }
+
+    public String getInteractionCode() {
+        return interactionCode;
+    }
+
+    public void setInteractionCode(String interactionCode) {
+        this.interactionCode = interactionCode;
+    }
+
+    public String getResultCode() {
+        return resultCode;
+    }
+
+    public void setResultCode(String resultCode) {
+        this.resultCode = resultCode;
+    }
+
+    public boolean hasAmount() {
+        return amount != NO_AMOUNT;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public void setAmount(long amount) {
+        this.amount = amount;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    public void setReceivedAt(long receivedAt) {
+        this.receivedAt = receivedAt;
+    }
+
+    void clear() {
+        notificationId = null;
+        transactionId = null;
+        longId = null;
+        entity = null;
+        statusCode = null;
+        reasonCode = null;
+        previousStatusCode = null;
+        previousReasonCode = null;
+        interactionCode = null;
+        resultCode = null;
+        amount = NO_AMOUNT;
+        currency = null;
+        timestamp = 0;
+        receivedAt = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "NotificationEvent{notificationId=" + notificationId + ", transactionId=" + transactionId + ", longId=" + longId +
+                ", entity=" + entity + ", statusCode=" + statusCode + ", reasonCode=" + reasonCode +
+                ", previousStatusCode=" + previousStatusCode + ", previousReasonCode=" + previousReasonCode +
+                ", interactionCode=" + interactionCode + ", resultCode=" + resultCode +
+                ", amount=" + (hasAmount() ? BigDecimal.valueOf(amount, AMOUNT_SCALE).toPlainString() : null) + ", currency=" + currency +
+                ", timestamp=" + timestamp + ", receivedAt=" + receivedAt + "}";
+    }
+}
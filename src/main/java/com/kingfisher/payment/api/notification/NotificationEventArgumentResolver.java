@@ -0,0 +1,52 @@
+package com.kingfisher.payment.api.notification;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.web.bind.MissingServletRequestParameterException;
+import org.springframework.web.bind.ServletRequestBindingException;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Binds a NotificationEvent parameter from the query string of an Optile notification, replacing the 28 @RequestParam
+ * values it was bound from. Missing required parameters (and ids or status code without text) are a
+ * MissingServletRequestParameterException, an invalid timestamp, amount, retryAfter, autoRetryAfter or rejectionCount
+ * a ServletRequestBindingException; GlobalExceptionHandler answers both with 400.
+ * <p>
+ * Each request thread gets the same NotificationEvent instance for every notification it handles, the handler must not
+ * keep it beyond the request.
+ */
+public class NotificationEventArgumentResolver implements HandlerMethodArgumentResolver {
+
+    private final ThreadLocal<NotificationQueryParser> parsers = ThreadLocal.withInitial(NotificationQueryParser::new);
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return NotificationEvent.class.equals(parameter.getParameterType());
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer, NativeWebRequest webRequest,
+                                  WebDataBinderFactory binderFactory) throws Exception {
+
+        HttpServletRequest request = webRequest.getNativeRequest(HttpServletRequest.class);
+        NotificationQueryParser parser = parsers.get();
+        NotificationEvent event;
+
+        try {
+            event = parser.parse(request.getQueryString());
+        } catch (IllegalArgumentException e) {
+            throw new ServletRequestBindingException("Invalid notification: " + e.getMessage(), e);
+        }
+
+        String missing = parser.missingParameter();
+        if(missing != null) {
+            throw new MissingServletRequestParameterException(missing, "String");
+        }
+
+        return event;
+    }
+}
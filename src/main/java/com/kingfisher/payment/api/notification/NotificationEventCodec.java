@@ -0,0 +1,92 @@
+package com.kingfisher.payment.api.notification;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Queue representation of a NotificationEvent. The leading version byte makes a record of any other format fail on
+ * replay rather than be misread.
+ */
+final class NotificationEventCodec {
+
+    private static final byte VERSION = 2;
+
+    private NotificationEventCodec() {
+    }
+
+    static byte[] encode(NotificationEvent event) {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+
+        try(DataOutputStream out = new DataOutputStream(bytes)) {
+
+            out.writeByte(VERSION);
+            writeNullable(out, event.getNotificationId());
+            writeNullable(out, event.getTransactionId());
+            writeNullable(out, event.getLongId());
+            writeNullable(out, event.getEntity());
+            writeNullable(out, event.getStatusCode());
+            writeNullable(out, event.getReasonCode());
+            writeNullable(out, event.getPreviousStatusCode());
+            writeNullable(out, event.getPreviousReasonCode());
+            writeNullable(out, event.getInteractionCode());
+            writeNullable(out, event.getResultCode());
+            out.writeLong(event.getAmount());
+            writeNullable(out, event.getCurrency());
+            out.writeLong(event.getTimestamp());
+            out.writeLong(event.getReceivedAt());
+
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    static NotificationEvent decode(byte[] record) {
+
+        try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+
+            byte version = in.readByte();
+            if(version != VERSION) {
+                throw new IllegalStateException("Unknown notification record version " + version);
+            }
+
+            NotificationEvent event = new NotificationEvent();
+            event.setNotificationId(readNullable(in));
+            event.setTransactionId(readNullable(in));
+            event.setLongId(readNullable(in));
+            event.setEntity(readNullable(in));
+            event.setStatusCode(readNullable(in));
+            event.setReasonCode(readNullable(in));
+            event.setPreviousStatusCode(readNullable(in));
+            event.setPreviousReasonCode(readNullable(in));
+            event.setInteractionCode(readNullable(in));
+            event.setResultCode(readNullable(in));
+            event.setAmount(in.readLong());
+            event.setCurrency(readNullable(in));
+            event.setTimestamp(in.readLong());
+            event.setReceivedAt(in.readLong());
+
+            return event;
+
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if(value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,64 @@
+package com.kingfisher.payment.api.notification;
+
+import com.kingfisher.payment.api.database.model.TransactionLogInfo;
+import com.kingfisher.payment.api.database.service.TransactionLogService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Applies a queued notification to the TransactionLogInfo of its transactionId. Applying the same notification twice
+ * or an older one after a newer one changes nothing, so the queue may deliver a notification more than once.
+ * <p>
+ * The log is read from the primary, the session may have been created on another instance a moment before. A log this
+ * instance has only journaled for write-behind is not in the database yet; its notifications fail and stay queued
+ * until it is inserted, rather than being acknowledged with no row updated.
+ */
+@Service
+public class NotificationProcessor {
+
+    enum Outcome { APPLIED, STALE, UNKNOWN_TRANSACTION }
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    private TransactionLogService transactionLogService;
+    @Autowired
+    private NotificationStatusWriter statusWriter;
+
+    /**
+     * @return completes once the status (and the notification's audit row) is committed, with a group of others
+     */
+    CompletableFuture<Outcome> apply(NotificationEvent event) {
+
+        if(transactionLogService.isWritePending(event.getTransactionId())) {
+            // the UPDATE would find no row yet; failing leaves the notification queued, it is applied again
+            CompletableFuture<Outcome> retry = new CompletableFuture<>();
+            retry.completeExceptionally(new IllegalStateException("Transaction log " + event.getTransactionId()
+                    + " of notification " + event.getNotificationId() + " is not written yet"));
+            return retry;
+        }
+
+        Optional<TransactionLogInfo> transactionLogInfo = transactionLogService.getStoredTransactionLog(event.getTransactionId());
+
+        if(!transactionLogInfo.isPresent()) {
+            // notifications of sessions created by another system sharing the Optile merchant
+            logger.debug("Notification {} for unknown transactionId {}", event.getNotificationId(), event.getTransactionId());
+            return statusWriter.write(event, null).thenApply(applied -> Outcome.UNKNOWN_TRANSACTION);
+        }
+
+        return statusWriter.write(event, transactionLogInfo.get()).thenApply(applied -> applied ? Outcome.APPLIED : Outcome.STALE);
+    }
+
+    /**
+     * Audits a notification the queue drops as older than the status already applied to its charge, leaving the log
+     * as it is.
+     */
+    CompletableFuture<Outcome> drop(NotificationEvent event) {
+        return statusWriter.write(event, null).thenApply(applied -> Outcome.STALE);
+    }
+}
@@ -0,0 +1,442 @@
+package com.kingfisher.payment.api.notification;
+
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.URLDecoder;
+import java.util.Arrays;
+
+/**
+ * Parses the query string of an Optile notification in one pass into a NotificationEvent. Each value is percent-decoded
+ * into a reusable buffer, known status, reason and interaction codes become the code string of their enum constant,
+ * timestamp and amount are parsed from the buffer. retryAfter, autoRetryAfter and rejectionCount are not kept but
+ * validated as the timestamps and integer they were bound to, the other parameters the service does not keep are only
+ * checked for presence. A notification costs a String per id instead of one per parameter plus a conversion for each.
+ * <p>
+ * notificationId, transactionId, longId and statusCode without text count as missing.
+ * <p>
+ * Not thread-safe, the parsed event is reused by the next parse.
+ */
+final class NotificationQueryParser {
+
+    // the first REQUIRED are required, as they were with @RequestParam binding
+    static final String[] PARAMETERS = {
+            "transactionId", "longId", "shortId", "entity", "statusCode", "reasonCode", "interactionCode",
+            "interactionReason", "resultCode", "resultInfo", "notificationId", "timestamp", "previousStatusCode",
+            "previousReasonCode",
+            "returnCodeName", "returnCodeSource", "pspCode", "institutionCode", "customerRegistrationId",
+            "customerRegistrationPassword", "hasRecurringAccount", "network", "amount", "currency", "reference",
+            "retryAfter", "autoRetryAfter", "rejectionCount"};
+    static final int REQUIRED = 14;
+
+    private static final int TRANSACTION_ID = 0;
+    private static final int LONG_ID = 1;
+    private static final int ENTITY = 3;
+    private static final int STATUS_CODE = 4;
+    private static final int REASON_CODE = 5;
+    private static final int INTERACTION_CODE = 6;
+    private static final int RESULT_CODE = 8;
+    private static final int NOTIFICATION_ID = 10;
+    private static final int TIMESTAMP = 11;
+    private static final int PREVIOUS_STATUS_CODE = 12;
+    private static final int PREVIOUS_REASON_CODE = 13;
+    private static final int AMOUNT = 22;
+    private static final int CURRENCY = 23;
+    private static final int RETRY_AFTER = 25;
+    private static final int AUTO_RETRY_AFTER = 26;
+    private static final int REJECTION_COUNT = 27;
+
+    private static final String[] STATUS_CODES = Arrays.stream(StatusCode.values()).map(StatusCode::getCode).toArray(String[]::new);
+    private static final String[] REASON_CODES = Arrays.stream(ReasonCode.values()).map(ReasonCode::getCode).toArray(String[]::new);
+    private static final String[] INTERACTION_CODES = Arrays.stream(InteractionCode.values()).map(InteractionCode::getCode).toArray(String[]::new);
+
+    // anything the fast path does not read, a timestamp without offset is taken as UTC
+    private static final DateTimeFormatter ISO_TIMESTAMP = ISODateTimeFormat.dateTimeParser().withZoneUTC();
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+    // still fits a long once scaled
+    private static final int MAX_AMOUNT_DIGITS = 18 - NotificationEvent.AMOUNT_SCALE;
+
+    private final NotificationEvent event = new NotificationEvent();
+    private char[] buffer = new char[128];
+    private int length;
+    // bit per PARAMETERS index
+    private int present;
+
+    /**
+     * @param query the raw query string, null if the request had none
+     * @throws IllegalArgumentException for a timestamp, amount or rejectionCount which cannot be parsed
+     */
+    NotificationEvent parse(String query) {
+
+        event.clear();
+        present = 0;
+
+        if(query == null) {
+            return event;
+        }
+
+        int start = 0;
+        while(start < query.length()) {
+
+            int end = query.indexOf('&', start);
+            if(end < 0) {
+                end = query.length();
+            }
+            int equals = query.indexOf('=', start);
+            if(equals < 0 || equals > end) {
+                equals = end;
+            }
+
+            int parameter = parameter(query, start, equals);
+            // the first of repeated parameters counts
+            if(parameter >= 0 && (present & (1 << parameter)) == 0) {
+                decode(query, Math.min(equals + 1, end), end);
+                if(set(parameter)) {
+                    present |= 1 << parameter;
+                }
+            }
+
+            start = end + 1;
+        }
+
+        return event;
+    }
+
+    /**
+     * @return the first required parameter the last parsed query lacked, null if it had all
+     */
+    String missingParameter() {
+        for(int parameter = 0; parameter < REQUIRED; parameter++) {
+            if((present & (1 << parameter)) == 0) {
+                return PARAMETERS[parameter];
+            }
+        }
+        return null;
+    }
+
+    // false if the value counts as absent
+    private boolean set(int parameter) {
+        switch (parameter) {
+            case TRANSACTION_ID:
+                event.setTransactionId(string());
+                return hasText();
+            case LONG_ID:
+                event.setLongId(string());
+                return hasText();
+            case ENTITY:
+                event.setEntity(string());
+                return true;
+            case STATUS_CODE:
+                event.setStatusCode(code(STATUS_CODES));
+                return hasText();
+            case REASON_CODE:
+                event.setReasonCode(code(REASON_CODES));
+                return true;
+            case INTERACTION_CODE:
+                event.setInteractionCode(code(INTERACTION_CODES));
+                return true;
+            case RESULT_CODE:
+                event.setResultCode(string());
+                return true;
+            case NOTIFICATION_ID:
+                event.setNotificationId(string());
+                return hasText();
+            case PREVIOUS_STATUS_CODE:
+                event.setPreviousStatusCode(code(STATUS_CODES));
+                return true;
+            case PREVIOUS_REASON_CODE:
+                event.setPreviousReasonCode(code(REASON_CODES));
+                return true;
+            case CURRENCY:
+                event.setCurrency(string());
+                return true;
+            // an empty timestamp or amount is no value, like it was for the converted @RequestParam
+            case TIMESTAMP:
+                if(length == 0) {
+                    return false;
+                }
+                event.setTimestamp(timestamp());
+                return true;
+            case AMOUNT:
+                if(length == 0) {
+                    return false;
+                }
+                event.setAmount(amount());
+                return true;
+            case RETRY_AFTER:
+            case AUTO_RETRY_AFTER:
+                if(length == 0) {
+                    return false;
+                }
+                timestamp();
+                return true;
+            case REJECTION_COUNT:
+                if(length == 0) {
+                    return false;
+                }
+                integer();
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    private static int parameter(String query, int start, int end) {
+        int nameLength = end - start;
+        for(int parameter = 0; parameter < PARAMETERS.length; parameter++) {
+            String name = PARAMETERS[parameter];
+            if(name.length() == nameLength && query.regionMatches(start, name, 0, nameLength)) {
+                return parameter;
+            }
+        }
+        return -1;
+    }
+
+    private void decode(String query, int start, int end) {
+
+        if(buffer.length < end - start) {
+            buffer = new char[Math.max(end - start, 2 * buffer.length)];
+        }
+        length = 0;
+
+        for(int index = start; index < end; index++) {
+            char c = query.charAt(index);
+            if(c == '+') {
+                c = ' ';
+            } else if(c == '%' && index + 2 < end) {
+                int high = Character.digit(query.charAt(index + 1), 16);
+                int low = Character.digit(query.charAt(index + 2), 16);
+                if(high >= 0 && low >= 0) {
+                    if(high >= 8) {
+                        // a multi-byte UTF-8 character, rare enough for the JDK's decoder
+                        decodeUtf8(query, start, end);
+                        return;
+                    }
+                    c = (char) (high << 4 | low);
+                    index += 2;
+                }
+            }
+            buffer[length++] = c;
+        }
+    }
+
+    private void decodeUtf8(String query, int start, int end) {
+        try {
+            String value = URLDecoder.decode(query.substring(start, end), "UTF-8");
+            value.getChars(0, value.length(), buffer, 0);
+            length = value.length();
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private boolean hasText() {
+        for(int index = 0; index < length; index++) {
+            if(!Character.isWhitespace(buffer[index])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String string() {
+        return length == 0 ? "" : new String(buffer, 0, length);
+    }
+
+    // the enum's code string for known codes, a new one for others
+    private String code(String[] codes) {
+        for(String code : codes) {
+            if(code.length() == length && matches(code)) {
+                return code;
+            }
+        }
+        return string();
+    }
+
+    private boolean matches(String code) {
+        for(int index = 0; index < length; index++) {
+            if(buffer[index] != code.charAt(index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * yyyy-MM-dd'T'HH:mm:ss[.SSS](Z|+HH:mm|+HHmm|+HH), as Optile sends it; other ISO-8601 forms go to Joda.
+     */
+    private long timestamp() {
+
+        if(length < 20 || buffer[4] != '-' || buffer[7] != '-' || buffer[10] != 'T' || buffer[13] != ':' || buffer[16] != ':') {
+            return isoTimestamp();
+        }
+
+        int year = digits(0, 4);
+        int month = digits(5, 2);
+        int day = digits(8, 2);
+        int hour = digits(11, 2);
+        int minute = digits(14, 2);
+        int second = digits(17, 2);
+
+        if(year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return isoTimestamp();
+        }
+
+        int index = 19;
+        int millis = 0;
+
+        if(buffer[index] == '.') {
+            int fractionStart = ++index;
+            while(index < length && buffer[index] >= '0' && buffer[index] <= '9') {
+                if(index - fractionStart < 3) {
+                    millis = millis * 10 + buffer[index] - '0';
+                }
+                index++;
+            }
+            int fractionDigits = index - fractionStart;
+            if(fractionDigits == 0) {
+                return isoTimestamp();
+            }
+            for(int digit = fractionDigits; digit < 3; digit++) {
+                millis *= 10;
+            }
+        }
+
+        int offsetMinutes;
+        if(index == length - 1 && buffer[index] == 'Z') {
+            offsetMinutes = 0;
+        } else if(index < length && (buffer[index] == '+' || buffer[index] == '-')) {
+            offsetMinutes = offsetMinutes(index);
+            if(offsetMinutes == Integer.MIN_VALUE) {
+                return isoTimestamp();
+            }
+        } else {
+            return isoTimestamp();
+        }
+
+        return daysSinceEpoch(year, month, day) * MILLIS_PER_DAY
+                + ((hour * 60L + minute - offsetMinutes) * 60 + second) * 1000 + millis;
+    }
+
+    // +HH:mm, +HHmm or +HH from index to the end, Integer.MIN_VALUE if it is none of them
+    private int offsetMinutes(int index) {
+
+        int sign = buffer[index] == '-' ? -1 : 1;
+        int remaining = length - index - 1;
+        int hours = remaining >= 2 ? digits(index + 1, 2) : -1;
+        int minutes;
+
+        if(remaining == 2) {
+            minutes = 0;
+        } else if(remaining == 4) {
+            minutes = digits(index + 3, 2);
+        } else if(remaining == 5 && buffer[index + 3] == ':') {
+            minutes = digits(index + 4, 2);
+        } else {
+            return Integer.MIN_VALUE;
+        }
+
+        if(hours < 0 || hours > 23 || minutes < 0 || minutes > 59) {
+            return Integer.MIN_VALUE;
+        }
+        return sign * (hours * 60 + minutes);
+    }
+
+    private long isoTimestamp() {
+        return ISO_TIMESTAMP.parseMillis(string());
+    }
+
+    // non-negative decimal of count digits at index, -1 if a char is no digit
+    private int digits(int index, int count) {
+        int value = 0;
+        for(int digit = index; digit < index + count; digit++) {
+            char c = buffer[digit];
+            if(c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if(month == 2) {
+            return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    // days of the proleptic Gregorian calendar since 1970-01-01
+    private static long daysSinceEpoch(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    // what Integer.parseInt accepts, the JDK only parses what is no plain short number
+    private int integer() {
+
+        int index = length > 1 && (buffer[0] == '-' || buffer[0] == '+') ? 1 : 0;
+
+        if(length - index > 0 && length - index < 10) {
+            int value = digits(index, length - index);
+            if(value >= 0) {
+                return buffer[0] == '-' ? -value : value;
+            }
+        }
+
+        return Integer.parseInt(string());
+    }
+
+    /**
+     * [-]digits[.digits] with up to AMOUNT_SCALE decimals; anything else (exponents, more decimals, which are rounded
+     * half up) goes to BigDecimal.
+     */
+    private long amount() {
+
+        int index = buffer[0] == '-' ? 1 : 0;
+        long value = 0;
+        int digits = 0;
+        int decimals = -1;
+
+        for(; index < length; index++) {
+            char c = buffer[index];
+            if(c == '.' && decimals < 0) {
+                decimals = 0;
+            } else if(c >= '0' && c <= '9' && digits < MAX_AMOUNT_DIGITS && decimals < NotificationEvent.AMOUNT_SCALE) {
+                value = value * 10 + c - '0';
+                digits++;
+                if(decimals >= 0) {
+                    decimals++;
+                }
+            } else {
+                return bigDecimalAmount();
+            }
+        }
+
+        if(digits == 0) {
+            return bigDecimalAmount();
+        }
+
+        for(int decimal = Math.max(decimals, 0); decimal < NotificationEvent.AMOUNT_SCALE; decimal++) {
+            value *= 10;
+        }
+        return buffer[0] == '-' ? -value : value;
+    }
+
+    private long bigDecimalAmount() {
+        try {
+            return new BigDecimal(string()).movePointRight(NotificationEvent.AMOUNT_SCALE).setScale(0, RoundingMode.HALF_UP).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount " + string() + " out of range", e);
+        }
+    }
+}
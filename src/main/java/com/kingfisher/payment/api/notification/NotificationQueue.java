@@ -0,0 +1,410 @@
+package com.kingfisher.payment.api.notification;
+
+import com.kingfisher.payment.api.concurrent.StripedExecutor;
+import com.kingfisher.payment.api.error.NotificationQueueFullException;
+import com.kingfisher.payment.api.journal.DeadLetterFile;
+import com.kingfisher.payment.api.journal.JournalFullException;
+import com.kingfisher.payment.api.journal.JournalRecord;
+import com.kingfisher.payment.api.journal.MappedJournal;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable queue between NotificationController and NotificationProcessor. Accepting a notification is one append to
+ * a local fsync'd journal; a dispatcher thread reads the journal in batches and hands every notification to the
+ * StripedExecutor lane of its longId, so the notifications of one charge are applied in the order they arrived while
+ * different charges are applied in parallel. A batch is checkpointed once all of it is applied, a failed batch is read
+ * again on the next run and notifications left in the journal at shutdown are processed after the restart. After
+ * max-attempts failures in a row, notifications the database rejects are moved to a dead-letter file instead of holding
+ * up the queue; those failing otherwise (database unavailable, log not written yet) stay queued.
+ * <p>
+ * Each lane remembers the last status it applied per longId. A notification older (by Optile's timestamp) than that
+ * status is dropped without reading its log and only gets its audit row, one whose previousStatusCode is not that
+ * status means one in between is missing or late; both are counted.
+ */
+@Component
+public class NotificationQueue implements MeterBinder {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Value("${optile.notification.queue.path}")
+    private String queuePath;
+    @Value("${optile.notification.queue.capacity}")
+    private int queueCapacity;
+    @Value("${optile.notification.queue.append-timeout}")
+    private long appendTimeout;
+    @Value("${optile.notification.queue.batch-size}")
+    private int batchSize;
+    @Value("${optile.notification.queue.poll-interval}")
+    private long pollInterval;
+    @Value("${optile.notification.queue.max-attempts}")
+    private int maxAttempts;
+    @Value("${optile.notification.queue.dead-letter-path}")
+    private String deadLetterPath;
+    @Value("${optile.notification.workers}")
+    private int workerCount;
+    @Value("${optile.notification.lane-capacity}")
+    private int laneCapacity;
+    @Value("${optile.notification.ordering.tracked-per-lane}")
+    private int trackedPerLane;
+
+    @Autowired
+    private NotificationProcessor processor;
+    @Autowired
+    private NotificationDeduplicator deduplicator;
+
+    private MappedJournal journal;
+    private DeadLetterFile deadLetters;
+    private ScheduledExecutorService dispatcher;
+    private StripedExecutor workers;
+    // per lane, only touched by the lane's thread
+    private List<Map<String, AppliedStatus>> appliedByLane;
+    // consecutive failed runs of the batch at the head of the journal, dispatcher thread only
+    private int failedAttempts;
+
+    // receivedAt of the oldest notification being processed, 0 when the queue is drained
+    private volatile long processingSince;
+    private volatile Timer processingLatency;
+    private final Map<NotificationProcessor.Outcome, AtomicLong> outcomes = new EnumMap<>(NotificationProcessor.Outcome.class);
+    private final AtomicLong olderArrivals = new AtomicLong();
+    private final AtomicLong statusGaps = new AtomicLong();
+
+    @PostConstruct
+    public void init() throws IOException {
+
+        journal = new MappedJournal(Paths.get(queuePath), queueCapacity);
+        deadLetters = new DeadLetterFile(Paths.get(deadLetterPath));
+
+        for(NotificationProcessor.Outcome outcome : NotificationProcessor.Outcome.values()) {
+            outcomes.put(outcome, new AtomicLong());
+        }
+
+        if(journal.getPendingCount() > 0) {
+            logger.info("Processing {} queued notifications from {}", journal.getPendingCount(), queuePath);
+        }
+
+        // 0: a lane per core
+        int lanes = workerCount > 0 ? workerCount : Runtime.getRuntime().availableProcessors();
+        workers = new StripedExecutor("optile.notification", lanes, laneCapacity);
+        appliedByLane = new ArrayList<>(lanes);
+        for(int lane = 0; lane < lanes; lane++) {
+            appliedByLane.add(new LinkedHashMap<String, AppliedStatus>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, AppliedStatus> eldest) {
+                    return size() > trackedPerLane;
+                }
+            });
+        }
+
+        dispatcher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "notification-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dispatcher.scheduleWithFixedDelay(this::drain, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException, InterruptedException {
+
+        // the batch in progress completes, the rest stays queued for the next start
+        dispatcher.shutdown();
+        dispatcher.awaitTermination(10, TimeUnit.SECONDS);
+        workers.shutdown();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+        journal.close();
+        deadLetters.close();
+    }
+
+    /**
+     * Durably queues the notification, it is applied by the workers.
+     *
+     * @return false for a notification already queued before, which is dropped
+     * @throws NotificationQueueFullException when processing is too far behind to take it, Optile delivers it again
+     */
+    public boolean enqueue(NotificationEvent event) {
+
+        // redeliveries are the bulk of a notification storm, they do not even cost a journal write
+        if(!deduplicator.claim(event.getNotificationId())) {
+            return false;
+        }
+
+        boolean queued = false;
+
+        try {
+            journal.append(NotificationEventCodec.encode(event), appendTimeout, TimeUnit.MILLISECONDS);
+            queued = true;
+            return true;
+        } catch (JournalFullException e) {
+            throw new NotificationQueueFullException(journal.getPendingCount(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NotificationQueueFullException(journal.getPendingCount(), e);
+        } finally {
+            if(queued) {
+                deduplicator.accepted(event.getNotificationId());
+            } else {
+                deduplicator.release(event.getNotificationId());
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("optile.notification.queue.depth", journal, MappedJournal::getPendingCount)
+                .description("Notifications accepted but not yet applied")
+                .register(registry);
+        Gauge.builder("optile.notification.queue.lag", this, queue -> queue.lagMillis() / 1000.0)
+                .description("Seconds since the oldest notification in processing was accepted")
+                .baseUnit("seconds")
+                .register(registry);
+        outcomes.forEach((outcome, count) ->
+                FunctionCounter.builder("optile.notification.processed", count, AtomicLong::get)
+                        .description("Notifications processed by outcome")
+                        .tag("outcome", outcome.name().toLowerCase())
+                        .register(registry));
+        FunctionCounter.builder("optile.notification.out-of-order", olderArrivals, AtomicLong::get)
+                .description("Notifications older than the status already applied to their charge, dropped")
+                .tag("kind", "older")
+                .register(registry);
+        FunctionCounter.builder("optile.notification.out-of-order", statusGaps, AtomicLong::get)
+                .description("Notifications whose previous status is not the one last applied to their charge")
+                .tag("kind", "gap")
+                .register(registry);
+        workers.bindTo(registry);
+        processingLatency = Timer.builder("optile.notification.processing")
+                .description("Time from accepting a notification to having applied it")
+                .register(registry);
+    }
+
+    long lagMillis() {
+        long since = processingSince;
+        return since == 0 ? 0 : Math.max(0, System.currentTimeMillis() - since);
+    }
+
+    synchronized void drain() {
+
+        try {
+            List<JournalRecord> records;
+
+            while(!(records = journal.readPending(batchSize)).isEmpty()) {
+
+                List<NotificationEvent> events = new ArrayList<>(records.size());
+                List<CompletableFuture<Void>> applied = new ArrayList<>(records.size());
+
+                for(JournalRecord record : records) {
+                    NotificationEvent event = NotificationEventCodec.decode(record.getPayload());
+                    if(applied.isEmpty()) {
+                        processingSince = event.getReceivedAt();
+                    }
+                    events.add(event);
+                    applied.add(submit(event));
+                }
+
+                long settled = settle(records, events, applied);
+
+                if(settled == 0) {
+                    return;
+                }
+
+                journal.checkpoint(settled);
+            }
+
+            processingSince = 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // the batch stays queued and is applied again, applying is idempotent
+            logger.error("Processing queued notifications failed, {} pending", journal.getPendingCount(), e);
+        }
+    }
+
+    /**
+     * Waits for the batch to be applied. A failed batch stays queued and is applied again on the next run; after
+     * max-attempts failures in a row its rejected notifications are dead-lettered, up to the first one failing for
+     * another reason.
+     *
+     * @return sequence up to which the batch can be checkpointed, 0 for none
+     */
+    private long settle(List<JournalRecord> records, List<NotificationEvent> events, List<CompletableFuture<Void>> applied)
+            throws InterruptedException {
+
+        List<Throwable> failures = new ArrayList<>(records.size());
+        Throwable firstFailure = null;
+
+        for(CompletableFuture<Void> future : applied) {
+            Throwable failure = future.handle((done, e) -> e).join();
+            if(failure instanceof CompletionException && failure.getCause() != null) {
+                failure = failure.getCause();
+            }
+            failures.add(failure);
+            if(firstFailure == null) {
+                firstFailure = failure;
+            }
+        }
+
+        if(firstFailure == null) {
+            failedAttempts = 0;
+            return records.get(records.size() - 1).getSequence();
+        }
+
+        if(++failedAttempts < maxAttempts) {
+            logger.error("Processing queued notifications failed (attempt {} of {}), {} pending",
+                    failedAttempts, maxAttempts, journal.getPendingCount(), firstFailure);
+            return 0;
+        }
+
+        long settled = 0;
+
+        for(int index = 0; index < records.size(); index++) {
+            Throwable failure = failures.get(index);
+            if(failure != null && !(isRejected(failure) && deadLetter(records.get(index), failure))) {
+                logger.error("Processing queued notifications failed {} times, {} pending", failedAttempts, journal.getPendingCount(), failure);
+                break;
+            }
+            if(failure != null) {
+                forget(events.get(index));
+            }
+            settled = records.get(index).getSequence();
+        }
+
+        if(settled != 0) {
+            failedAttempts = 0;
+        }
+
+        return settled;
+    }
+
+    private boolean deadLetter(JournalRecord record, Throwable e) {
+        try {
+            deadLetters.append(record);
+            logger.error("Queued notification {} cannot be applied, moved to {}", record.getSequence(), deadLetterPath, e);
+            return true;
+        } catch (IOException ioe) {
+            logger.error("Could not dead-letter queued notification {}, it stays queued", record.getSequence(), ioe);
+            return false;
+        }
+    }
+
+    // a dead-lettered notification never committed, the status its lane remembered for it is dropped again so the
+    // notifications after it are not checked against it
+    private void forget(NotificationEvent event) throws InterruptedException {
+
+        String key = key(event);
+        Map<String, AppliedStatus> applied = appliedByLane.get(workers.laneOf(key));
+
+        workers.execute(key, () -> {
+            AppliedStatus last = applied.get(key);
+            if(last != null && last.timestamp == event.getTimestamp() && Objects.equals(last.statusCode, event.getStatusCode())) {
+                applied.remove(key);
+            }
+        });
+    }
+
+    // the database refuses the notification's rows, retrying does not change that; an unavailable database does
+    private static boolean isRejected(Throwable e) {
+        return e instanceof NonTransientDataAccessException && !(e instanceof DataAccessResourceFailureException);
+    }
+
+    private CompletableFuture<Void> submit(NotificationEvent event) throws InterruptedException {
+
+        String key = key(event);
+        Map<String, AppliedStatus> applied = appliedByLane.get(workers.laneOf(key));
+        CompletableFuture<Void> done = new CompletableFuture<>();
+
+        // waits while the lane is full, which holds back the dispatcher and leaves the rest in the journal
+        workers.execute(key, () -> {
+            try {
+                // the lane moves on to the next notification while this one waits for its group commit
+                apply(event, key, applied).whenComplete((outcome, failure) -> {
+                    if(failure != null) {
+                        done.completeExceptionally(failure);
+                    } else {
+                        completed(event, outcome);
+                        done.complete(null);
+                    }
+                });
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        });
+
+        return done;
+    }
+
+    private CompletableFuture<NotificationProcessor.Outcome> apply(NotificationEvent event, String key, Map<String, AppliedStatus> applied) {
+
+        AppliedStatus last = applied.get(key);
+
+        if(last != null && event.getTimestamp() < last.timestamp) {
+            olderArrivals.incrementAndGet();
+            // audited as not applied like every other notification, also one a replayed batch brings again
+            return processor.drop(event);
+        }
+
+        // a batch applied again after a failure brings the same notifications, they are no gap
+        if(last != null && event.getTimestamp() > last.timestamp
+                && event.getPreviousStatusCode() != null && !event.getPreviousStatusCode().equals(last.statusCode)) {
+            statusGaps.incrementAndGet();
+        }
+
+        // remembered before the write commits, the next notification of the key is checked against it already; a
+        // failed write is applied again with the batch, or forgotten once it is dead-lettered
+        applied.put(key, new AppliedStatus(event.getTimestamp(), event.getStatusCode()));
+
+        return processor.apply(event);
+    }
+
+    private void completed(NotificationEvent event, NotificationProcessor.Outcome outcome) {
+
+        outcomes.get(outcome).incrementAndGet();
+
+        Timer latency = processingLatency;
+        if(latency != null) {
+            latency.record(Math.max(0, System.currentTimeMillis() - event.getReceivedAt()), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // the notifications of one charge always go to the same lane
+    private static String key(NotificationEvent event) {
+        return event.getLongId() != null ? event.getLongId() : event.getTransactionId();
+    }
+
+    private static class AppliedStatus {
+
+        private final long timestamp;
+        private final String statusCode;
+
+        private AppliedStatus(long timestamp, String statusCode) {
+            this.timestamp = timestamp;
+            this.statusCode = statusCode;
+        }
+    }
+}
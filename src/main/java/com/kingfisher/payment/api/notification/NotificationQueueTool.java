@@ -0,0 +1,80 @@
+package com.kingfisher.payment.api.notification;
+
+import com.kingfisher.payment.api.journal.JournalFullException;
+import com.kingfisher.payment.api.journal.JournalRecord;
+import com.kingfisher.payment.api.journal.MappedJournal;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inspects and replays notification queue files of a stopped instance, the journal must not be open in a running
+ * service.
+ *
+ * <pre>
+ * list &lt;queue&gt;            print the notifications not processed yet, oldest first
+ * replay &lt;queue&gt; &lt;target&gt; move them to the queue of another instance, which processes them on its next start
+ * </pre>
+ */
+public final class NotificationQueueTool {
+
+    private static final int DEFAULT_CAPACITY = 64 * 1024 * 1024;
+    private static final int BATCH = 1000;
+
+    private NotificationQueueTool() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, JournalFullException {
+
+        if(args.length == 2 && "list".equals(args[0])) {
+            list(Paths.get(args[1]), System.out);
+        } else if(args.length == 3 && "replay".equals(args[0])) {
+            System.out.println(replay(Paths.get(args[1]), Paths.get(args[2])) + " notifications moved to " + args[2]);
+        } else {
+            System.err.println("usage: NotificationQueueTool list <queue> | replay <queue> <target queue>");
+            System.exit(2);
+        }
+    }
+
+    static long list(Path queue, PrintStream out) throws IOException {
+
+        try(MappedJournal journal = open(queue)) {
+            // nothing is checkpointed, listing leaves the queue as it is
+            List<JournalRecord> records = journal.readPending(Integer.MAX_VALUE);
+            for(JournalRecord record : records) {
+                out.println(record.getSequence() + "\t" + NotificationEventCodec.decode(record.getPayload()));
+            }
+            return records.size();
+        }
+    }
+
+    static long replay(Path queue, Path target) throws IOException, InterruptedException, JournalFullException {
+
+        long moved = 0;
+
+        try(MappedJournal source = open(queue); MappedJournal destination = open(target)) {
+
+            List<JournalRecord> records;
+
+            // appended to the target before they are checkpointed in the source, a crash in between only duplicates them
+            while(!(records = source.readPending(BATCH)).isEmpty()) {
+                for(JournalRecord record : records) {
+                    destination.append(record.getPayload(), 0, TimeUnit.MILLISECONDS);
+                }
+                source.checkpoint(records.get(records.size() - 1).getSequence());
+                moved += records.size();
+            }
+        }
+
+        return moved;
+    }
+
+    private static MappedJournal open(Path path) throws IOException {
+        return new MappedJournal(path, Files.exists(path) ? (int) Files.size(path) : DEFAULT_CAPACITY);
+    }
+}
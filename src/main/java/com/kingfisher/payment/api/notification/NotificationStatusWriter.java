@@ -0,0 +1,316 @@
+package com.kingfisher.payment.api.notification;
+
+import com.kingfisher.payment.api.concurrent.BoundedMpscQueue;
+import com.kingfisher.payment.api.database.model.TransactionLogInfo;
+import com.kingfisher.payment.api.database.routing.RecentWrites;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Group commit of notification status updates. Notification workers hand in their update and get a future; a single
+ * writer thread collects the updates of all workers for up to max-delay ms or max-records updates, writes them with
+ * one JDBC batch and their audit rows with one COPY, commits once and then completes every future. A worker waits for
+ * a commit shared with the others instead of paying for one of its own. A batch which fails is written again update by
+ * update, so a row the database rejects only fails its own notification.
+ */
+@Component
+public class NotificationStatusWriter implements MeterBinder {
+
+    // notifications of one transaction may arrive out of order, the status of a later one is never overwritten
+    private static final String UPDATE_STATUS =
+            "UPDATE transaction_log_info SET status_code = ?, reason_code = ?, status_timestamp = ? " +
+            "WHERE id = ? AND timestamp = ? AND status_timestamp < ?";
+
+    private static final String AUDIT_COLUMNS =
+            "notification_id, transaction_id, long_id, status_code, reason_code, previous_status_code, notification_timestamp, received_at, applied";
+    private static final String COPY_AUDIT = "COPY optile_notification_audit (" + AUDIT_COLUMNS + ") FROM STDIN WITH (FORMAT csv)";
+    private static final String INSERT_AUDIT = "INSERT INTO optile_notification_audit (" + AUDIT_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long COLLECT_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Value("${optile.notification.group-commit.max-delay}")
+    private long maxDelay;
+    @Value("${optile.notification.group-commit.max-records}")
+    private int maxRecords;
+    @Value("${optile.notification.group-commit.queue-capacity}")
+    private int queueCapacity;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private RecentWrites recentWrites;
+
+    private TransactionTemplate transactionTemplate;
+    private BoundedMpscQueue<StatusUpdate> queue;
+    private Thread writer;
+    private volatile boolean running = true;
+
+    private volatile Timer commitLatency;
+    private volatile DistributionSummary batchSize;
+
+    @PostConstruct
+    public void init() {
+
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        queue = new BoundedMpscQueue<>(queueCapacity);
+
+        writer = new Thread(this::run, "notification-status-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // what is collected is still written, workers are stopped before
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * Queues the status of the notification for the next group commit, together with its audit row.
+     *
+     * @param transactionLogInfo the notification's log, null for unknown transactions which only get the audit row
+     * @return completes after the commit, with true if the status was applied and false if a later one was set already
+     */
+    public CompletableFuture<Boolean> write(NotificationEvent event, TransactionLogInfo transactionLogInfo) {
+
+        StatusUpdate update = new StatusUpdate(event, transactionLogInfo);
+
+        while(!queue.offer(update)) {
+            if(!running) {
+                throw new RejectedExecutionException("Notification status writer is shut down");
+            }
+            // the writer is behind a full batch or more, the worker waits like it would for a connection
+            LockSupport.parkNanos(this, COLLECT_PARK_NANOS);
+        }
+
+        LockSupport.unpark(writer);
+        return update.written;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        commitLatency = Timer.builder("optile.notification.group-commit.latency")
+                .description("Time from handing in a status update to its commit")
+                .publishPercentileHistogram()
+                .register(registry);
+        batchSize = DistributionSummary.builder("optile.notification.group-commit.batch-size")
+                .description("Status updates written per commit")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private void run() {
+
+        List<StatusUpdate> batch = new ArrayList<>(maxRecords);
+
+        while(running || queue.size() > 0) {
+
+            StatusUpdate first = queue.poll();
+            if(first == null) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+
+            batch.add(first);
+            long deadline = first.queuedAt + TimeUnit.MILLISECONDS.toNanos(maxDelay);
+
+            // whatever arrives until the batch is full or the oldest update has waited max-delay
+            while(batch.size() < maxRecords) {
+                StatusUpdate next = queue.poll();
+                if(next != null) {
+                    batch.add(next);
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0 || !running) {
+                    break;
+                }
+                LockSupport.parkNanos(this, Math.min(remaining, COLLECT_PARK_NANOS));
+            }
+
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    private void flush(List<StatusUpdate> batch) {
+
+        List<StatusUpdate> written = batch;
+
+        try {
+            write(batch);
+        } catch (RuntimeException e) {
+            // one row the database rejects must not fail the others
+            logger.error("Writing {} notification statuses failed, writing them one by one", batch.size(), e);
+            written = writeEach(batch);
+        }
+
+        long committed = System.nanoTime();
+        Timer latency = commitLatency;
+        DistributionSummary size = batchSize;
+
+        if(size != null) {
+            size.record(batch.size());
+        }
+
+        for(StatusUpdate update : written) {
+            if(update.applied) {
+                recentWrites.record(RecentWrites.transaction(update.event.getTransactionId()));
+            }
+            if(latency != null) {
+                latency.record(committed - update.queuedAt, TimeUnit.NANOSECONDS);
+            }
+            update.written.complete(update.applied);
+        }
+    }
+
+    /**
+     * Writes the updates one per transaction. The future of an update which fails again is completed with the failure,
+     * the queue retries its notification and dead-letters it once the database keeps rejecting it.
+     *
+     * @return the updates written
+     */
+    private List<StatusUpdate> writeEach(List<StatusUpdate> batch) {
+
+        List<StatusUpdate> written = new ArrayList<>(batch.size());
+
+        for(StatusUpdate update : batch) {
+            try {
+                write(Collections.singletonList(update));
+                written.add(update);
+            } catch (RuntimeException e) {
+                logger.error("Writing the status of notification {} failed", update.event.getNotificationId(), e);
+                update.written.completeExceptionally(e);
+            }
+        }
+
+        return written;
+    }
+
+    private void write(List<StatusUpdate> batch) {
+
+        List<Object[]> statuses = new ArrayList<>(batch.size());
+        List<StatusUpdate> updates = new ArrayList<>(batch.size());
+
+        for(StatusUpdate update : batch) {
+            if(update.transactionLogInfo != null) {
+                NotificationEvent event = update.event;
+                statuses.add(new Object[]{event.getStatusCode(), event.getReasonCode(), event.getTimestamp(),
+                        update.transactionLogInfo.getLogId(), update.transactionLogInfo.getTimestamp(), event.getTimestamp()});
+                updates.add(update);
+            }
+        }
+
+        transactionTemplate.execute(status -> {
+            int[] counts = statuses.isEmpty() ? new int[0] : jdbcTemplate.batchUpdate(UPDATE_STATUS, statuses);
+            for(int index = 0; index < counts.length; index++) {
+                // drivers not reporting counts per statement only say the statement succeeded
+                updates.get(index).applied = counts[index] == 1 || counts[index] == Statement.SUCCESS_NO_INFO;
+            }
+            audit(batch);
+            return null;
+        });
+    }
+
+    private void audit(List<StatusUpdate> batch) {
+
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+
+        try {
+            if(connection.isWrapperFor(PGConnection.class)) {
+                StringBuilder rows = new StringBuilder(batch.size() * 128);
+                for(StatusUpdate update : batch) {
+                    auditRow(update.event, update.applied, rows);
+                }
+                connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_AUDIT, new StringReader(rows.toString()));
+                return;
+            }
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException("Copying notification audit rows failed", e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+
+        // databases without COPY (H2 in tests)
+        List<Object[]> rows = new ArrayList<>(batch.size());
+        for(StatusUpdate update : batch) {
+            NotificationEvent event = update.event;
+            rows.add(new Object[]{event.getNotificationId(), event.getTransactionId(), event.getLongId(), event.getStatusCode(),
+                    event.getReasonCode(), event.getPreviousStatusCode(), event.getTimestamp(), event.getReceivedAt(), update.applied});
+        }
+        jdbcTemplate.batchUpdate(INSERT_AUDIT, rows);
+    }
+
+    // one line of COPY ... FORMAT csv
+    static void auditRow(NotificationEvent event, boolean applied, StringBuilder rows) {
+        csv(rows, event.getNotificationId()).append(',');
+        csv(rows, event.getTransactionId()).append(',');
+        csv(rows, event.getLongId()).append(',');
+        csv(rows, event.getStatusCode()).append(',');
+        csv(rows, event.getReasonCode()).append(',');
+        csv(rows, event.getPreviousStatusCode()).append(',');
+        rows.append(event.getTimestamp()).append(',')
+                .append(event.getReceivedAt()).append(',')
+                .append(applied).append('\n');
+    }
+
+    // unquoted empty is NULL in COPY csv, a quoted one the empty string
+    static StringBuilder csv(StringBuilder rows, String value) {
+        if(value != null) {
+            rows.append('"').append(value.replace("\"", "\"\"")).append('"');
+        }
+        return rows;
+    }
+
+    private static class StatusUpdate {
+
+        private final NotificationEvent event;
+        private final TransactionLogInfo transactionLogInfo;
+        private final long queuedAt = System.nanoTime();
+        private final CompletableFuture<Boolean> written = new CompletableFuture<>();
+        // set by the writer thread only
+        private boolean applied;
+
+        private StatusUpdate(NotificationEvent event, TransactionLogInfo transactionLogInfo) {
+            this.event = event;
+            this.transactionLogInfo = transactionLogInfo;
+        }
+    }
+}
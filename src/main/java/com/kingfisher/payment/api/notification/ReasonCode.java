@@ -0,0 +1,36 @@
+package com.kingfisher.payment.api.notification;
+
+/**
+ * The reasonCode values Optile sends most, the detail of a statusCode. The list is not exhaustive, other reason codes
+ * are passed on as they come.
+ */
+public enum ReasonCode {
+
+    LISTED("listed"),
+    DEBIT_REQUESTED("debit_requested"),
+    DEBITED("debited"),
+    DEBIT_DECLINED("debit_declined"),
+    DEBIT_FAILED("debit_failed"),
+    DEBIT_ABORTED("debit_aborted"),
+    DEBIT_CANCELED("debit_canceled"),
+    DEBIT_EXPIRED("debit_expired"),
+    PREAUTHORIZED("preauthorized"),
+    PAYOUT_REQUESTED("payout_requested"),
+    PAID_OUT("paid_out"),
+    CHARGEBACK_REQUESTED("chargeback_requested"),
+    CHARGED_BACK("charged_back"),
+    BLOCKED("blocked"),
+    RISK_DENIED("risk_denied"),
+    ACCOUNT_REGISTERED("account_registered"),
+    ACCOUNT_DEREGISTERED("account_deregistered");
+
+    private final String code;
+
+    ReasonCode(String code) {
+        this.code = code;
+    }
+
+    public String getCode() {
+        return code;
+    }
+}
@@ -0,0 +1,36 @@
+package com.kingfisher.payment.api.notification;
+
+/**
+ * Optile's statusCode values, the state of the charge or registration a notification reports.
+ */
+public enum StatusCode {
+
+    LISTED("listed"),
+    PENDING("pending"),
+    CHARGED("charged"),
+    PAID_OUT("paid_out"),
+    CHARGED_BACK("charged_back"),
+    INFORMATION_REQUESTED("information_requested"),
+    DISPUTE_CLOSED("dispute_closed"),
+    PREORDERED("preordered"),
+    REGISTERED("registered"),
+    DEREGISTERED("deregistered"),
+    ACTIVATED("activated"),
+    DEACTIVATED("deactivated"),
+    DECLINED("declined"),
+    REJECTED("rejected"),
+    FAILED("failed"),
+    ABORTED("aborted"),
+    CANCELED("canceled"),
+    EXPIRED("expired");
+
+    private final String code;
+
+    StatusCode(String code) {
+        this.code = code;
+    }
+
+    public String getCode() {
+        return code;
+    }
+}
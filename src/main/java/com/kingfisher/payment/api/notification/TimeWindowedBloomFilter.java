@@ -0,0 +1,163 @@
+package com.kingfisher.payment.api.notification;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Bloom filter over the keys put in the last one to two windows: keys are put into the current generation, lookups
+ * check the current and the previous one, and once a window has passed the previous generation is dropped and the
+ * current one takes its place. Memory is fixed to two bit arrays whatever the traffic; more keys per window only raise the
+ * false positive probability, which falsePositiveProbability() estimates from the bits actually set.
+ * <p>
+ * Bits are set with CAS, putting and checking need no lock.
+ */
+class TimeWindowedBloomFilter {
+
+    // optimal for ~10 bits per key, i.e. a false positive probability of about 1%
+    static final int HASH_FUNCTIONS = 7;
+
+    private final long bitsPerGeneration;
+    private final long window;
+    private final LongSupplier clock;
+
+    private volatile Generation current;
+    private volatile Generation previous;
+
+    /**
+     * @param bytes memory of both generations together
+     */
+    TimeWindowedBloomFilter(long bytes, long window, LongSupplier clock) {
+
+        // whole longs per generation
+        long words = Math.max(1, bytes / 2 / Long.BYTES);
+        if(words > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bloom filter of " + bytes + " bytes too large");
+        }
+
+        this.bitsPerGeneration = words * Long.SIZE;
+        this.window = window;
+        this.clock = clock;
+        this.current = new Generation((int) words, clock.getAsLong());
+        this.previous = new Generation((int) words, clock.getAsLong() - window);
+    }
+
+    /**
+     * @return true if the key may have been put within the last one to two windows, false if it certainly was not
+     */
+    boolean mightContain(String key) {
+
+        rotateIfExpired();
+
+        long hash1 = hash(key);
+        long hash2 = mix(hash1);
+
+        return contains(current, hash1, hash2) || contains(previous, hash1, hash2);
+    }
+
+    void put(String key) {
+
+        rotateIfExpired();
+
+        long hash1 = hash(key);
+        long hash2 = mix(hash1);
+        Generation generation = current;
+
+        for(int function = 0; function < HASH_FUNCTIONS; function++) {
+            generation.set(bit(hash1, hash2, function));
+        }
+    }
+
+    /**
+     * Probability that a key never put is reported as possibly put, for the current fill of both generations.
+     */
+    double falsePositiveProbability() {
+        double currentProbability = Math.pow((double) current.bitsSet.get() / bitsPerGeneration, HASH_FUNCTIONS);
+        double previousProbability = Math.pow((double) previous.bitsSet.get() / bitsPerGeneration, HASH_FUNCTIONS);
+        return 1 - (1 - currentProbability) * (1 - previousProbability);
+    }
+
+    private void rotateIfExpired() {
+
+        long now = clock.getAsLong();
+
+        if(now - current.createdAt < window) {
+            return;
+        }
+
+        synchronized (this) {
+            if(now - current.createdAt >= window) {
+                // a window without traffic leaves nothing worth keeping
+                previous = now - current.createdAt < 2 * window ? current : new Generation(current.words.length(), now - window);
+                current = new Generation(current.words.length(), now);
+            }
+        }
+    }
+
+    private boolean contains(Generation generation, long hash1, long hash2) {
+        for(int function = 0; function < HASH_FUNCTIONS; function++) {
+            if(!generation.get(bit(hash1, hash2, function))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // double hashing, k bit positions from two hashes
+    private long bit(long hash1, long hash2, int function) {
+        return Math.floorMod(hash1 + function * hash2, bitsPerGeneration);
+    }
+
+    // 64-bit FNV-1a over the chars
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for(int index = 0; index < key.length(); index++) {
+            hash ^= key.charAt(index);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    // MurmurHash3 finalizer, spreads FNV's weak low bits
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static class Generation {
+
+        private final AtomicLongArray words;
+        private final AtomicLong bitsSet = new AtomicLong();
+        private final long createdAt;
+
+        private Generation(int words, long createdAt) {
+            this.words = new AtomicLongArray(words);
+            this.createdAt = createdAt;
+        }
+
+        boolean get(long bit) {
+            return (words.get((int) (bit >>> 6)) & (1L << bit)) != 0;
+        }
+
+        void set(long bit) {
+
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+
+            while(true) {
+                long value = words.get(word);
+                if((value & mask) != 0) {
+                    return;
+                }
+                if(words.compareAndSet(word, value, value | mask)) {
+                    bitsSet.incrementAndGet();
+                    return;
+                }
+            }
+        }
+    }
+}
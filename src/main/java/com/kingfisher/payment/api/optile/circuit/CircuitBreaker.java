@@ -0,0 +1,145 @@
+package com.kingfisher.payment.api.optile.circuit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Count based circuit breaker. Opens when either the failure rate or the slow call rate of the last
+ * slidingWindowSize calls reaches its threshold, rejects calls while open, and after waitDurationInOpenState lets
+ * a limited number of probe calls through (half open) to decide whether to close again.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    @FunctionalInterface
+    public interface StateTransitionListener {
+        void onStateTransition(CircuitBreaker circuitBreaker, State from, State to);
+    }
+
+    private final String name;
+    private final CircuitBreakerConfig config;
+    private final StateTransitionListener listener;
+    private final LongSupplier nanoClock;
+
+    private final long slowCallDurationNanos;
+    private final long waitDurationInOpenStateNanos;
+
+    // ring buffer of call outcomes, bit 0 - failed, bit 1 - slow
+    private final byte[] outcomes;
+    private int position;
+    private int recordedCalls;
+    private int failedCalls;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermits;
+
+    public CircuitBreaker(String name, CircuitBreakerConfig config, StateTransitionListener listener) {
+        this(name, config, listener, System::nanoTime);
+    }
+
+    CircuitBreaker(String name, CircuitBreakerConfig config, StateTransitionListener listener, LongSupplier nanoClock) {
+        this.name = name;
+        this.config = config;
+        this.listener = listener;
+        this.nanoClock = nanoClock;
+        this.slowCallDurationNanos = TimeUnit.MILLISECONDS.toNanos(config.getSlowCallDurationMillis());
+        this.waitDurationInOpenStateNanos = TimeUnit.MILLISECONDS.toNanos(config.getWaitDurationInOpenStateMillis());
+        this.outcomes = new byte[config.getSlidingWindowSize()];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized boolean tryAcquirePermission() {
+
+        if(state == State.OPEN) {
+            if(nanoClock.getAsLong() - openedAt < waitDurationInOpenStateNanos) {
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+
+        if(state == State.HALF_OPEN) {
+            if(halfOpenPermits >= config.getPermittedCallsInHalfOpenState()) {
+                return false;
+            }
+            halfOpenPermits++;
+        }
+
+        return true;
+    }
+
+    public synchronized void onResult(long durationNanos, boolean failed) {
+
+        // late result of a call admitted before the circuit opened
+        if(state == State.OPEN) {
+            return;
+        }
+
+        record(failed, durationNanos >= slowCallDurationNanos);
+
+        if(state == State.HALF_OPEN) {
+            if(recordedCalls >= config.getPermittedCallsInHalfOpenState()) {
+                transitionTo(isThresholdReached() ? State.OPEN : State.CLOSED);
+            }
+        } else if(recordedCalls >= config.getMinimumNumberOfCalls() && isThresholdReached()) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    public long nanoTime() {
+        return nanoClock.getAsLong();
+    }
+
+    private void record(boolean failed, boolean slow) {
+
+        if(recordedCalls == outcomes.length) {
+            byte evicted = outcomes[position];
+            failedCalls -= evicted & 1;
+            slowCalls -= (evicted >> 1) & 1;
+        } else {
+            recordedCalls++;
+        }
+
+        byte outcome = (byte) ((failed ? 1 : 0) | (slow ? 2 : 0));
+        outcomes[position] = outcome;
+        failedCalls += outcome & 1;
+        slowCalls += (outcome >> 1) & 1;
+        position = (position + 1) % outcomes.length;
+    }
+
+    private boolean isThresholdReached() {
+        return failedCalls * 100 >= config.getFailureRateThreshold() * recordedCalls
+                || slowCalls * 100 >= config.getSlowCallRateThreshold() * recordedCalls;
+    }
+
+    private void transitionTo(State newState) {
+
+        State previous = state;
+        state = newState;
+
+        position = 0;
+        recordedCalls = 0;
+        failedCalls = 0;
+        slowCalls = 0;
+        halfOpenPermits = 0;
+
+        if(newState == State.OPEN) {
+            openedAt = nanoClock.getAsLong();
+        }
+
+        listener.onStateTransition(this, previous, newState);
+    }
+}
@@ -0,0 +1,75 @@
+package com.kingfisher.payment.api.optile.circuit;
+
+public class CircuitBreakerConfig {
+
+    private int slidingWindowSize = 50;
+    private int minimumNumberOfCalls = 20;
+    private int failureRateThreshold = 50;
+    private int slowCallRateThreshold = 80;
+    private long slowCallDurationMillis = 3000;
+    private long waitDurationInOpenStateMillis = 10000;
+    private int permittedCallsInHalfOpenState = 5;
+
+    public CircuitBreakerConfig slidingWindowSize(int slidingWindowSize) {
+        this.slidingWindowSize = slidingWindowSize;
+        return this;
+    }
+
+    public CircuitBreakerConfig minimumNumberOfCalls(int minimumNumberOfCalls) {
+        this.minimumNumberOfCalls = minimumNumberOfCalls;
+        return this;
+    }
+
+    public CircuitBreakerConfig failureRateThreshold(int failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+        return this;
+    }
+
+    public CircuitBreakerConfig slowCallRateThreshold(int slowCallRateThreshold) {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        return this;
+    }
+
+    public CircuitBreakerConfig slowCallDurationMillis(long slowCallDurationMillis) {
+        this.slowCallDurationMillis = slowCallDurationMillis;
+        return this;
+    }
+
+    public CircuitBreakerConfig waitDurationInOpenStateMillis(long waitDurationInOpenStateMillis) {
+        this.waitDurationInOpenStateMillis = waitDurationInOpenStateMillis;
+        return this;
+    }
+
+    public CircuitBreakerConfig permittedCallsInHalfOpenState(int permittedCallsInHalfOpenState) {
+        this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+        return this;
+    }
+
+    public int getSlidingWindowSize() {
+        return slidingWindowSize;
+    }
+
+    public int getMinimumNumberOfCalls() {
+        return minimumNumberOfCalls;
+    }
+
+    public int getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public int getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public long getSlowCallDurationMillis() {
+        return slowCallDurationMillis;
+    }
+
+    public long getWaitDurationInOpenStateMillis() {
+        return waitDurationInOpenStateMillis;
+    }
+
+    public int getPermittedCallsInHalfOpenState() {
+        return permittedCallsInHalfOpenState;
+    }
+}
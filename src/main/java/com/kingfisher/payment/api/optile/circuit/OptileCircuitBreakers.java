@@ -0,0 +1,127 @@
+package com.kingfisher.payment.api.optile.circuit;
+
+import com.kingfisher.payment.api.error.ErrorResponseException;
+import com.kingfisher.payment.api.error.OptileCircuitOpenException;
+import com.kingfisher.payment.api.optile.model.ErrorInfo;
+import com.kingfisher.payment.api.optile.service.OptileOperation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+
+import javax.annotation.PostConstruct;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * One circuit breaker per Optile operation, so a degraded charge endpoint does not stop session creation.
+ */
+@Component
+public class OptileCircuitBreakers implements MeterBinder {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Value("${optile.circuit-breaker.sliding-window-size}")
+    private int slidingWindowSize;
+    @Value("${optile.circuit-breaker.minimum-number-of-calls}")
+    private int minimumNumberOfCalls;
+    @Value("${optile.circuit-breaker.failure-rate-threshold}")
+    private int failureRateThreshold;
+    @Value("${optile.circuit-breaker.slow-call-rate-threshold}")
+    private int slowCallRateThreshold;
+    @Value("${optile.circuit-breaker.slow-call-duration}")
+    private long slowCallDuration;
+    @Value("${optile.circuit-breaker.wait-duration-in-open-state}")
+    private long waitDurationInOpenState;
+    @Value("${optile.circuit-breaker.permitted-calls-in-half-open-state}")
+    private int permittedCallsInHalfOpenState;
+
+    private final Map<OptileOperation, CircuitBreaker> circuitBreakers = new EnumMap<>(OptileOperation.class);
+    private final Map<OptileOperation, ErrorInfo> unavailableResponses = new EnumMap<>(OptileOperation.class);
+
+    private volatile MeterRegistry meterRegistry;
+
+    @PostConstruct
+    public void init() {
+
+        CircuitBreakerConfig config = new CircuitBreakerConfig()
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(minimumNumberOfCalls)
+                .failureRateThreshold(failureRateThreshold)
+                .slowCallRateThreshold(slowCallRateThreshold)
+                .slowCallDurationMillis(slowCallDuration)
+                .waitDurationInOpenStateMillis(waitDurationInOpenState)
+                .permittedCallsInHalfOpenState(permittedCallsInHalfOpenState);
+
+        for(OptileOperation operation : OptileOperation.values()) {
+            circuitBreakers.put(operation, new CircuitBreaker(operation.name(), config, this::onStateTransition));
+            unavailableResponses.put(operation, new ErrorInfo(HttpStatus.SERVICE_UNAVAILABLE.getReasonPhrase()));
+        }
+    }
+
+    public CircuitBreaker get(OptileOperation operation) {
+        return circuitBreakers.get(operation);
+    }
+
+    /**
+     * @throws OptileCircuitOpenException with the cached error response when the operation is not permitted
+     */
+    public CircuitBreaker acquirePermission(OptileOperation operation) {
+
+        CircuitBreaker circuitBreaker = circuitBreakers.get(operation);
+
+        if(!circuitBreaker.tryAcquirePermission()) {
+            MeterRegistry registry = meterRegistry;
+            if(registry != null) {
+                registry.counter("optile.circuitbreaker.calls.rejected", "operation", operation.name()).increment();
+            }
+            throw new OptileCircuitOpenException(operation.name(), unavailableResponses.get(operation));
+        }
+
+        return circuitBreaker;
+    }
+
+    // 4xx responses are business errors of a healthy Optile, only I/O problems and 5xx count as failures
+    public static boolean isFailure(Throwable e) {
+
+        if(e == null) {
+            return false;
+        }
+        if(e instanceof ErrorResponseException) {
+            return ((ErrorResponseException) e).getErrorResponse().getStatus() >= 500;
+        }
+
+        return e instanceof ResourceAccessException;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+
+        circuitBreakers.forEach((operation, circuitBreaker) ->
+                Gauge.builder("optile.circuitbreaker.state", circuitBreaker, cb -> cb.getState().ordinal())
+                        .tags("operation", operation.name())
+                        .description("0 - closed, 1 - open, 2 - half open")
+                        .register(registry));
+
+        this.meterRegistry = registry;
+    }
+
+    private void onStateTransition(CircuitBreaker circuitBreaker, CircuitBreaker.State from, CircuitBreaker.State to) {
+
+        logger.warn("Optile circuit breaker {} changed state from {} to {}", circuitBreaker.getName(), from, to);
+
+        MeterRegistry registry = meterRegistry;
+        if(registry != null) {
+            Counter.builder("optile.circuitbreaker.transitions")
+                    .tags("operation", circuitBreaker.getName(), "from", from.name(), "to", to.name())
+                    .register(registry)
+                    .increment();
+        }
+    }
+}
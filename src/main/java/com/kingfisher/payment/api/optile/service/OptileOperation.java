@@ -0,0 +1,12 @@
+package com.kingfisher.payment.api.optile.service;
+
+/**
+ * Optile remote operations, used as key for per operation resilience policies and metrics.
+ */
+public enum OptileOperation {
+    LISTS,
+    CHARGE,
+    CLOSING,
+    PAYOUT,
+    CANCEL
+}
@@ -13,6 +13,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
 import java.text.MessageFormat;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class OptileService {
@@ -42,32 +43,97 @@ public class OptileService {
 
         HttpEntity<Transaction> entity = new HttpEntity<>(listRequest, getHeaders());
 
-        return restTemplateExtention.execute(NetworkList.class,listEndpoint, HttpMethod.POST, entity).getBody();
+        return restTemplateExtention.execute(OptileOperation.LISTS, NetworkList.class, listEndpoint, HttpMethod.POST, entity).getBody();
     }
 
     public Payout closePaymentCharge(String chargeId, Transaction transaction) {
 
         HttpEntity<Transaction> entity = new HttpEntity<>(transaction, getHeaders());
 
-        return restTemplateExtention.execute(Payout.class, MessageFormat.format(closeChargeEndpoint, chargeId), HttpMethod.POST, entity).getBody();
+        return restTemplateExtention.execute(OptileOperation.CLOSING, Payout.class, MessageFormat.format(closeChargeEndpoint, chargeId), HttpMethod.POST, entity).getBody();
     }
 
     public Payout chargePayment(String listId, String requestBody) {
         HttpEntity<String> entity = new HttpEntity<>(requestBody, getHeaders());
 
-        return restTemplateExtention.execute(Payout.class, MessageFormat.format(chargePaymentEndpoint, listId), HttpMethod.POST, entity).getBody();
+        return restTemplateExtention.execute(OptileOperation.CHARGE, Payout.class, MessageFormat.format(chargePaymentEndpoint, listId), HttpMethod.POST, entity).getBody();
     }
 
     public Payout refundPayment(String listId, Operation operation) {
        HttpEntity<Operation> entity = new HttpEntity<>(operation, getHeaders());
 
-        return restTemplateExtention.execute(Payout.class, MessageFormat.format(refundChargeEndpoint, listId), HttpMethod.POST, entity).getBody();
+        return restTemplateExtention.execute(OptileOperation.PAYOUT, Payout.class, MessageFormat.format(refundChargeEndpoint, listId), HttpMethod.POST, entity).getBody();
     }
 
     public ResponseEntity cancelListSession(String listId) {
         HttpEntity entity = new HttpEntity<>(getHeaders());
 
-        return restTemplateExtention.execute(Payout.class, MessageFormat.format(cancelListSessionEndpoint, listId), HttpMethod.DELETE, entity);
+        return restTemplateExtention.execute(OptileOperation.CANCEL, Payout.class, MessageFormat.format(cancelListSessionEndpoint, listId), HttpMethod.DELETE, entity);
+    }
+
+    public CompletableFuture<NetworkList> postListRequestAsync(final Transaction listRequest) {
+
+        HttpEntity<Transaction> entity = new HttpEntity<>(listRequest, getHeaders());
+
+        return restTemplateExtention.executeAsync(OptileOperation.LISTS, NetworkList.class, listEndpoint, HttpMethod.POST, entity)
+                .thenApply(ResponseEntity::getBody);
+    }
+
+    // pass-through variant, the raw response bytes are forwarded to the client without being mapped
+    public CompletableFuture<byte[]> postListRequestRawAsync(final Transaction listRequest) {
+
+        HttpEntity<Transaction> entity = new HttpEntity<>(listRequest, getHeaders());
+
+        return restTemplateExtention.executeAsync(OptileOperation.LISTS, byte[].class, listEndpoint, HttpMethod.POST, entity)
+                .thenApply(ResponseEntity::getBody);
+    }
+
+    // streaming variants, the body is the LIST request already written by ListRequestRewriter
+    public CompletableFuture<NetworkList> postListRequestAsync(final byte[] listRequest) {
+
+        HttpEntity<byte[]> entity = new HttpEntity<>(listRequest, getHeaders());
+
+        return restTemplateExtention.executeAsync(OptileOperation.LISTS, NetworkList.class, listEndpoint, HttpMethod.POST, entity)
+                .thenApply(ResponseEntity::getBody);
+    }
+
+    public CompletableFuture<byte[]> postListRequestRawAsync(final byte[] listRequest) {
+
+        HttpEntity<byte[]> entity = new HttpEntity<>(listRequest, getHeaders());
+
+        return restTemplateExtention.executeAsync(OptileOperation.LISTS, byte[].class, listEndpoint, HttpMethod.POST, entity)
+                .thenApply(ResponseEntity::getBody);
+    }
+
+    public CompletableFuture<Payout> closePaymentChargeAsync(String chargeId, Transaction transaction) {
+
+        HttpEntity<Transaction> entity = new HttpEntity<>(transaction, getHeaders());
+
+        return restTemplateExtention.executeAsync(OptileOperation.CLOSING, Payout.class, MessageFormat.format(closeChargeEndpoint, chargeId), HttpMethod.POST, entity)
+                .thenApply(ResponseEntity::getBody);
+    }
+
+    public CompletableFuture<Payout> chargePaymentAsync(String listId, String requestBody) {
+
+        HttpEntity<String> entity = new HttpEntity<>(requestBody, getHeaders());
+
+        return restTemplateExtention.executeAsync(OptileOperation.CHARGE, Payout.class, MessageFormat.format(chargePaymentEndpoint, listId), HttpMethod.POST, entity)
+                .thenApply(ResponseEntity::getBody);
+    }
+
+    public CompletableFuture<Payout> refundPaymentAsync(String listId, Operation operation) {
+
+        HttpEntity<Operation> entity = new HttpEntity<>(operation, getHeaders());
+
+        return restTemplateExtention.executeAsync(OptileOperation.PAYOUT, Payout.class, MessageFormat.format(refundChargeEndpoint, listId), HttpMethod.POST, entity)
+                .thenApply(ResponseEntity::getBody);
+    }
+
+    public CompletableFuture<ResponseEntity<Payout>> cancelListSessionAsync(String listId) {
+
+        HttpEntity entity = new HttpEntity<>(getHeaders());
+
+        return restTemplateExtention.executeAsync(OptileOperation.CANCEL, Payout.class, MessageFormat.format(cancelListSessionEndpoint, listId), HttpMethod.DELETE, entity);
     }
 
     //TODO authorization token will be different and dynamic in future. Below is for Test Optile sandbox.
@@ -1,22 +1,33 @@
 package com.kingfisher.payment.api.optile.service;
 
+import com.kingfisher.payment.api.config.VirtualThreadConfig;
+import com.kingfisher.payment.api.optile.circuit.CircuitBreaker;
+import com.kingfisher.payment.api.optile.circuit.OptileCircuitBreakers;
 import com.kingfisher.payment.api.validator.ValidatorUtil;
 import com.kingfisher.payment.api.validator.groups.Optile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.AsyncRestTemplate;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
+import java.io.IOException;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 @Component
+@SuppressWarnings("deprecation")
 public class RestTemplateExtension {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -26,13 +37,63 @@ public class RestTemplateExtension {
     @Autowired
     private RestTemplate restTemplate;
     @Autowired
+    private AsyncRestTemplate asyncRestTemplate;
+    @Autowired
     private Validator validator;
     @Autowired
     private ValidatorUtil validatorUtil;
+    @Autowired
+    private OptileCircuitBreakers circuitBreakers;
+    @Autowired(required = false)
+    @Qualifier(VirtualThreadConfig.OPTILE_CALL_EXECUTOR)
+    private Executor optileCallExecutor;
+
+    public <T> ResponseEntity<T> execute(OptileOperation operation, Class<T> responseEntityType, String uri, HttpMethod method, HttpEntity<?> requestEntity) {
+
+        CircuitBreaker circuitBreaker = circuitBreakers.acquirePermission(operation);
+        long start = circuitBreaker.nanoTime();
+
+        try {
+            ResponseEntity<T> response = restTemplate.exchange(baseURL + uri, method, requestEntity, responseEntityType);
+            circuitBreaker.onResult(circuitBreaker.nanoTime() - start, false);
+            validate(response);
+
+            return response;
+        } catch (RuntimeException e) {
+            circuitBreaker.onResult(circuitBreaker.nanoTime() - start, OptileCircuitBreakers.isFailure(e));
+            throw e;
+        }
+    }
+
+    public <T> CompletableFuture<ResponseEntity<T>> executeAsync(OptileOperation operation, Class<T> responseEntityType, String uri, HttpMethod method, HttpEntity<?> requestEntity) {
+
+        // virtual thread mode: plain blocking call, the waiting virtual thread is parked instead of holding a platform thread
+        if(optileCallExecutor != null) {
+            return CompletableFuture.supplyAsync(() -> execute(operation, responseEntityType, uri, method, requestEntity), optileCallExecutor);
+        }
+
+        CircuitBreaker circuitBreaker = circuitBreakers.acquirePermission(operation);
+        long start = circuitBreaker.nanoTime();
 
-    public <T> ResponseEntity<T> execute(Class<T> responseEntityType, String uri, HttpMethod method, HttpEntity<?> requestEntity) {
+        CompletableFuture<ResponseEntity<T>> response;
+
+        try {
+            response = asyncRestTemplate.exchange(baseURL + uri, method, requestEntity, responseEntityType).completable();
+        } catch (RuntimeException e) {
+            // not submitted (e.g. request not writable, client shut down), the permission is released all the same
+            circuitBreaker.onResult(circuitBreaker.nanoTime() - start, OptileCircuitBreakers.isFailure(e));
+            throw e;
+        }
+
+        return response
+                .exceptionally(RestTemplateExtension::translateException)
+                .whenComplete((result, e) -> circuitBreaker.onResult(circuitBreaker.nanoTime() - start,
+                        OptileCircuitBreakers.isFailure(e instanceof CompletionException ? e.getCause() : e)))
+                .thenApply(this::validate);
+    }
+
+    private <T> ResponseEntity<T> validate(ResponseEntity<T> response) {
 
-        ResponseEntity<T> response = restTemplate.exchange(baseURL + uri, method, requestEntity, responseEntityType);
         Set<ConstraintViolation<T>> violations = validator.validate(response.getBody(), Optile.class);
 
         if(!violations.isEmpty()) {
@@ -42,4 +103,19 @@ public class RestTemplateExtension {
 
         return response;
     }
+
+    // async client reports raw I/O failures, wrap them the same way RestTemplate does for GlobalExceptionHandler
+    private static <T> T translateException(Throwable e) {
+
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+
+        if(cause instanceof IOException) {
+            throw new ResourceAccessException("I/O error on Optile request: " + cause.getMessage(), (IOException) cause);
+        }
+        if(cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+
+        throw new CompletionException(cause);
+    }
 }
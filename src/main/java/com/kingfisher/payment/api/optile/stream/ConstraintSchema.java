@@ -0,0 +1,207 @@
+package com.kingfisher.payment.api.optile.stream;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.kingfisher.payment.api.validator.annotation.DisallowedField;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import javax.validation.groups.Default;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The constraints of a model class which ListRequestRewriter checks while it copies the tokens: NotNull, NotEmpty and
+ * DisallowedField of the validated group, on a field or its getter, and the @Valid properties they cascade into.
+ * Properties are keyed by their JSON name. Read once per class by reflection, immutable afterwards.
+ */
+final class ConstraintSchema {
+
+    enum Kind { OBJECT, ARRAY, NUMBER, BOOLEAN, VALUE, ANY }
+
+    static final class Property {
+
+        private final Kind kind;
+        private final boolean notNull;
+        private final boolean notEmpty;
+        private final boolean disallowed;
+        // the object, or the array elements, the constraints cascade into; null if not @Valid
+        private ConstraintSchema nested;
+
+        private Property(Kind kind, boolean notNull, boolean notEmpty, boolean disallowed) {
+            this.kind = kind;
+            this.notNull = notNull;
+            this.notEmpty = notEmpty;
+            this.disallowed = disallowed;
+        }
+
+        Kind getKind() {
+            return kind;
+        }
+
+        boolean isNotNull() {
+            return notNull;
+        }
+
+        boolean isNotEmpty() {
+            return notEmpty;
+        }
+
+        boolean isDisallowed() {
+            return disallowed;
+        }
+
+        ConstraintSchema getNested() {
+            return nested;
+        }
+    }
+
+    private static final Property UNKNOWN = new Property(Kind.ANY, false, false, false);
+
+    private final Map<String, Property> properties = new HashMap<>();
+
+    private ConstraintSchema() {
+    }
+
+    static ConstraintSchema of(Class<?> type, Class<?> group) {
+        return of(type, group, new HashMap<>());
+    }
+
+    private static ConstraintSchema of(Class<?> type, Class<?> group, Map<Class<?>, ConstraintSchema> known) {
+
+        ConstraintSchema schema = known.get(type);
+
+        if(schema != null) {
+            return schema;
+        }
+
+        schema = new ConstraintSchema();
+        // registered before its properties are read, a model referring back to itself gets this instance
+        known.put(type, schema);
+
+        for(Class<?> declaring = type; declaring != null && declaring != Object.class; declaring = declaring.getSuperclass()) {
+            for(Field field : declaring.getDeclaredFields()) {
+
+                JsonProperty jsonProperty = field.getAnnotation(JsonProperty.class);
+
+                if(jsonProperty == null || schema.properties.containsKey(jsonProperty.value())) {
+                    continue;
+                }
+
+                Method getter = getter(type, field);
+                Type elementType = elementType(field);
+                Kind kind = kind(field.getType());
+
+                Property property = new Property(kind,
+                        applies(field, getter, NotNull.class, group),
+                        applies(field, getter, NotEmpty.class, group),
+                        applies(field, getter, DisallowedField.class, group));
+
+                if(annotated(field, getter, Valid.class)) {
+                    if(kind == Kind.OBJECT) {
+                        property.nested = of(field.getType(), group, known);
+                    } else if(kind == Kind.ARRAY && elementType instanceof Class && kind((Class<?>) elementType) == Kind.OBJECT) {
+                        property.nested = of((Class<?>) elementType, group, known);
+                    }
+                }
+
+                schema.properties.put(jsonProperty.value(), property);
+            }
+        }
+
+        return schema;
+    }
+
+    Property property(String name) {
+        return properties.getOrDefault(name, UNKNOWN);
+    }
+
+    Map<String, Property> properties() {
+        return Collections.unmodifiableMap(properties);
+    }
+
+    private static Kind kind(Class<?> type) {
+
+        if(Number.class.isAssignableFrom(type) || (type.isPrimitive() && type != boolean.class)) {
+            return Kind.NUMBER;
+        }
+        if(type == Boolean.class || type == boolean.class) {
+            return Kind.BOOLEAN;
+        }
+        if(Collection.class.isAssignableFrom(type) || type.isArray()) {
+            return Kind.ARRAY;
+        }
+        if(Map.class.isAssignableFrom(type)) {
+            return Kind.ANY;
+        }
+        if(type == String.class || type.isEnum() || type.getName().startsWith("java.") || type.getName().startsWith("org.joda.")) {
+            return Kind.VALUE;
+        }
+        return Kind.OBJECT;
+    }
+
+    private static Type elementType(Field field) {
+        Type generic = field.getGenericType();
+        if(generic instanceof ParameterizedType) {
+            Type[] arguments = ((ParameterizedType) generic).getActualTypeArguments();
+            return arguments.length == 1 ? arguments[0] : null;
+        }
+        return field.getType().isArray() ? field.getType().getComponentType() : null;
+    }
+
+    private static Method getter(Class<?> type, Field field) {
+        String suffix = Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+        for(String prefix : new String[] {"get", "is"}) {
+            try {
+                return type.getMethod(prefix + suffix);
+            } catch (NoSuchMethodException e) {
+                // try the next prefix
+            }
+        }
+        return null;
+    }
+
+    private static boolean annotated(Field field, Method getter, Class<? extends Annotation> annotation) {
+        return field.isAnnotationPresent(annotation) || (getter != null && getter.isAnnotationPresent(annotation));
+    }
+
+    // a constraint without groups is in Default, which the validated group (PaymentAPI) extends
+    private static boolean applies(Field field, Method getter, Class<? extends Annotation> annotation, Class<?> group) {
+        return applies(field, annotation, group) || (getter != null && applies(getter, annotation, group));
+    }
+
+    private static boolean applies(AnnotatedElement element, Class<? extends Annotation> annotation, Class<?> group) {
+
+        Annotation constraint = element.getAnnotation(annotation);
+
+        if(constraint == null) {
+            return false;
+        }
+
+        Class<?>[] groups;
+        try {
+            groups = (Class<?>[]) annotation.getMethod("groups").invoke(constraint);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(annotation.getName() + " has no groups", e);
+        }
+
+        if(groups.length == 0) {
+            return Default.class.isAssignableFrom(group);
+        }
+
+        for(Class<?> constraintGroup : groups) {
+            if(constraintGroup.isAssignableFrom(group)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,305 @@
+package com.kingfisher.payment.api.optile.stream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.kingfisher.payment.api.error.InputDTOValidationException;
+import com.kingfisher.payment.api.model.ListRequestDTO;
+import com.kingfisher.payment.api.optile.model.Registration;
+import com.kingfisher.payment.api.validator.groups.PaymentAPI;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Rewrites the ATG session request into the Optile LIST request in one streaming pass: orderId is dropped,
+ * integration/transactionId/updateOnly, callback.notificationUrl and customer.registration are injected. The PaymentAPI
+ * constraints of ListRequestDTO (disallowed fields, NotNull, NotEmpty, cascaded into @Valid objects and lists) are
+ * checked on the way and reported in the same sorted "path message" form as ValidatorUtil, so no DTO has to be bound.
+ * A value of a type the DTO could not bind (a string for a number, a scalar for an object) fails the pass like a body
+ * Jackson cannot read; enum values and dates are left to Optile.
+ */
+public class ListRequestRewriter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final ConstraintSchema REQUEST_SCHEMA = ConstraintSchema.of(ListRequestDTO.class, PaymentAPI.class);
+
+    private static final String NOT_NULL = "must not be null";
+    private static final String NOT_EMPTY = "must not be empty";
+    private static final String NOT_ALLOWED = "field is not allowed";
+
+    private final String integrationMode;
+    private final boolean updateOnly;
+    private final String notificationUrl;
+    private final Supplier<String> transactionIdGenerator;
+
+    public ListRequestRewriter(String integrationMode, boolean updateOnly, String notificationUrl,
+                               Supplier<String> transactionIdGenerator) {
+        this.integrationMode = integrationMode;
+        this.updateOnly = updateOnly;
+        this.notificationUrl = notificationUrl;
+        this.transactionIdGenerator = transactionIdGenerator;
+    }
+
+    /**
+     * @param registrationLookup called once with customer.number while the customer object is written
+     * @throws InputDTOValidationException when the request violates a constraint
+     * @throws IOException when the body is not JSON or a value has the wrong type
+     */
+    public RewrittenListRequest rewrite(byte[] atgRequest, Function<String, Optional<Registration>> registrationLookup)
+            throws InputDTOValidationException, IOException {
+
+        Context context = new Context(registrationLookup);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(atgRequest.length + 256);
+
+        try (JsonParser parser = JSON_FACTORY.createParser(atgRequest);
+             JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+
+            if(parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Request body should be a JSON object");
+            }
+
+            generator.writeStartObject();
+            rewriteRoot(parser, generator, context);
+
+            if(!context.violations.isEmpty()) {
+                Collections.sort(context.violations);
+                throw new InputDTOValidationException(String.join(", ", context.violations));
+            }
+
+            context.transactionId = transactionIdGenerator.get();
+
+            generator.writeStringField("integration", integrationMode);
+            generator.writeStringField("transactionId", context.transactionId);
+            generator.writeBooleanField("updateOnly", updateOnly);
+            generator.writeEndObject();
+        }
+
+        return new RewrittenListRequest(out.toByteArray(), context.orderId, context.customerNumber, context.transactionId);
+    }
+
+    private void rewriteRoot(JsonParser parser, JsonGenerator generator, Context context) throws IOException {
+
+        Set<String> present = new HashSet<>();
+
+        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if(value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+
+            present.add(field);
+            ConstraintSchema.Property property = REQUEST_SCHEMA.property(field);
+
+            if("orderId".equals(field)) {
+                checkValue(field, property, value, parser, context);
+                context.orderId = parser.getValueAsString();
+            } else if("customer".equals(field) && value == JsonToken.START_OBJECT) {
+                generator.writeFieldName(field);
+                rewriteCustomer(property.getNested(), parser, generator, context);
+            } else if("callback".equals(field) && value == JsonToken.START_OBJECT) {
+                generator.writeFieldName(field);
+                rewriteCallback(property.getNested(), parser, generator, context);
+            } else {
+                copyField(field, field, property, value, parser, generator, context);
+            }
+        }
+
+        reportMissing(null, REQUEST_SCHEMA, present, context);
+    }
+
+    private void rewriteCustomer(ConstraintSchema schema, JsonParser parser, JsonGenerator generator, Context context) throws IOException {
+
+        generator.writeStartObject();
+        Set<String> present = new HashSet<>();
+
+        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if(value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+
+            present.add(field);
+            copyField("customer." + field, field, schema.property(field), value, parser, generator, context);
+
+            // a scalar stays the current token once copied
+            if("number".equals(field)) {
+                context.customerNumber = parser.getValueAsString();
+            }
+        }
+
+        reportMissing("customer", schema, present, context);
+
+        // the ATG request must not carry a registration (disallowed above), the stored one is injected
+        if(context.customerNumber != null && !context.customerNumber.isEmpty()) {
+            Optional<Registration> registration = context.registrationLookup.apply(context.customerNumber);
+            if(registration.isPresent()) {
+                generator.writeObjectFieldStart("registration");
+                writeStringIfPresent(generator, "id", registration.get().getId());
+                writeStringIfPresent(generator, "password", registration.get().getPassword());
+                generator.writeEndObject();
+            }
+        }
+
+        generator.writeEndObject();
+    }
+
+    private void rewriteCallback(ConstraintSchema schema, JsonParser parser, JsonGenerator generator, Context context) throws IOException {
+
+        generator.writeStartObject();
+        copyFields("callback", schema, parser, generator, context);
+        generator.writeStringField("notificationUrl", notificationUrl);
+        generator.writeEndObject();
+    }
+
+    private void copyObject(String path, ConstraintSchema schema, JsonParser parser, JsonGenerator generator, Context context) throws IOException {
+
+        generator.writeStartObject();
+        copyFields(path, schema, parser, generator, context);
+        generator.writeEndObject();
+    }
+
+    private void copyFields(String path, ConstraintSchema schema, JsonParser parser, JsonGenerator generator, Context context) throws IOException {
+
+        Set<String> present = new HashSet<>();
+
+        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if(value != JsonToken.VALUE_NULL) {
+                present.add(field);
+                copyField(path + "." + field, field, schema.property(field), value, parser, generator, context);
+            }
+        }
+
+        reportMissing(path, schema, present, context);
+    }
+
+    private void copyField(String path, String field, ConstraintSchema.Property property, JsonToken value,
+                           JsonParser parser, JsonGenerator generator, Context context) throws IOException {
+
+        if(property.isDisallowed()) {
+            context.violations.add(path + " " + NOT_ALLOWED);
+            parser.skipChildren();
+            return;
+        }
+
+        checkValue(path, property, value, parser, context);
+        generator.writeFieldName(field);
+
+        ConstraintSchema nested = property.getNested();
+
+        if(nested == null) {
+            generator.copyCurrentStructure(parser);
+        } else if(value == JsonToken.START_OBJECT) {
+            copyObject(path, nested, parser, generator, context);
+        } else {
+            generator.writeStartArray();
+            int index = 0;
+            for(JsonToken element = parser.nextToken(); element != JsonToken.END_ARRAY; element = parser.nextToken(), index++) {
+                if(element == JsonToken.START_OBJECT) {
+                    copyObject(path + "[" + index + "]", nested, parser, generator, context);
+                } else if(element == JsonToken.VALUE_NULL) {
+                    generator.writeNull();
+                } else {
+                    throw new JsonParseException(parser, path + "[" + index + "] should be an object");
+                }
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    // the value types the DTO would bind, Jackson's scalar coercions (numbers and booleans as strings) included
+    private static void checkValue(String path, ConstraintSchema.Property property, JsonToken value, JsonParser parser,
+                                   Context context) throws IOException {
+
+        boolean bindable;
+
+        switch(property.getKind()) {
+            case OBJECT:
+                bindable = value == JsonToken.START_OBJECT;
+                break;
+            case ARRAY:
+                bindable = value == JsonToken.START_ARRAY;
+                break;
+            case NUMBER:
+                bindable = value.isNumeric() || (value == JsonToken.VALUE_STRING && isNumber(parser.getText()));
+                break;
+            case BOOLEAN:
+            case VALUE:
+                bindable = value.isScalarValue();
+                break;
+            default:
+                bindable = true;
+        }
+
+        if(!bindable) {
+            throw new JsonParseException(parser, path + " has the wrong type: " + value);
+        }
+
+        if(property.isNotEmpty() && value == JsonToken.VALUE_STRING && parser.getText().isEmpty()) {
+            context.violations.add(path + " " + NOT_EMPTY);
+        }
+    }
+
+    private static boolean isNumber(String text) {
+        try {
+            new BigDecimal(text.trim());
+            return true;
+        } catch (NumberFormatException e) {
+            return text.trim().isEmpty();
+        }
+    }
+
+    private static void reportMissing(String path, ConstraintSchema schema, Set<String> present, Context context) {
+        schema.properties().forEach((field, property) -> {
+            if(!present.contains(field)) {
+                String fieldPath = path == null ? field : path + "." + field;
+                if(property.isNotNull()) {
+                    context.violations.add(fieldPath + " " + NOT_NULL);
+                }
+                if(property.isNotEmpty()) {
+                    context.violations.add(fieldPath + " " + NOT_EMPTY);
+                }
+            }
+        });
+    }
+
+    private static void writeStringIfPresent(JsonGenerator generator, String field, String value) throws IOException {
+        if(value != null) {
+            generator.writeStringField(field, value);
+        }
+    }
+
+    private static class Context {
+
+        private final Function<String, Optional<Registration>> registrationLookup;
+        private final List<String> violations = new ArrayList<>();
+        private String orderId;
+        private String customerNumber;
+        private String transactionId;
+
+        private Context(Function<String, Optional<Registration>> registrationLookup) {
+            this.registrationLookup = registrationLookup;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.kingfisher.payment.api.optile.stream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import java.io.IOException;
+
+/**
+ * Extracts identification.transactionId, identification.longId and timestamp from a raw LIST response with a single
+ * token scan, skipping the networks/accounts graphs without materializing them.
+ */
+public final class ListResponseScanner {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormat.forPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+
+    private ListResponseScanner() {
+        //utility
+    }
+
+    public static ListResponseSummary scan(byte[] listResponse) {
+
+        String transactionId = null;
+        String longId = null;
+        String timestamp = null;
+
+        try (JsonParser parser = JSON_FACTORY.createParser(listResponse)) {
+
+            if(parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("LIST response is not a JSON object");
+            }
+
+            while(parser.nextToken() == JsonToken.FIELD_NAME && (transactionId == null || longId == null || timestamp == null)) {
+
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+
+                if("timestamp".equals(field) && value == JsonToken.VALUE_STRING) {
+                    timestamp = parser.getText();
+                } else if("identification".equals(field) && value == JsonToken.START_OBJECT) {
+                    while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String identificationField = parser.getCurrentName();
+                        parser.nextToken();
+                        if("transactionId".equals(identificationField)) {
+                            transactionId = parser.getText();
+                        } else if("longId".equals(identificationField)) {
+                            longId = parser.getText();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+        } catch (IOException e) {
+            throw new IllegalArgumentException("LIST response is not readable", e);
+        }
+
+        if(transactionId == null || longId == null || timestamp == null) {
+            throw new IllegalArgumentException("LIST response misses identification or timestamp");
+        }
+
+        return new ListResponseSummary(transactionId, longId, TIMESTAMP_FORMAT.parseMillis(timestamp));
+    }
+}
@@ -0,0 +1,38 @@
+package com.kingfisher.payment.api.optile.stream;
+
+import com.kingfisher.payment.api.optile.model.NetworkList;
+
+/**
+ * The part of an Optile LIST response needed to log the payment session.
+ */
+public class ListResponseSummary {
+
+    private final String transactionId;
+    private final String longId;
+    private final long timestamp;
+
+    public ListResponseSummary(String transactionId, String longId, long timestamp) {
+        this.transactionId = transactionId;
+        this.longId = longId;
+        this.timestamp = timestamp;
+    }
+
+    public static ListResponseSummary of(NetworkList networkList) {
+        return new ListResponseSummary(
+                networkList.getIdentification().getTransactionId(),
+                networkList.getIdentification().getLongId(),
+                networkList.getTimestamp().getMillis());
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public String getLongId() {
+        return longId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
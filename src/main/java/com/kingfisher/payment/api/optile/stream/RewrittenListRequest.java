@@ -0,0 +1,35 @@
+package com.kingfisher.payment.api.optile.stream;
+
+/**
+ * Serialized Optile LIST request together with the values the payment session is logged with.
+ */
+public class RewrittenListRequest {
+
+    private final byte[] body;
+    private final String orderId;
+    private final String customerNumber;
+    private final String transactionId;
+
+    public RewrittenListRequest(byte[] body, String orderId, String customerNumber, String transactionId) {
+        this.body = body;
+        this.orderId = orderId;
+        this.customerNumber = customerNumber;
+        this.transactionId = transactionId;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public String getCustomerNumber() {
+        return customerNumber;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+}
@@ -0,0 +1,30 @@
+-- Schema as created by hibernate ddl-auto=update so far. IF NOT EXISTS keeps this migration a no-op on databases that
+-- were created that way (flyway baselines them at version 0, see spring.flyway.baseline-version).
+
+CREATE TABLE IF NOT EXISTS customer_registration_info (
+    id                       BIGSERIAL    NOT NULL,
+    profile_id               VARCHAR(255),
+    optile_customer_id       VARCHAR(255),
+    optile_customer_password VARCHAR(255),
+    CONSTRAINT customer_registration_info_pkey PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS transaction_log_info (
+    transaction_id                VARCHAR(255) NOT NULL,
+    timestamp                     BIGINT       NOT NULL,
+    list_id                       VARCHAR(255),
+    order_id                      VARCHAR(255),
+    charge_id                     VARCHAR(255),
+    customer_registration_info_id BIGINT,
+    CONSTRAINT transaction_log_info_pkey PRIMARY KEY (transaction_id),
+    CONSTRAINT fk_transaction_log_info_customer_registration_info
+        FOREIGN KEY (customer_registration_info_id) REFERENCES customer_registration_info (id)
+);
+
+CREATE TABLE IF NOT EXISTS idempotent_request_info (
+    idempotency_key VARCHAR(255) NOT NULL,
+    operation       VARCHAR(255),
+    timestamp       BIGINT       NOT NULL,
+    response        TEXT,
+    CONSTRAINT idempotent_request_info_pkey PRIMARY KEY (idempotency_key)
+);
@@ -0,0 +1,39 @@
+-- Indexes behind the repository lookups. Index names are checked at startup by SchemaIndexVerifier.
+
+-- findFirstByProfileId: profileId becomes unique, duplicates left by ddl-auto are merged into one survivor first,
+-- the oldest row holding an Optile registration or else the oldest row
+CREATE TEMPORARY TABLE customer_registration_info_survivor ON COMMIT DROP AS
+SELECT id, FIRST_VALUE(id) OVER (PARTITION BY profile_id
+                                 ORDER BY optile_customer_id IS NULL, id) AS keep_id
+  FROM customer_registration_info
+ WHERE profile_id IS NOT NULL;
+
+UPDATE transaction_log_info t
+   SET customer_registration_info_id = d.keep_id
+  FROM customer_registration_info_survivor d
+ WHERE t.customer_registration_info_id = d.id
+   AND d.id <> d.keep_id;
+
+DELETE FROM customer_registration_info c
+ USING customer_registration_info_survivor d
+ WHERE c.id = d.id
+   AND d.id <> d.keep_id;
+
+CREATE UNIQUE INDEX IF NOT EXISTS ux_customer_registration_info_profile_id
+    ON customer_registration_info (profile_id);
+
+-- findFirstByOrderIdOrderByTimestampDesc: one index probe, the first entry is the latest session of the order
+CREATE INDEX IF NOT EXISTS ix_transaction_log_info_order_id_timestamp
+    ON transaction_log_info (order_id, timestamp DESC);
+
+-- notification and close lookups by Optile ids
+CREATE INDEX IF NOT EXISTS ix_transaction_log_info_list_id
+    ON transaction_log_info (list_id);
+
+CREATE INDEX IF NOT EXISTS ix_transaction_log_info_charge_id
+    ON transaction_log_info (charge_id)
+    WHERE charge_id IS NOT NULL;
+
+-- foreign key side, keeps deletes/updates of customer_registration_info from scanning the log
+CREATE INDEX IF NOT EXISTS ix_transaction_log_info_customer_registration_info_id
+    ON transaction_log_info (customer_registration_info_id);
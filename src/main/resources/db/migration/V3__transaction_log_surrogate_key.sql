@@ -0,0 +1,17 @@
+-- bigint surrogate key for transaction_log_info. New rows use Snowflake ids (TransactionIdGenerator), existing rows
+-- are numbered from a sequence which stays far below them (a Snowflake id of 2018 is already above 2^40).
+
+CREATE SEQUENCE IF NOT EXISTS transaction_log_info_legacy_id_seq;
+
+ALTER TABLE transaction_log_info ADD COLUMN id BIGINT;
+
+UPDATE transaction_log_info SET id = nextval('transaction_log_info_legacy_id_seq');
+
+ALTER TABLE transaction_log_info ALTER COLUMN id SET NOT NULL;
+
+ALTER TABLE transaction_log_info DROP CONSTRAINT transaction_log_info_pkey;
+
+ALTER TABLE transaction_log_info ADD CONSTRAINT transaction_log_info_pkey PRIMARY KEY (id);
+
+-- lookups of sessions created before the switch, and the write-behind upsert
+CREATE UNIQUE INDEX ux_transaction_log_info_transaction_id ON transaction_log_info (transaction_id);
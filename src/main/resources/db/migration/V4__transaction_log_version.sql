@@ -0,0 +1,3 @@
+-- optimistic locking of transaction_log_info (TransactionLogInfo.version): every update bumps it, an update carrying
+-- an older version changes no row and is retried on the current one
+ALTER TABLE transaction_log_info ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
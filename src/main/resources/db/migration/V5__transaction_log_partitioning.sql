@@ -0,0 +1,71 @@
+-- transaction_log_info partitioned by month of timestamp (PostgreSQL 11+). Partitions are named
+-- transaction_log_info_pYYYYMM and created ahead by TransactionLogPartitionMaintenance, which also detaches, archives
+-- and drops the ones past retention.
+--
+-- The existing table is not copied: it becomes the partition for everything before next month
+-- (transaction_log_info_legacy) and is retired as a whole once that bound is past retention.
+
+ALTER TABLE transaction_log_info RENAME TO transaction_log_info_legacy;
+ALTER TABLE transaction_log_info_legacy RENAME CONSTRAINT transaction_log_info_pkey TO transaction_log_info_legacy_pkey;
+ALTER INDEX ix_transaction_log_info_order_id_timestamp RENAME TO ix_transaction_log_info_legacy_order_id_timestamp;
+ALTER INDEX ix_transaction_log_info_list_id RENAME TO ix_transaction_log_info_legacy_list_id;
+ALTER INDEX ix_transaction_log_info_charge_id RENAME TO ix_transaction_log_info_legacy_charge_id;
+ALTER INDEX ix_transaction_log_info_customer_registration_info_id RENAME TO ix_transaction_log_info_legacy_customer_registration_info_id;
+ALTER INDEX ux_transaction_log_info_transaction_id RENAME TO ux_transaction_log_info_legacy_transaction_id;
+
+-- unique constraints of a partitioned table have to contain the partition key
+CREATE TABLE transaction_log_info (
+    id                            BIGINT       NOT NULL,
+    transaction_id                VARCHAR(255) NOT NULL,
+    timestamp                     BIGINT       NOT NULL,
+    list_id                       VARCHAR(255),
+    order_id                      VARCHAR(255),
+    charge_id                     VARCHAR(255),
+    customer_registration_info_id BIGINT,
+    version                       BIGINT       NOT NULL DEFAULT 0,
+    CONSTRAINT transaction_log_info_pkey PRIMARY KEY (id, timestamp),
+    CONSTRAINT fk_transaction_log_info_customer_registration_info
+        FOREIGN KEY (customer_registration_info_id) REFERENCES customer_registration_info (id)
+) PARTITION BY RANGE (timestamp);
+
+-- same lookup indexes as V2/V3, created on every partition
+CREATE INDEX ix_transaction_log_info_order_id_timestamp ON transaction_log_info (order_id, timestamp DESC);
+CREATE INDEX ix_transaction_log_info_list_id ON transaction_log_info (list_id);
+CREATE INDEX ix_transaction_log_info_charge_id ON transaction_log_info (charge_id) WHERE charge_id IS NOT NULL;
+CREATE INDEX ix_transaction_log_info_customer_registration_info_id ON transaction_log_info (customer_registration_info_id);
+CREATE UNIQUE INDEX ux_transaction_log_info_transaction_id ON transaction_log_info (transaction_id, timestamp);
+
+DO $$
+DECLARE
+    next_month TIMESTAMPTZ := date_trunc('month', now() AT TIME ZONE 'UTC') AT TIME ZONE 'UTC' + INTERVAL '1 month';
+    cutover    BIGINT := (extract(EPOCH FROM next_month) * 1000)::BIGINT;
+    month      TIMESTAMPTZ;
+BEGIN
+    -- validated up front so the attach does not scan the table again
+    EXECUTE format('ALTER TABLE transaction_log_info_legacy ADD CONSTRAINT transaction_log_info_legacy_range '
+                   'CHECK (timestamp < %s) NOT VALID', cutover);
+    ALTER TABLE transaction_log_info_legacy VALIDATE CONSTRAINT transaction_log_info_legacy_range;
+    EXECUTE format('ALTER TABLE transaction_log_info ATTACH PARTITION transaction_log_info_legacy '
+                   'FOR VALUES FROM (MINVALUE) TO (%s)', cutover);
+
+    -- the maintenance job keeps creating months ahead from here
+    FOR i IN 0..2 LOOP
+        month := next_month + i * INTERVAL '1 month';
+        EXECUTE format('CREATE TABLE transaction_log_info_p%s PARTITION OF transaction_log_info FOR VALUES FROM (%s) TO (%s)',
+                       to_char(month AT TIME ZONE 'UTC', 'YYYYMM'),
+                       (extract(EPOCH FROM month) * 1000)::BIGINT,
+                       (extract(EPOCH FROM month + INTERVAL '1 month') * 1000)::BIGINT);
+    END LOOP;
+END
+$$;
+
+-- rows outside every month partition (e.g. the job did not run for months) still have a place to go
+CREATE TABLE transaction_log_info_default PARTITION OF transaction_log_info DEFAULT;
+
+-- partitions TransactionLogPartitionMaintenance detached for archiving; only tables listed here are emptied and
+-- dropped, whatever else is named like a partition is left alone
+CREATE TABLE transaction_log_partition_retired (
+    partition_name VARCHAR(63) NOT NULL,
+    detached_at    BIGINT      NOT NULL,
+    CONSTRAINT transaction_log_partition_retired_pkey PRIMARY KEY (partition_name)
+);
@@ -0,0 +1,5 @@
+-- latest Optile status of the transaction, written by the notification workers. status_timestamp is the Optile
+-- timestamp of the notification that set it, older notifications arriving late do not overwrite a newer status.
+ALTER TABLE transaction_log_info ADD COLUMN status_code VARCHAR(255);
+ALTER TABLE transaction_log_info ADD COLUMN reason_code VARCHAR(255);
+ALTER TABLE transaction_log_info ADD COLUMN status_timestamp BIGINT NOT NULL DEFAULT 0;
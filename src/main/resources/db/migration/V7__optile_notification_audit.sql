@@ -0,0 +1,15 @@
+-- every processed Optile notification, appended with COPY by NotificationStatusWriter in the same transaction as the
+-- status update it caused. applied is false for notifications of unknown transactions and ones older than the status.
+CREATE TABLE optile_notification_audit (
+    notification_id        VARCHAR(255) NOT NULL,
+    transaction_id         VARCHAR(255) NOT NULL,
+    long_id                VARCHAR(255),
+    status_code            VARCHAR(255),
+    reason_code            VARCHAR(255),
+    previous_status_code   VARCHAR(255),
+    notification_timestamp BIGINT       NOT NULL,
+    received_at            BIGINT       NOT NULL,
+    applied                BOOLEAN      NOT NULL
+);
+
+CREATE INDEX ix_optile_notification_audit_transaction_id ON optile_notification_audit (transaction_id);
@@ -0,0 +1,7 @@
+-- An Idempotency-Key is claimed (PENDING) before the Optile call and COMPLETED with its response afterwards, so a
+-- retry landing on another instance sees the claim instead of calling Optile again. The fingerprint binds the key
+-- to the request it was first used for. Rows stored before cannot be bound to a request, their empty fingerprint
+-- matches none, so reusing such a key is rejected rather than replaying a response which may belong elsewhere.
+ALTER TABLE idempotent_request_info ADD COLUMN status VARCHAR(16) NOT NULL DEFAULT 'COMPLETED';
+ALTER TABLE idempotent_request_info ADD COLUMN fingerprint VARCHAR(64) NOT NULL DEFAULT '';
+ALTER TABLE idempotent_request_info ALTER COLUMN fingerprint DROP DEFAULT;
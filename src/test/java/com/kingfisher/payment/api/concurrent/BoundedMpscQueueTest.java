@@ -0,0 +1,93 @@
+package com.kingfisher.payment.api.concurrent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BoundedMpscQueueTest {
+
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwoTest() {
+        assertEquals(1, new BoundedMpscQueue<>(1).capacity());
+        assertEquals(4, new BoundedMpscQueue<>(3).capacity());
+        assertEquals(4, new BoundedMpscQueue<>(4).capacity());
+        assertEquals(1024, new BoundedMpscQueue<>(1000).capacity());
+    }
+
+    @Test
+    public void offerFailsWhenFullAndSlotsAreReusedTest() {
+
+        BoundedMpscQueue<Integer> queue = new BoundedMpscQueue<>(2);
+
+        for(int round = 0; round < 3; round++) {
+            assertTrue(queue.offer(1));
+            assertTrue(queue.offer(2));
+            assertFalse(queue.offer(3));
+            assertEquals(2, queue.size());
+
+            assertEquals(Integer.valueOf(1), queue.poll());
+            assertEquals(Integer.valueOf(2), queue.poll());
+            assertNull(queue.poll());
+            assertEquals(0, queue.size());
+        }
+    }
+
+    @Test
+    public void concurrentProducersLoseNothingAndKeepTheirOrderTest() throws Exception {
+
+        int producers = 4;
+        int perProducer = 100000;
+        BoundedMpscQueue<long[]> queue = new BoundedMpscQueue<>(64);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        for(int producer = 0; producer < producers; producer++) {
+            long id = producer;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for(long sequence = 0; sequence < perProducer; sequence++) {
+                    long[] element = {id, sequence};
+                    while(!queue.offer(element)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+
+        long[] next = new long[producers];
+        int received = 0;
+
+        while(received < producers * perProducer) {
+            long[] element = queue.poll();
+            if(element == null) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(next[(int) element[0]]++, element[1]);
+            received++;
+        }
+
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        for(int producer = 0; producer < producers; producer++) {
+            assertEquals(perProducer, next[producer]);
+        }
+        assertNull(queue.poll());
+    }
+}
@@ -0,0 +1,101 @@
+package com.kingfisher.payment.api.concurrent;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StripedExecutorTest {
+
+    private final StripedExecutor executor = new StripedExecutor("test", 4, 16);
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void tasksOfOneKeyRunInSubmissionOrderTest() throws Exception {
+
+        int keys = 50;
+        int perKey = 2000;
+        // written only by the lane of the key, no locking needed
+        int[] applied = new int[keys];
+        AtomicInteger outOfOrder = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(keys * perKey);
+
+        for(int sequence = 0; sequence < perKey; sequence++) {
+            for(int key = 0; key < keys; key++) {
+                int expected = sequence;
+                int index = key;
+                executor.execute("charge-" + key, () -> {
+                    if(applied[index] != expected) {
+                        outOfOrder.incrementAndGet();
+                    }
+                    applied[index] = expected + 1;
+                    done.countDown();
+                });
+            }
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(0, outOfOrder.get());
+    }
+
+    @Test
+    public void differentKeysRunOnDifferentLanesTest() throws Exception {
+
+        ConcurrentMap<String, String> threads = new ConcurrentHashMap<>();
+        List<String> keys = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(200);
+
+        for(int key = 0; key < 200; key++) {
+            String name = "charge-" + key;
+            keys.add(name);
+            executor.execute(name, () -> {
+                threads.put(name, Thread.currentThread().getName());
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(4, threads.values().stream().distinct().count());
+        for(String key : keys) {
+            assertEquals("test-" + executor.laneOf(key), threads.get(key));
+        }
+    }
+
+    @Test
+    public void queuedTasksCompleteOnShutdownTest() throws Exception {
+
+        AtomicInteger completed = new AtomicInteger();
+        CountDownLatch blocked = new CountDownLatch(1);
+
+        executor.execute("key", () -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        for(int task = 0; task < 10; task++) {
+            executor.execute("key", completed::incrementAndGet);
+        }
+
+        executor.shutdown();
+        blocked.countDown();
+
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(10, completed.get());
+    }
+}
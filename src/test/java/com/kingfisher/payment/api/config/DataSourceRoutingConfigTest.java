@@ -0,0 +1,71 @@
+package com.kingfisher.payment.api.config;
+
+import com.kingfisher.payment.api.metrics.ConnectionHoldTimeDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DataSourceRoutingConfigTest {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(DataSourceAutoConfiguration.class))
+            .withUserConfiguration(DataSourceRoutingConfig.class, PersistenceMetricsConfig.class)
+            .withPropertyValues(
+                    "spring.datasource.url=jdbc:h2:mem:routing-primary",
+                    "spring.datasource.hikari.maximum-pool-size=3",
+                    DataSourceRoutingConfig.REPLICA_URLS_PROPERTY + "=jdbc:h2:mem:routing-replica0, jdbc:h2:mem:routing-replica1");
+
+    @Test
+    public void poolsAreBoundFromHikariPropertiesTest() {
+        contextRunner.run(context -> {
+
+            HikariDataSource primary = pool(context.getBean(DataSourceRoutingConfig.PRIMARY_DATA_SOURCE, DataSource.class));
+            HikariDataSource replica0 = pool(context.getBean(DataSourceRoutingConfig.REPLICA_DATA_SOURCE + 0, DataSource.class));
+            HikariDataSource replica1 = pool(context.getBean(DataSourceRoutingConfig.REPLICA_DATA_SOURCE + 1, DataSource.class));
+
+            assertEquals("jdbc:h2:mem:routing-primary", primary.getJdbcUrl());
+            assertEquals("jdbc:h2:mem:routing-replica0", replica0.getJdbcUrl());
+            assertEquals("jdbc:h2:mem:routing-replica1", replica1.getJdbcUrl());
+            assertEquals(3, primary.getMaximumPoolSize());
+            assertEquals(3, replica0.getMaximumPoolSize());
+            assertEquals(3, replica1.getMaximumPoolSize());
+        });
+    }
+
+    @Test
+    public void holdTimeIsRecordedOnThePoolsTest() {
+        contextRunner.run(context -> {
+
+            // the routing data source hands out the connections of the wrapped pools, it is not wrapped itself
+            assertTrue(context.getBean(DataSource.class) instanceof LazyConnectionDataSourceProxy);
+            assertTrue(context.getBean(DataSourceRoutingConfig.PRIMARY_DATA_SOURCE) instanceof ConnectionHoldTimeDataSource);
+            assertTrue(context.getBean(DataSourceRoutingConfig.REPLICA_DATA_SOURCE + 0) instanceof ConnectionHoldTimeDataSource);
+        });
+    }
+
+    @Test
+    public void poolsAreClosedWithTheContextTest() {
+
+        HikariDataSource[] pools = new HikariDataSource[2];
+
+        contextRunner.run(context -> {
+            pools[0] = pool(context.getBean(DataSourceRoutingConfig.PRIMARY_DATA_SOURCE, DataSource.class));
+            pools[1] = pool(context.getBean(DataSourceRoutingConfig.REPLICA_DATA_SOURCE + 0, DataSource.class));
+        });
+
+        assertTrue(pools[0].isClosed());
+        assertTrue(pools[1].isClosed());
+    }
+
+    private static HikariDataSource pool(DataSource dataSource) {
+        return (HikariDataSource) ((ConnectionHoldTimeDataSource) dataSource).getTargetDataSource();
+    }
+}
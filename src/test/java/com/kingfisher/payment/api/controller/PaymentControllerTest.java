@@ -1,13 +1,19 @@
 package com.kingfisher.payment.api.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kingfisher.payment.api.config.AsyncConfig;
+import com.kingfisher.payment.api.config.JacksonConfig;
+import com.kingfisher.payment.api.config.MapperConfig;
+import com.kingfisher.payment.api.config.PropertiesConfig;
 import com.kingfisher.payment.api.database.model.CustomerRegistrationInfo;
 import com.kingfisher.payment.api.database.service.CustomerService;
+import com.kingfisher.payment.api.database.service.IdempotencyService;
 import com.kingfisher.payment.api.database.service.TransactionLogService;
 import com.kingfisher.payment.api.optile.model.NetworkList;
 import com.kingfisher.payment.api.optile.model.Registration;
 import com.kingfisher.payment.api.optile.model.Transaction;
 import com.kingfisher.payment.api.optile.service.OptileService;
+import com.kingfisher.payment.api.optile.stream.ListRequestRewriter;
 import com.kingfisher.payment.api.validator.ValidatorUtil;
 import org.junit.Before;
 import org.junit.Test;
@@ -17,26 +23,38 @@ import org.mockito.Captor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.util.StreamUtils;
 
 import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
 @WebMvcTest(value = PaymentController.class)
+@Import({PropertiesConfig.class, JacksonConfig.class, MapperConfig.class, AsyncConfig.class})
 public class PaymentControllerTest {
 
     private static final String URL_BASE = "";
@@ -48,6 +66,8 @@ public class PaymentControllerTest {
     private MockMvc mvc;
     @Autowired
     private ObjectMapper objectMapper;
+    @Autowired
+    private PaymentController paymentController;
 
     @MockBean
     private OptileService optileService;
@@ -56,6 +76,8 @@ public class PaymentControllerTest {
     @MockBean
     private TransactionLogService transactionLogService;
     @MockBean
+    private IdempotencyService idempotencyService;
+    @MockBean
     private ValidatorUtil validatorUtil;
     @Captor
     ArgumentCaptor<Transaction> optileServiceTransactionCaptor;
@@ -75,9 +97,13 @@ public class PaymentControllerTest {
 
         NetworkList networkList = objectMapper.readValue(output, NetworkList.class);
 
-        given(optileService.postListRequest(any(Transaction.class))).willReturn(networkList);
+        given(optileService.postListRequestAsync(any(Transaction.class))).willReturn(CompletableFuture.completedFuture(networkList));
 
-        mvc.perform(post(URL_BASE+"/session/create").contentType(MediaType.APPLICATION_JSON).content(input))
+        MvcResult result = mvc.perform(post(URL_BASE+"/session/create").contentType(MediaType.APPLICATION_JSON).content(input))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(result))
                 .andExpect(status().isCreated())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8))
                 .andExpect(content().json(output));
@@ -96,19 +122,28 @@ public class PaymentControllerTest {
         String input = StreamUtils.copyToString(this.getClass().getClassLoader().getResourceAsStream("expectedJson/optileListRequestInput.json"), Charset.defaultCharset());
         String output = StreamUtils.copyToString(this.getClass().getClassLoader().getResourceAsStream("expectedJson/optileListRequestOutput.json"), Charset.defaultCharset());
 
-        Transaction transaction = objectMapper.readValue(input, Transaction.class);
         NetworkList networkList = objectMapper.readValue(output, NetworkList.class);
 
+        Registration storedRegistration = new Registration();
+        storedRegistration.setId(OPTILE_CUSTOMER_ID);
+        storedRegistration.setPassword(OPTILE_PASSWORD);
+
         given(customerService.getCustomerRegistrationInfo(anyString())).willReturn(Optional.of(customerRegistrationInfo));
-        given(optileService.postListRequest(any(Transaction.class))).willReturn(networkList);
-        doCallRealMethod().when(customerService).populateRequestWithCustomerRegistrationInfo(customerRegistrationInfo, transaction);
+        given(customerService.toRegistration(customerRegistrationInfo)).willReturn(storedRegistration);
+        given(optileService.postListRequestAsync(any(Transaction.class))).willReturn(CompletableFuture.completedFuture(networkList));
+        // the controller maps its own Transaction from the request body
+        doCallRealMethod().when(customerService).populateRequestWithCustomerRegistrationInfo(eq(customerRegistrationInfo), any(Transaction.class));
 
-        mvc.perform(post(URL_BASE+"/session/create").contentType(MediaType.APPLICATION_JSON).content(input))
+        MvcResult result = mvc.perform(post(URL_BASE+"/session/create").contentType(MediaType.APPLICATION_JSON).content(input))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(result))
                 .andExpect(status().isCreated())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8))
                 .andExpect(content().json(output));
 
-        verify(optileService).postListRequest(optileServiceTransactionCaptor.capture());
+        verify(optileService).postListRequestAsync(optileServiceTransactionCaptor.capture());
         Registration registration = optileServiceTransactionCaptor.getValue().getCustomer().getRegistration();
 
         assertEquals(OPTILE_CUSTOMER_ID, registration.getId());
@@ -126,7 +161,7 @@ public class PaymentControllerTest {
 
         NetworkList networkList = objectMapper.readValue(output, NetworkList.class);
 
-        given(optileService.postListRequest(any(Transaction.class))).willReturn(networkList);
+        given(optileService.postListRequestAsync(any(Transaction.class))).willReturn(CompletableFuture.completedFuture(networkList));
 
         mvc.perform(post(URL_BASE+"/session/create").contentType(MediaType.APPLICATION_JSON).content(input))
                 .andExpect(status().is(422))
@@ -134,4 +169,43 @@ public class PaymentControllerTest {
                 .andExpect(content().json(output));
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void streamingRequestRejectsWhatDtoMappingRejectsTest() throws Exception {
+
+        // the real rewriter, its token pass is what validates the streamed request
+        ListRequestRewriter rewriter = new ListRequestRewriter("PURE_NATIVE", false, "https://127.0.0.1:8080/notification", () -> "t1");
+        given(transactionLogService.rewriteListRequestWithOptileStaticDataAndGenerateTransactionId(any(byte[].class), any()))
+                .willAnswer(invocation -> rewriter.rewrite(invocation.getArgument(0), invocation.getArgument(1)));
+
+        String valid = StreamUtils.copyToString(this.getClass().getClassLoader().getResourceAsStream("expectedJson/optileListRequestInput.json"), Charset.defaultCharset());
+
+        List<String> invalidInputs = Arrays.asList(
+                StreamUtils.copyToString(this.getClass().getClassLoader().getResourceAsStream("expectedJson/missingMandatoryFieldsInput.json"), Charset.defaultCharset()),
+                // nested Default group constraint, products[].name is @NotNull
+                valid.replace("\"presetFirst\": true,", "\"presetFirst\": true, \"products\": [{\"amount\": 1.0}],"),
+                // disallowed field
+                valid.replace("\"country\": \"GB\",", "\"country\": \"GB\", \"transactionId\": \"t1\","),
+                // wrong type
+                valid.replace("\"amount\": 19.99", "\"amount\": \"nineteen\""));
+
+        try {
+            for(String input : invalidInputs) {
+
+                ReflectionTestUtils.setField(paymentController, "listStreamingRequest", false);
+                MvcResult mapped = mvc.perform(post(URL_BASE+"/session/create").contentType(MediaType.APPLICATION_JSON).content(input)).andReturn();
+
+                ReflectionTestUtils.setField(paymentController, "listStreamingRequest", true);
+                MvcResult streamed = mvc.perform(post(URL_BASE+"/session/create").contentType(MediaType.APPLICATION_JSON).content(input)).andReturn();
+
+                assertTrue(input, mapped.getResponse().getStatus() >= 400);
+                assertEquals(input, mapped.getResponse().getStatus(), streamed.getResponse().getStatus());
+                assertEquals(input, mapped.getResponse().getContentAsString(), streamed.getResponse().getContentAsString());
+            }
+        } finally {
+            ReflectionTestUtils.setField(paymentController, "listStreamingRequest", false);
+        }
+
+        verify(optileService, never()).postListRequestAsync(any(byte[].class));
+    }
+}
@@ -0,0 +1,31 @@
+package com.kingfisher.payment.api.database.retention;
+
+import org.junit.Test;
+
+import java.time.YearMonth;
+
+import static org.junit.Assert.assertEquals;
+
+public class MonthlyPartitionsTest {
+
+    @Test
+    public void monthBoundsTest() {
+
+        YearMonth january = YearMonth.of(2018, 1);
+
+        assertEquals("transaction_log_info_p201801", MonthlyPartitions.name(january));
+        assertEquals(1514764800000L, MonthlyPartitions.startOf(january));
+        assertEquals(1517443200000L, MonthlyPartitions.startOf(january.plusMonths(1)));
+        assertEquals(january, MonthlyPartitions.monthOf(1514764800000L));
+        assertEquals(january, MonthlyPartitions.monthOf(1517443199999L));
+    }
+
+    @Test
+    public void upperBoundTest() {
+
+        assertEquals(1517443200000L, MonthlyPartitions.upperBound("FOR VALUES FROM ('1514764800000') TO ('1517443200000')"));
+        assertEquals(1517443200000L, MonthlyPartitions.upperBound("FOR VALUES FROM (MINVALUE) TO ('1517443200000')"));
+        assertEquals(Long.MAX_VALUE, MonthlyPartitions.upperBound("FOR VALUES FROM ('1514764800000') TO (MAXVALUE)"));
+        assertEquals(-1, MonthlyPartitions.upperBound("DEFAULT"));
+    }
+}
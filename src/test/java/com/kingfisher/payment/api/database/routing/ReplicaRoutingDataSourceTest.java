@@ -0,0 +1,74 @@
+package com.kingfisher.payment.api.database.routing;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local in-memory databases, each knowing its own name, stand in for the primary and two replicas.
+ */
+public class ReplicaRoutingDataSourceTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readWrite;
+    private TransactionTemplate readOnly;
+
+    @Before
+    public void setUp() {
+        DataSource dataSource = new LazyConnectionDataSourceProxy(
+                new ReplicaRoutingDataSource(database("primary"), Arrays.asList(database("replica1"), database("replica2"))));
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    @Test
+    public void readOnlyTransactionsGoToReplicasTest() {
+
+        Set<String> databases = new HashSet<>();
+        for(int i = 0; i < 4; i++) {
+            databases.add(readOnly.execute(status -> databaseName()));
+        }
+
+        assertEquals(new HashSet<>(Arrays.asList("replica1", "replica2")), databases);
+    }
+
+    @Test
+    public void writesGoToPrimaryTest() {
+        assertEquals("primary", readWrite.execute(status -> databaseName()));
+        assertEquals("primary", databaseName());
+    }
+
+    @Test
+    public void pinnedReadsGoToPrimaryTest() {
+        assertEquals("primary", DataSourceRouting.onPrimary(() -> readOnly.execute(status -> databaseName())));
+        assertEquals("replica", readOnly.execute(status -> databaseName()).substring(0, 7));
+    }
+
+    private String databaseName() {
+        return jdbcTemplate.queryForObject("SELECT name FROM database_name", String.class);
+    }
+
+    private static DataSource database(String name) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS database_name (name VARCHAR(16))");
+        jdbcTemplate.update("DELETE FROM database_name");
+        jdbcTemplate.update("INSERT INTO database_name (name) VALUES (?)", name);
+        return dataSource;
+    }
+}
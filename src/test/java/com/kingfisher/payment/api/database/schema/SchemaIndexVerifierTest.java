@@ -0,0 +1,43 @@
+package com.kingfisher.payment.api.database.schema;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+public class SchemaIndexVerifierTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final SchemaIndexVerifier verifier = new SchemaIndexVerifier();
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(verifier, "jdbcTemplate", jdbcTemplate);
+    }
+
+    @Test
+    public void allIndexesPresentTest() {
+        List<String> indexes = new ArrayList<>(SchemaIndexVerifier.EXPECTED_INDEXES);
+        indexes.add("transaction_log_info_pkey");
+        given(jdbcTemplate.queryForList(anyString(), eq(String.class))).willReturn(indexes);
+
+        verifier.afterSingletonsInstantiated();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void missingIndexFailsStartupTest() {
+        List<String> indexes = new ArrayList<>(SchemaIndexVerifier.EXPECTED_INDEXES);
+        indexes.remove("ix_transaction_log_info_order_id_timestamp");
+        given(jdbcTemplate.queryForList(anyString(), eq(String.class))).willReturn(indexes);
+
+        verifier.afterSingletonsInstantiated();
+    }
+}
@@ -0,0 +1,59 @@
+package com.kingfisher.payment.api.database.service;
+
+import com.kingfisher.payment.api.config.PropertiesConfig;
+import com.kingfisher.payment.api.database.model.CustomerRegistrationInfo;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {CustomerRegistrationCache.class, PropertiesConfig.class})
+public class CustomerRegistrationCacheTest {
+
+    @Autowired
+    private CustomerRegistrationCache cache;
+
+    @Test
+    public void loadsOnceThenServesFromCacheTest() {
+
+        AtomicInteger loads = new AtomicInteger();
+        CustomerRegistrationInfo registrationInfo = new CustomerRegistrationInfo("profile1");
+
+        cache.get("profile1", profileId -> { loads.incrementAndGet(); return Optional.of(registrationInfo); });
+        Optional<CustomerRegistrationInfo> cached = cache.get("profile1", profileId -> { loads.incrementAndGet(); return Optional.empty(); });
+
+        assertEquals(1, loads.get());
+        assertEquals(registrationInfo, cached.get());
+    }
+
+    @Test
+    public void missingRegistrationIsNotCachedTest() {
+
+        AtomicInteger loads = new AtomicInteger();
+
+        assertFalse(cache.get("profile2", profileId -> { loads.incrementAndGet(); return Optional.empty(); }).isPresent());
+        assertFalse(cache.get("profile2", profileId -> { loads.incrementAndGet(); return Optional.empty(); }).isPresent());
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void putReplacesCachedRegistrationTest() {
+
+        CustomerRegistrationInfo registered = new CustomerRegistrationInfo("profile3");
+        registered.setOptileCustomerId("optileCustomerId");
+
+        cache.get("profile3", profileId -> Optional.of(new CustomerRegistrationInfo(profileId)));
+        cache.put(registered);
+
+        assertEquals("optileCustomerId", cache.get("profile3", profileId -> Optional.empty()).get().getOptileCustomerId());
+    }
+}
@@ -0,0 +1,205 @@
+package com.kingfisher.payment.api.database.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kingfisher.payment.api.config.AsyncConfig;
+import com.kingfisher.payment.api.config.JacksonConfig;
+import com.kingfisher.payment.api.config.PropertiesConfig;
+import com.kingfisher.payment.api.database.model.IdempotentRequestInfo;
+import com.kingfisher.payment.api.database.repository.IdempotentRequestRepository;
+import com.kingfisher.payment.api.error.IdempotencyConflictException;
+import com.kingfisher.payment.api.error.InputDTOValidationException;
+import com.kingfisher.payment.api.optile.model.Identification;
+import com.kingfisher.payment.api.optile.model.Payout;
+import com.kingfisher.payment.api.optile.model.Transaction;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {IdempotencyService.class, PropertiesConfig.class, JacksonConfig.class, AsyncConfig.class})
+public class IdempotencyServiceTest {
+
+    private static final String LONG_ID = "longId";
+    private static final String FINGERPRINT = "fingerprint";
+
+    @MockBean
+    private IdempotentRequestRepository repository;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    public void concurrentRetriesShareOneCallTest() {
+        given(repository.claim(anyString(), anyString(), anyString(), anyLong())).willReturn(1);
+
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<Payout> optileCall = new CompletableFuture<>();
+
+        CompletableFuture<Payout> first = idempotencyService.execute(IdempotencyService.CHARGE, "key-1", FINGERPRINT, () -> {
+            calls.incrementAndGet();
+            return optileCall;
+        });
+        CompletableFuture<Payout> retry = idempotencyService.execute(IdempotencyService.CHARGE, "key-1", FINGERPRINT, () -> {
+            calls.incrementAndGet();
+            return optileCall;
+        });
+
+        assertFalse(retry.isDone());
+
+        optileCall.complete(payout());
+
+        assertEquals(LONG_ID, first.join().getIdentification().getLongId());
+        assertEquals(LONG_ID, retry.join().getIdentification().getLongId());
+        assertEquals(1, calls.get());
+        verify(repository, timeout(1000)).complete(eq("charge:key-1"), anyString(), anyLong());
+    }
+
+    @Test
+    public void completedRequestIsReplayedTest() {
+        given(repository.claim(anyString(), anyString(), anyString(), anyLong())).willReturn(1);
+
+        AtomicInteger calls = new AtomicInteger();
+
+        idempotencyService.execute(IdempotencyService.REFUND, "key-2", FINGERPRINT, () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(payout());
+        }).join();
+
+        Payout replayed = idempotencyService.execute(IdempotencyService.REFUND, "key-2", FINGERPRINT, () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(new Payout());
+        }).join();
+
+        assertEquals(LONG_ID, replayed.getIdentification().getLongId());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void storedResponseIsReplayedFromDatabaseTest() throws Exception {
+        String stored = objectMapper.writeValueAsString(payout());
+        given(repository.findById("close:key-3")).willReturn(Optional.of(stored(IdempotentRequestInfo.COMPLETED, FINGERPRINT, stored)));
+
+        AtomicInteger calls = new AtomicInteger();
+
+        Payout replayed = idempotencyService.execute(IdempotencyService.CLOSE, "key-3", FINGERPRINT, () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(new Payout());
+        }).join();
+
+        assertEquals(LONG_ID, replayed.getIdentification().getLongId());
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    public void failedRequestIsNotStoredTest() {
+        given(repository.claim(anyString(), anyString(), anyString(), anyLong())).willReturn(1);
+
+        CompletableFuture<Payout> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("Optile down"));
+
+        assertEquals(true, idempotencyService.execute(IdempotencyService.CHARGE, "key-4", FINGERPRINT, () -> failed)
+                .handle((payout, e) -> e != null).join());
+
+        Payout retried = idempotencyService.execute(IdempotencyService.CHARGE, "key-4", FINGERPRINT,
+                () -> CompletableFuture.completedFuture(payout())).join();
+
+        assertEquals(LONG_ID, retried.getIdentification().getLongId());
+        verify(repository).release("charge:key-4");
+    }
+
+    @Test
+    public void rejectedCompletionFailsRequestTest() {
+        given(repository.claim(anyString(), anyString(), anyString(), anyLong())).willReturn(1);
+
+        Executor executor = (Executor) ReflectionTestUtils.getField(idempotencyService, "paymentTaskExecutor");
+        ReflectionTestUtils.setField(idempotencyService, "paymentTaskExecutor", (Executor) command -> {
+            throw new RejectedExecutionException("saturated");
+        });
+
+        try {
+            Throwable error = idempotencyService.execute(IdempotencyService.CHARGE, "key-7", FINGERPRINT,
+                    () -> CompletableFuture.completedFuture(payout())).handle((payout, e) -> e).join();
+
+            assertTrue(error instanceof RejectedExecutionException);
+            verify(repository).release("charge:key-7");
+        } finally {
+            ReflectionTestUtils.setField(idempotencyService, "paymentTaskExecutor", executor);
+        }
+    }
+
+    @Test
+    public void requestClaimedOnAnotherInstanceIsConflictTest() {
+        given(repository.findById("charge:key-5")).willReturn(Optional.of(stored(IdempotentRequestInfo.PENDING, FINGERPRINT, null)));
+
+        AtomicInteger calls = new AtomicInteger();
+
+        Throwable error = idempotencyService.execute(IdempotencyService.CHARGE, "key-5", FINGERPRINT, () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(payout());
+        }).handle((payout, e) -> e).join();
+
+        assertTrue(error instanceof IdempotencyConflictException);
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    public void keyReusedForAnotherRequestIsRejectedTest() throws Exception {
+        String stored = objectMapper.writeValueAsString(payout());
+        given(repository.findById("close:key-6")).willReturn(Optional.of(stored(IdempotentRequestInfo.COMPLETED, FINGERPRINT, stored)));
+
+        Throwable error = idempotencyService.execute(IdempotencyService.CLOSE, "key-6",
+                idempotencyService.fingerprint(IdempotencyService.CLOSE, new Transaction(), "profile", "another-order"),
+                () -> CompletableFuture.completedFuture(new Payout())).handle((payout, e) -> e).join();
+
+        assertTrue(error instanceof InputDTOValidationException);
+    }
+
+    @Test
+    public void fingerprintCoversPathIdsAndBodyTest() {
+        String fingerprint = idempotencyService.fingerprint(IdempotencyService.CHARGE, "{}", "order-1");
+
+        assertEquals(fingerprint, idempotencyService.fingerprint(IdempotencyService.CHARGE, "{}", "order-1"));
+        assertNotEquals(fingerprint, idempotencyService.fingerprint(IdempotencyService.CHARGE, "{}", "order-2"));
+        assertNotEquals(fingerprint, idempotencyService.fingerprint(IdempotencyService.CHARGE, "{\"a\":1}", "order-1"));
+        assertNotEquals(fingerprint, idempotencyService.fingerprint(IdempotencyService.REFUND, "{}", "order-1"));
+    }
+
+    private IdempotentRequestInfo stored(String status, String fingerprint, String response) {
+        IdempotentRequestInfo info = new IdempotentRequestInfo("key", IdempotencyService.CHARGE, System.currentTimeMillis(), response);
+        info.setStatus(status);
+        info.setFingerprint(fingerprint);
+        return info;
+    }
+
+    private Payout payout() {
+        Identification identification = new Identification();
+        identification.setLongId(LONG_ID);
+
+        Payout payout = new Payout();
+        payout.setIdentification(identification);
+        return payout;
+    }
+}
@@ -0,0 +1,239 @@
+package com.kingfisher.payment.api.database.service;
+
+import com.kingfisher.payment.api.config.MapperConfig;
+import com.kingfisher.payment.api.config.PropertiesConfig;
+import com.kingfisher.payment.api.database.model.CustomerRegistrationInfo;
+import com.kingfisher.payment.api.database.model.LatestChargeView;
+import com.kingfisher.payment.api.database.model.TransactionLogInfo;
+import com.kingfisher.payment.api.database.repository.CustomerRepository;
+import com.kingfisher.payment.api.database.repository.TransactionLogRepository;
+import com.kingfisher.payment.api.database.routing.RecentWrites;
+import com.kingfisher.payment.api.id.TransactionIdGenerator;
+import com.kingfisher.payment.api.optile.model.Identification;
+import com.kingfisher.payment.api.optile.model.Parameter;
+import com.kingfisher.payment.api.optile.model.Payout;
+import com.kingfisher.payment.api.optile.model.Redirect;
+import com.kingfisher.payment.api.optile.model.ReturnCode;
+import com.kingfisher.payment.api.optile.stream.ListResponseSummary;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.AdditionalAnswers;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Primary;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Exact number of SQL statements the persistence of each endpoint costs. The services run their own transactions,
+ * as they do behind the controller, so the counts include every flush.
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.globally_quoted_identifiers=true",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.kingfisher.payment.api.database.service.SqlStatementCounter"})
+@Import({TransactionLogService.class, CustomerService.class, CustomerRegistrationCache.class, LatestOrderTransactionCache.class,
+        TransactionIdGenerator.class, RecentWrites.class, PropertiesConfig.class, MapperConfig.class})
+public class PersistenceStatementCountTest {
+
+    private static int profile;
+
+    @Autowired
+    private TransactionLogService transactionLogService;
+    @Autowired
+    private CustomerService customerService;
+    @Autowired
+    private TransactionIdGenerator transactionIdGenerator;
+    @Autowired
+    private TransactionLogRepository transactionLogRepository;
+    @Autowired
+    private LatestOrderTransactionCache latestOrderTransactionCache;
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    private String profileId;
+    private String orderId;
+
+    @TestConfiguration
+    static class CustomerRepositoryConfig {
+
+        // Mockito cannot spy the JDK proxy of a repository, a mock delegating to it stands in for the spy
+        @Bean
+        @Primary
+        public CustomerRepository delegatingCustomerRepository(@Qualifier("customerRepository") CustomerRepository customerRepository) {
+            return mock(CustomerRepository.class, AdditionalAnswers.delegatesTo(customerRepository));
+        }
+    }
+
+    @Before
+    public void setUp() {
+        profile++;
+        profileId = "profile" + profile;
+        orderId = "order" + profile;
+
+        // the upsert of a first session is postgres only SQL (INSERT ... ON CONFLICT ... RETURNING) which H2 cannot
+        // run, the single insert it is stands in for it
+        doAnswer(invocation -> customerRepository.save(new CustomerRegistrationInfo(invocation.<String>getArgument(0))))
+                .when(customerRepository).upsertByProfileId(anyString());
+    }
+
+    @Test
+    public void firstSessionChargeAndCloseTest() {
+
+        SqlStatementCounter.reset();
+        createSession(Optional.empty());
+
+        assertStatements("insert", "insert");
+
+        SqlStatementCounter.reset();
+        TransactionLogInfo transactionLogInfo = transactionLogService.getLatestOrderTransaction(orderId).get();
+        customerService.saveChargeResult(chargePayout(transactionLogInfo), transactionLogInfo);
+
+        // the session and the charge are served from LatestOrderTransactionCache
+        assertStatements("update", "update");
+
+        SqlStatementCounter.reset();
+        LatestChargeView latestCharge = transactionLogService.getLatestOrderCharge(orderId).get();
+
+        assertStatements();
+        assertEquals("chargeLongId", latestCharge.getChargeId());
+        assertEquals(profileId, latestCharge.getProfileId());
+        assertEquals("optileCustomerId", customerRepository.findFirstByProfileId(profileId).get().getOptileCustomerId());
+    }
+
+    @Test
+    public void sessionOfRegisteredCustomerTest() {
+
+        Optional<CustomerRegistrationInfo> registrationInfo = Optional.of(registerCustomer());
+
+        SqlStatementCounter.reset();
+        createSession(registrationInfo);
+
+        assertStatements("insert");
+    }
+
+    @Test
+    public void chargeTest() {
+
+        createSession(Optional.of(registerCustomer()));
+        TransactionLogInfo transactionLogInfo = transactionLogService.getLatestOrderTransaction(orderId).get();
+
+        SqlStatementCounter.reset();
+        customerService.saveChargeResult(chargePayout(transactionLogInfo), transactionLogInfo);
+
+        assertStatements("update", "update");
+        assertEquals("chargeLongId", transactionLogRepository.findById(transactionLogInfo.getId()).get().getChargeId());
+        assertEquals("optileCustomerId", customerRepository.findFirstByProfileId(profileId).get().getOptileCustomerId());
+        // the log the charge path read is changed on a copy only
+        assertNull(transactionLogInfo.getCustomerRegistrationInfo().getOptileCustomerId());
+        assertNull(transactionLogInfo.getChargeId());
+    }
+
+    @Test
+    public void chargeOfAnotherInstanceIsSeenByCloseTest() {
+
+        createSession(Optional.of(registerCustomer()));
+        TransactionLogInfo cached = transactionLogService.getLatestOrderTransaction(orderId).get();
+        // the charge another instance made, this instance's cache still holds the session without chargeId
+        transactionLogRepository.updateChargeId(cached.getLogId(), cached.getTimestamp(), "otherChargeId", cached.getVersion());
+
+        SqlStatementCounter.reset();
+        LatestChargeView latestCharge = transactionLogService.getLatestOrderCharge(orderId).get();
+
+        assertStatements("select");
+        assertEquals("otherChargeId", latestCharge.getChargeId());
+    }
+
+    @Test
+    public void closeLookupOnCacheMissTest() {
+
+        createSession(Optional.of(registerCustomer()));
+        latestOrderTransactionCache.invalidate(orderId);
+
+        SqlStatementCounter.reset();
+        LatestChargeView latestCharge = transactionLogService.getLatestOrderCharge(orderId).get();
+
+        assertStatements("select");
+        assertEquals(profileId, latestCharge.getProfileId());
+    }
+
+    @Test
+    public void orderOutsideLookupWindowTest() {
+
+        createSession(Optional.of(registerCustomer()), System.currentTimeMillis() - TimeUnit.DAYS.toMillis(40));
+
+        SqlStatementCounter.reset();
+        LatestChargeView latestCharge = transactionLogService.getLatestOrderCharge(orderId).get();
+
+        // the lookup window misses it, the second query over all partitions finds it
+        assertStatements("select", "select");
+        assertEquals(profileId, latestCharge.getProfileId());
+        assertFalse(transactionLogService.getLatestOrderCharge("unknownOrder").isPresent());
+    }
+
+    @Test
+    public void chargeLookupOnCacheMissTest() {
+
+        createSession(Optional.of(registerCustomer()));
+        latestOrderTransactionCache.invalidate(orderId);
+
+        SqlStatementCounter.reset();
+        TransactionLogInfo transactionLogInfo = transactionLogService.getLatestOrderTransaction(orderId).get();
+
+        assertStatements("select");
+        assertEquals(profileId, transactionLogInfo.getCustomerRegistrationInfo().getProfileId());
+        assertFalse(transactionLogInfo.isNew());
+    }
+
+    private CustomerRegistrationInfo registerCustomer() {
+        return customerRepository.save(new CustomerRegistrationInfo(profileId));
+    }
+
+    private void createSession(Optional<CustomerRegistrationInfo> registrationInfo) {
+        createSession(registrationInfo, System.currentTimeMillis());
+    }
+
+    private void createSession(Optional<CustomerRegistrationInfo> registrationInfo, long timestamp) {
+        String transactionId = TransactionIdGenerator.encode(transactionIdGenerator.nextId());
+        ListResponseSummary response = new ListResponseSummary(transactionId, "listId" + transactionId, timestamp);
+        transactionLogService.initAndSaveNewTransactionLogInfo(profileId, response, orderId, registrationInfo);
+    }
+
+    private static Payout chargePayout(TransactionLogInfo transactionLogInfo) {
+        return new Payout()
+                .returnCode(new ReturnCode().name("OK"))
+                .identification(new Identification().longId("chargeLongId").transactionId(transactionLogInfo.getTransactionId()))
+                .redirect(new Redirect().addParametersItem(new Parameter().name("customerRegistrationId").value("optileCustomerId")));
+    }
+
+    private static void assertStatements(String... expected) {
+        List<String> statements = SqlStatementCounter.statements();
+        assertEquals(statements.toString(), expected.length, statements.size());
+        for(int i = 0; i < expected.length; i++) {
+            assertTrue(statements.toString(), statements.get(i).toLowerCase().startsWith(expected[i]));
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.kingfisher.payment.api.database.service;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Records every statement hibernate prepares; a JDBC batch is prepared once, so this counts round trips.
+ */
+public class SqlStatementCounter implements StatementInspector {
+
+    private static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+    @Override
+    public String inspect(String sql) {
+        STATEMENTS.add(sql);
+        return sql;
+    }
+
+    static void reset() {
+        STATEMENTS.clear();
+    }
+
+    static List<String> statements() {
+        return new ArrayList<>(STATEMENTS);
+    }
+}
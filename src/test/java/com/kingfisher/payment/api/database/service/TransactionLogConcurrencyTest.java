@@ -0,0 +1,115 @@
+package com.kingfisher.payment.api.database.service;
+
+import com.kingfisher.payment.api.config.MapperConfig;
+import com.kingfisher.payment.api.config.PropertiesConfig;
+import com.kingfisher.payment.api.database.model.CustomerRegistrationInfo;
+import com.kingfisher.payment.api.database.model.TransactionLogInfo;
+import com.kingfisher.payment.api.database.repository.CustomerRepository;
+import com.kingfisher.payment.api.database.repository.TransactionLogRepository;
+import com.kingfisher.payment.api.database.routing.RecentWrites;
+import com.kingfisher.payment.api.id.TransactionIdGenerator;
+import com.kingfisher.payment.api.optile.stream.ListResponseSummary;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Many threads updating the log of one order: chargeId is used as a counter, so a lost update shows up as a count
+ * lower than the number of updates that reported success.
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.globally_quoted_identifiers=true"})
+@Import({TransactionLogService.class, CustomerRegistrationCache.class, LatestOrderTransactionCache.class,
+        TransactionIdGenerator.class, RecentWrites.class, PropertiesConfig.class, MapperConfig.class})
+public class TransactionLogConcurrencyTest {
+
+    private static final String ORDER_ID = "o2314i91";
+    private static final int THREADS = 8;
+    private static final int UPDATES_PER_THREAD = 50;
+
+    @Autowired
+    private TransactionLogService transactionLogService;
+    @Autowired
+    private TransactionIdGenerator transactionIdGenerator;
+    @Autowired
+    private TransactionLogRepository transactionLogRepository;
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Test
+    public void concurrentUpdatesOfOneOrderAreNotLostTest() throws Exception {
+
+        CustomerRegistrationInfo registrationInfo = customerRepository.save(new CustomerRegistrationInfo("1011021666"));
+        String transactionId = TransactionIdGenerator.encode(transactionIdGenerator.nextId());
+        transactionLogService.initAndSaveNewTransactionLogInfo(registrationInfo.getProfileId(),
+                new ListResponseSummary(transactionId, "listId", System.currentTimeMillis()), ORDER_ID, Optional.of(registrationInfo));
+
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger gaveUp = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for(int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for(int j = 0; j < UPDATES_PER_THREAD; j++) {
+                        // as the controller does: start from the latest log of the order, whichever version that is
+                        TransactionLogInfo latest = transactionLogService.getLatestOrderTransaction(ORDER_ID).get();
+                        try {
+                            transactionLogService.updateTransaction(latest, logInfo -> logInfo.setChargeId(increment(logInfo.getChargeId())));
+                            succeeded.incrementAndGet();
+                        } catch (OptimisticLockingFailureException e) {
+                            gaveUp.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+
+            for(Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        TransactionLogInfo stored = transactionLogRepository.findLatestByOrderId(ORDER_ID, 0, TransactionLogService.LATEST).get(0);
+
+        assertEquals(THREADS * UPDATES_PER_THREAD, succeeded.get() + gaveUp.get());
+        assertTrue(succeeded.get() > 0);
+        assertEquals(String.valueOf(succeeded.get()), stored.getChargeId());
+        assertEquals(succeeded.get(), stored.getVersion());
+        assertEquals(stored.getVersion(), transactionLogService.getLatestOrderTransaction(ORDER_ID).get().getVersion());
+    }
+
+    private static String increment(String counter) {
+        return String.valueOf(counter == null ? 1 : Long.parseLong(counter) + 1);
+    }
+}
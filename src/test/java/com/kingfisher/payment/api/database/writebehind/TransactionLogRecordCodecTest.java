@@ -0,0 +1,38 @@
+package com.kingfisher.payment.api.database.writebehind;
+
+import com.kingfisher.payment.api.database.model.CustomerRegistrationInfo;
+import com.kingfisher.payment.api.database.model.TransactionLogInfo;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TransactionLogRecordCodecTest {
+
+    @Test
+    public void encodeDecodeTest() {
+
+        CustomerRegistrationInfo registrationInfo = new CustomerRegistrationInfo("1011021666");
+        registrationInfo.setOptileCustomerId("optileCustomerId");
+
+        TransactionLogInfo transactionLogInfo = new TransactionLogInfo();
+        transactionLogInfo.setId(1514764800000L << 22);
+        transactionLogInfo.setTransactionId("1514764800000-o2314i91-1011021666");
+        transactionLogInfo.setTimestamp(1514764800000L);
+        transactionLogInfo.setListId("listId");
+        transactionLogInfo.setOrderId("o2314i91");
+        transactionLogInfo.setCustomerRegistrationInfo(registrationInfo);
+
+        TransactionLogInfo decoded = TransactionLogRecordCodec.decode(TransactionLogRecordCodec.encode(transactionLogInfo));
+
+        assertEquals(1514764800000L << 22, decoded.getLogId());
+        assertEquals("1514764800000-o2314i91-1011021666", decoded.getTransactionId());
+        assertEquals(1514764800000L, decoded.getTimestamp());
+        assertEquals("listId", decoded.getListId());
+        assertEquals("o2314i91", decoded.getOrderId());
+        assertNull(decoded.getChargeId());
+        assertEquals("1011021666", decoded.getCustomerRegistrationInfo().getProfileId());
+        assertEquals("optileCustomerId", decoded.getCustomerRegistrationInfo().getOptileCustomerId());
+        assertNull(decoded.getCustomerRegistrationInfo().getOptileCustomerPassword());
+    }
+}
@@ -0,0 +1,110 @@
+package com.kingfisher.payment.api.id;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SnowflakeIdGeneratorTest {
+
+    private static final long NOW = 1539820800000L;
+
+    @Test
+    public void concurrentIdsAreUniqueAndIncreasingPerThreadTest() throws Exception {
+
+        int threads = 8;
+        int idsPerThread = 200_000;
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(7);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for(int i = 0; i < threads; i++) {
+                futures.add(executor.submit((Callable<long[]>) () -> {
+                    start.await();
+                    long[] ids = new long[idsPerThread];
+                    for(int j = 0; j < idsPerThread; j++) {
+                        ids[j] = generator.nextId();
+                    }
+                    return ids;
+                }));
+            }
+            start.countDown();
+
+            Set<Long> unique = new HashSet<>(threads * idsPerThread * 2);
+            for(Future<long[]> future : futures) {
+                long[] ids = future.get();
+                for(int j = 0; j < ids.length; j++) {
+                    assertTrue(j == 0 || ids[j] > ids[j - 1]);
+                    assertEquals(7, SnowflakeIdGenerator.nodeIdOf(ids[j]));
+                    unique.add(ids[j]);
+                }
+            }
+            assertEquals(threads * idsPerThread, unique.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void sequenceOverflowBorrowsNextMillisecondTest() {
+
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, () -> NOW);
+
+        long previous = 0;
+        for(int i = 0; i < 4096 * 3; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous);
+            previous = id;
+        }
+        assertEquals(NOW + 2, SnowflakeIdGenerator.timestampOf(previous));
+    }
+
+    @Test
+    public void clockMovingBackwardsKeepsIdsIncreasingTest() {
+
+        AtomicLong clock = new AtomicLong(NOW);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, clock::get);
+
+        long beforeSkew = generator.nextId();
+        clock.set(NOW - 5000);
+        long afterSkew = generator.nextId();
+        clock.set(NOW + 1);
+        long caughtUp = generator.nextId();
+
+        assertTrue(afterSkew > beforeSkew);
+        assertEquals(NOW, SnowflakeIdGenerator.timestampOf(afterSkew));
+        assertTrue(caughtUp > afterSkew);
+        assertEquals(NOW + 1, SnowflakeIdGenerator.timestampOf(caughtUp));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nodeIdOutOfRangeTest() {
+        new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE_ID + 1);
+    }
+
+    @Test
+    public void transactionIdRoundTripTest() {
+
+        long id = new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE_ID, () -> NOW).nextId();
+        String transactionId = TransactionIdGenerator.encode(id);
+
+        assertTrue(transactionId.length() <= 13);
+        assertEquals(id, TransactionIdGenerator.decode(transactionId));
+        assertEquals(-1, TransactionIdGenerator.decode("1514764800000-o2314i91-1011021666"));
+        assertEquals(-1, TransactionIdGenerator.decode(""));
+        assertEquals(-1, TransactionIdGenerator.decode(null));
+    }
+}
@@ -0,0 +1,184 @@
+package com.kingfisher.payment.api.journal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class MappedJournalTest {
+
+    private static final int CAPACITY = 4096;
+
+    private Path path;
+
+    @Before
+    public void setUp() throws IOException {
+        path = Files.createTempFile("journal", ".journal");
+        Files.delete(path);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void pendingRecordsAreReplayedAfterReopenTest() throws Exception {
+
+        try(MappedJournal journal = new MappedJournal(path, CAPACITY)) {
+            journal.append(bytes("first"), 1, TimeUnit.SECONDS);
+            long second = journal.append(bytes("second"), 1, TimeUnit.SECONDS);
+            journal.append(bytes("third"), 1, TimeUnit.SECONDS);
+            journal.checkpoint(second - 1);
+        }
+
+        try(MappedJournal journal = new MappedJournal(path, CAPACITY)) {
+            List<JournalRecord> pending = journal.readPending(10);
+
+            assertEquals(2, pending.size());
+            assertEquals("second", string(pending.get(0)));
+            assertEquals("third", string(pending.get(1)));
+            assertEquals(3, journal.getLastSequence());
+        }
+    }
+
+    @Test
+    public void checkpointOfAllRecordsRewindsJournalTest() throws Exception {
+
+        try(MappedJournal journal = new MappedJournal(path, CAPACITY)) {
+            for(int i = 0; i < 1000; i++) {
+                long sequence = journal.append(bytes("record-" + i), 1, TimeUnit.SECONDS);
+                journal.checkpoint(sequence);
+            }
+            journal.append(bytes("last"), 1, TimeUnit.SECONDS);
+        }
+
+        try(MappedJournal journal = new MappedJournal(path, CAPACITY)) {
+            List<JournalRecord> pending = journal.readPending(10);
+
+            assertEquals(1, pending.size());
+            assertEquals("last", string(pending.get(0)));
+            assertEquals(1001, pending.get(0).getSequence());
+        }
+    }
+
+    @Test
+    public void tornRecordIsDroppedOnRecoveryTest() throws Exception {
+
+        try(MappedJournal journal = new MappedJournal(path, CAPACITY)) {
+            journal.append(bytes("complete"), 1, TimeUnit.SECONDS);
+            journal.append(bytes("torn"), 1, TimeUnit.SECONDS);
+        }
+
+        // corrupt the payload of the second record
+        try(RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(16 + 16 + "complete".length() + 16);
+            file.write('X');
+        }
+
+        try(MappedJournal journal = new MappedJournal(path, CAPACITY)) {
+            List<JournalRecord> pending = journal.readPending(10);
+
+            assertEquals(1, pending.size());
+            assertEquals("complete", string(pending.get(0)));
+
+            journal.append(bytes("next"), 1, TimeUnit.SECONDS);
+            assertEquals("next", string(journal.readPending(10).get(1)));
+        }
+    }
+
+    @Test
+    public void appendWrapsIntoCheckpointedSpaceTest() throws Exception {
+
+        try(MappedJournal journal = new MappedJournal(path, CAPACITY)) {
+            for(int i = 1; i <= 3; i++) {
+                journal.append(record(i), 1, TimeUnit.SECONDS);
+            }
+            // the consumer stays a record behind, the journal is never fully drained
+            journal.checkpoint(2);
+            journal.append(record(4), 10, TimeUnit.MILLISECONDS);
+            journal.append(record(5), 10, TimeUnit.MILLISECONDS);
+
+            assertEquals(3, journal.getPendingCount());
+        }
+
+        try(MappedJournal journal = new MappedJournal(path, CAPACITY)) {
+            List<JournalRecord> pending = journal.readPending(10);
+
+            assertEquals(3, pending.size());
+            for(int i = 0; i < 3; i++) {
+                assertEquals(3 + i, pending.get(i).getSequence());
+                assertEquals(3 + i, pending.get(i).getPayload()[0]);
+            }
+
+            journal.checkpoint(4);
+            journal.append(record(6), 10, TimeUnit.MILLISECONDS);
+            assertEquals(6, journal.readPending(10).get(1).getSequence());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void foreignFileIsRejectedTest() throws Exception {
+
+        try(RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(CAPACITY);
+            file.writeInt(0x7f454c46);
+        }
+
+        new MappedJournal(path, CAPACITY).close();
+    }
+
+    @Test
+    public void deadLettersAreReadBackTest() throws Exception {
+
+        try(DeadLetterFile deadLetters = new DeadLetterFile(path)) {
+            deadLetters.append(new JournalRecord(3, bytes("first")));
+            deadLetters.append(new JournalRecord(9, bytes("second")));
+        }
+        try(DeadLetterFile deadLetters = new DeadLetterFile(path)) {
+            deadLetters.append(new JournalRecord(12, bytes("third")));
+        }
+
+        List<JournalRecord> records = DeadLetterFile.read(path);
+
+        assertEquals(3, records.size());
+        assertEquals(9, records.get(1).getSequence());
+        assertEquals("third", string(records.get(2)));
+    }
+
+    @Test(expected = JournalFullException.class)
+    public void appendFailsWhenConsumerDoesNotCatchUpTest() throws Exception {
+
+        try(MappedJournal journal = new MappedJournal(path, CAPACITY)) {
+            byte[] payload = new byte[1000];
+            payload[0] = 1;
+            for(int i = 0; i < 5; i++) {
+                journal.append(payload, 10, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    // a quarter of the journal, tagged with its number
+    private static byte[] record(int number) {
+        byte[] payload = new byte[1000];
+        payload[0] = (byte) number;
+        return payload;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(JournalRecord record) {
+        return new String(record.getPayload(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,66 @@
+package com.kingfisher.payment.api.metrics;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ConnectionHoldTimeDataSourceTest {
+
+    private static final String ENDPOINT = "POST /session/charge/{orderId}";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @After
+    public void tearDown() {
+        RequestEndpoint.clear();
+    }
+
+    @Test
+    public void recordsHoldTimePerEndpointTest() throws Exception {
+
+        Connection connection = mock(Connection.class);
+        DataSource target = mock(DataSource.class);
+        given(target.getConnection()).willReturn(connection);
+
+        ConnectionHoldTimeDataSource dataSource = new ConnectionHoldTimeDataSource(target, () -> registry);
+
+        RequestEndpoint.set(ENDPOINT);
+        Connection held = dataSource.getConnection();
+        held.close();
+        held.close();
+
+        verify(connection, times(2)).close();
+        Timer timer = registry.find(ConnectionHoldTimeDataSource.METRIC_NAME).tags("endpoint", ENDPOINT).timer();
+        assertEquals(1, timer.count());
+    }
+
+    @Test
+    public void endpointIsPropagatedToExecutorTest() throws Exception {
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            RequestEndpoint.set(ENDPOINT);
+            String endpoint = CompletableFuture.supplyAsync(RequestEndpoint::get, RequestEndpoint.propagating(executor)).get();
+            String afterTask = CompletableFuture.supplyAsync(RequestEndpoint::get, executor).get();
+
+            assertEquals(ENDPOINT, endpoint);
+            assertEquals(RequestEndpoint.NONE, afterTask);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
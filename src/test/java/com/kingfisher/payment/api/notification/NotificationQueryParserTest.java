@@ -0,0 +1,166 @@
+package com.kingfisher.payment.api.notification;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationQueryParserTest {
+
+    static final String QUERY = "transactionId=1514764800000-42&longId=5a4f8b1e2d3c4b5a6f7e8d9c&shortId=01234-56789" +
+            "&entity=payment&statusCode=charged&reasonCode=debited&interactionCode=PROCEED&interactionReason=OK" +
+            "&resultCode=00000.11.000&resultInfo=Approved+by+PSP&notificationId=1234567890" +
+            "&timestamp=2018-01-15T10%3A23%3A45.123%2B01%3A00&previousStatusCode=pending&previousReasonCode=debit_requested" +
+            "&network=VISA&amount=19.99&currency=GBP&reference=Order+o2314i91";
+
+    private final NotificationQueryParser parser = new NotificationQueryParser();
+
+    @Test
+    public void parsesNotificationTest() {
+
+        NotificationEvent event = parser.parse(QUERY);
+
+        assertNull(parser.missingParameter());
+        assertEquals("1514764800000-42", event.getTransactionId());
+        assertEquals("5a4f8b1e2d3c4b5a6f7e8d9c", event.getLongId());
+        assertEquals("1234567890", event.getNotificationId());
+        assertEquals("payment", event.getEntity());
+        assertEquals("00000.11.000", event.getResultCode());
+        assertEquals("GBP", event.getCurrency());
+        assertEquals(199900, event.getAmount());
+        assertEquals(DateTime.parse("2018-01-15T10:23:45.123+01:00").getMillis(), event.getTimestamp());
+
+        // known codes are the enum's strings
+        assertSame(StatusCode.CHARGED.getCode(), event.getStatusCode());
+        assertSame(StatusCode.PENDING.getCode(), event.getPreviousStatusCode());
+        assertSame(ReasonCode.DEBITED.getCode(), event.getReasonCode());
+        assertSame(ReasonCode.DEBIT_REQUESTED.getCode(), event.getPreviousReasonCode());
+        assertSame(InteractionCode.PROCEED.getCode(), event.getInteractionCode());
+    }
+
+    @Test
+    public void unknownCodesArePassedOnTest() {
+
+        NotificationEvent event = parser.parse(QUERY.replace("reasonCode=debited", "reasonCode=some_new_reason"));
+
+        assertEquals("some_new_reason", event.getReasonCode());
+    }
+
+    @Test
+    public void reportsFirstMissingRequiredParameterTest() {
+
+        parser.parse(QUERY.replace("&shortId=01234-56789", "").replace("&resultInfo=Approved+by+PSP", ""));
+        assertEquals("shortId", parser.missingParameter());
+
+        parser.parse(QUERY.replace("timestamp=2018-01-15T10%3A23%3A45.123%2B01%3A00", "timestamp="));
+        assertEquals("timestamp", parser.missingParameter());
+
+        parser.parse(null);
+        assertEquals("transactionId", parser.missingParameter());
+    }
+
+    @Test
+    public void idsWithoutTextAreMissingTest() {
+
+        parser.parse(QUERY.replace("longId=5a4f8b1e2d3c4b5a6f7e8d9c", "longId=+"));
+        assertEquals("longId", parser.missingParameter());
+
+        parser.parse(QUERY.replace("notificationId=1234567890", "notificationId="));
+        assertEquals("notificationId", parser.missingParameter());
+
+        // others may be empty, as with @RequestParam
+        parser.parse(QUERY.replace("resultInfo=Approved+by+PSP", "resultInfo="));
+        assertNull(parser.missingParameter());
+    }
+
+    @Test
+    public void validatesRetryParametersTest() {
+
+        parser.parse(QUERY + "&retryAfter=2018-01-15T11%3A23%3A45Z&autoRetryAfter=2018-01-15T12%3A23%3A45.000%2B01%3A00&rejectionCount=-2");
+        parser.parse(QUERY + "&retryAfter=&rejectionCount=");
+        parser.parse(QUERY + "&rejectionCount=%2B2147483647");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidRetryAfterTest() {
+        parser.parse(QUERY + "&retryAfter=tomorrow");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidAutoRetryAfterTest() {
+        parser.parse(QUERY + "&autoRetryAfter=2018-13-15T10%3A23%3A45Z");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidRejectionCountTest() {
+        parser.parse(QUERY + "&rejectionCount=2.5");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRejectionCountOutOfRangeTest() {
+        parser.parse(QUERY + "&rejectionCount=2147483648");
+    }
+
+    @Test
+    public void reusedEventKeepsNothingOfThePreviousNotificationTest() {
+
+        parser.parse(QUERY);
+        NotificationEvent event = parser.parse(QUERY.replace("&amount=19.99&currency=GBP", ""));
+
+        assertFalse(event.hasAmount());
+        assertNull(event.getCurrency());
+    }
+
+    @Test
+    public void parsesTimestampFormsTest() {
+
+        assertEquals(DateTime.parse("2018-01-15T10:23:45Z").getMillis(), timestamp("2018-01-15T10%3A23%3A45Z"));
+        assertEquals(DateTime.parse("2018-01-15T10:23:45.1-05:30").getMillis(), timestamp("2018-01-15T10%3A23%3A45.1-0530"));
+        assertEquals(DateTime.parse("2016-02-29T23:59:59.999+02:00").getMillis(), timestamp("2016-02-29T23%3A59%3A59.999%2B02"));
+        // not the fast path's form, parsed by Joda
+        assertEquals(DateTime.parse("2018-01-15T10:23Z").getMillis(), timestamp("2018-01-15T10%3A23Z"));
+        assertEquals(DateTime.parse("2018-01-15T10:23:45.123Z").getMillis(), timestamp("2018-01-15T10%3A23%3A45.123"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidTimestampTest() {
+        timestamp("2018-02-30T10%3A23%3A45Z");
+    }
+
+    @Test
+    public void parsesAmountFormsTest() {
+
+        assertEquals(100000, amount("10"));
+        assertEquals(-5000, amount("-0.5"));
+        assertEquals(12345, amount("1.2345"));
+        // beyond the fast path
+        assertEquals(12346, amount("1.23456"));
+        assertEquals(1500000, amount("1.5E2"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidAmountTest() {
+        amount("19,99");
+    }
+
+    @Test
+    public void decodesNonAsciiValuesTest() {
+
+        NotificationEvent event = parser.parse(QUERY.replace("longId=5a4f8b1e2d3c4b5a6f7e8d9c", "longId=caf%C3%A9"));
+
+        assertEquals("café", event.getLongId());
+        assertTrue(event.hasAmount());
+    }
+
+    private long timestamp(String value) {
+        return parser.parse(QUERY.replace("2018-01-15T10%3A23%3A45.123%2B01%3A00", value)).getTimestamp();
+    }
+
+    private long amount(String value) {
+        return parser.parse(QUERY.replace("amount=19.99", "amount=" + value)).getAmount();
+    }
+}
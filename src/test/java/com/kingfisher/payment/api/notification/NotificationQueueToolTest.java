@@ -0,0 +1,104 @@
+package com.kingfisher.payment.api.notification;
+
+import com.kingfisher.payment.api.journal.JournalRecord;
+import com.kingfisher.payment.api.journal.MappedJournal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationQueueToolTest {
+
+    private static final int CAPACITY = 4096;
+
+    private Path queue;
+    private Path target;
+
+    @Before
+    public void setUp() throws IOException {
+        queue = Files.createTempFile("notifications", ".journal");
+        target = Files.createTempFile("notifications-target", ".journal");
+        Files.delete(queue);
+        Files.delete(target);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(queue);
+        Files.deleteIfExists(target);
+    }
+
+    @Test
+    public void encodeDecodeTest() {
+
+        NotificationEvent decoded = NotificationEventCodec.decode(NotificationEventCodec.encode(event("n1", "CHARGED")));
+
+        assertEquals("n1", decoded.getNotificationId());
+        assertEquals("1514764800000-o2314i91-1011021666", decoded.getTransactionId());
+        assertEquals("longId", decoded.getLongId());
+        assertEquals("CHARGED", decoded.getStatusCode());
+        assertEquals(null, decoded.getReasonCode());
+        assertEquals(1514764800000L, decoded.getTimestamp());
+        assertEquals(1514764801000L, decoded.getReceivedAt());
+    }
+
+    @Test
+    public void listLeavesQueueUnchangedTest() throws Exception {
+
+        try(MappedJournal journal = new MappedJournal(queue, CAPACITY)) {
+            journal.append(NotificationEventCodec.encode(event("n1", "PENDING")), 1, TimeUnit.SECONDS);
+            journal.append(NotificationEventCodec.encode(event("n2", "CHARGED")), 1, TimeUnit.SECONDS);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(2, NotificationQueueTool.list(queue, new PrintStream(out, true, "UTF-8")));
+
+        String listed = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(listed.contains("notificationId=n1") && listed.contains("statusCode=CHARGED"));
+
+        try(MappedJournal journal = new MappedJournal(queue, CAPACITY)) {
+            assertEquals(2, journal.getPendingCount());
+        }
+    }
+
+    @Test
+    public void replayMovesPendingNotificationsTest() throws Exception {
+
+        try(MappedJournal journal = new MappedJournal(queue, CAPACITY)) {
+            long first = journal.append(NotificationEventCodec.encode(event("n1", "PENDING")), 1, TimeUnit.SECONDS);
+            journal.append(NotificationEventCodec.encode(event("n2", "CHARGED")), 1, TimeUnit.SECONDS);
+            journal.checkpoint(first);
+        }
+
+        assertEquals(1, NotificationQueueTool.replay(queue, target));
+
+        try(MappedJournal source = new MappedJournal(queue, CAPACITY); MappedJournal destination = new MappedJournal(target, CAPACITY)) {
+            assertEquals(0, source.getPendingCount());
+            List<JournalRecord> moved = destination.readPending(Integer.MAX_VALUE);
+            assertEquals(1, moved.size());
+            assertEquals("n2", NotificationEventCodec.decode(moved.get(0).getPayload()).getNotificationId());
+        }
+    }
+
+    private static NotificationEvent event(String notificationId, String statusCode) {
+        NotificationEvent event = new NotificationEvent();
+        event.setNotificationId(notificationId);
+        event.setTransactionId("1514764800000-o2314i91-1011021666");
+        event.setLongId("longId");
+        event.setStatusCode(statusCode);
+        event.setTimestamp(1514764800000L);
+        event.setReceivedAt(1514764801000L);
+        return event;
+    }
+}
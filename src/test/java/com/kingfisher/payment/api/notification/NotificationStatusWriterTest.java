@@ -0,0 +1,182 @@
+package com.kingfisher.payment.api.notification;
+
+import com.kingfisher.payment.api.config.PropertiesConfig;
+import com.kingfisher.payment.api.database.model.TransactionLogInfo;
+import com.kingfisher.payment.api.database.routing.RecentWrites;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {NotificationStatusWriter.class, PropertiesConfig.class})
+public class NotificationStatusWriterTest {
+
+    private static final String STALE_NOTIFICATION = "stale";
+    private static final String REJECTED_NOTIFICATION = "rejected";
+
+    @MockBean
+    private JdbcTemplate jdbcTemplate;
+    @MockBean
+    private DataSource dataSource;
+    @MockBean
+    private PlatformTransactionManager transactionManager;
+    @MockBean
+    private RecentWrites recentWrites;
+
+    @Autowired
+    private NotificationStatusWriter statusWriter;
+
+    @Before
+    public void before() throws Exception {
+
+        given(dataSource.getConnection()).willReturn(mock(Connection.class));
+
+        // every status applies, except the stale notification's which finds a later status; the database refuses the
+        // rejected notification's and with it the batch
+        given(jdbcTemplate.batchUpdate(startsWith("UPDATE transaction_log_info"), anyList())).willAnswer(invocation -> {
+            List<Object[]> statuses = invocation.getArgument(1);
+            int[] counts = new int[statuses.size()];
+            for(int index = 0; index < counts.length; index++) {
+                if(REJECTED_NOTIFICATION.equals(statuses.get(index)[0])) {
+                    throw new DataIntegrityViolationException("value too long for type character varying(255)");
+                }
+                counts[index] = STALE_NOTIFICATION.equals(statuses.get(index)[0]) ? 0 : 1;
+            }
+            return counts;
+        });
+    }
+
+    @Test
+    public void concurrentUpdatesShareCommitsTest() throws Exception {
+
+        List<CompletableFuture<Boolean>> written = new ArrayList<>();
+        for(int notification = 0; notification < 20; notification++) {
+            written.add(statusWriter.write(event("n" + notification, "CHARGED"), log(notification)));
+        }
+
+        for(CompletableFuture<Boolean> future : written) {
+            assertTrue(future.get(5, TimeUnit.SECONDS));
+        }
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> batches = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, atLeast(1)).batchUpdate(startsWith("UPDATE transaction_log_info"), batches.capture());
+
+        assertEquals(20, batches.getAllValues().stream().mapToInt(List::size).sum());
+        // written within max-delay of each other, they share commits
+        assertTrue(batches.getAllValues().size() < 20);
+    }
+
+    @Test
+    public void staleAndUnknownNotificationsAreAuditedOnlyTest() throws Exception {
+
+        CompletableFuture<Boolean> stale = statusWriter.write(event("n1", STALE_NOTIFICATION), log(1));
+        CompletableFuture<Boolean> unknown = statusWriter.write(event("n2", "CHARGED"), null);
+
+        assertFalse(stale.get(5, TimeUnit.SECONDS));
+        assertFalse(unknown.get(5, TimeUnit.SECONDS));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> audits = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, atLeast(1)).batchUpdate(startsWith("INSERT INTO optile_notification_audit"), audits.capture());
+
+        List<String> audited = new ArrayList<>();
+        audits.getAllValues().forEach(batch -> batch.forEach(row -> audited.add((String) row[0])));
+        assertTrue(audited.containsAll(Arrays.asList("n1", "n2")));
+    }
+
+    @Test
+    public void rejectedUpdateFailsOnlyItsNotificationTest() throws Exception {
+
+        CompletableFuture<Boolean> applied = statusWriter.write(event("n1", "CHARGED"), log(1));
+        CompletableFuture<Boolean> rejected = statusWriter.write(event("n2", REJECTED_NOTIFICATION), log(2));
+        CompletableFuture<Boolean> unknown = statusWriter.write(event("n3", "CHARGED"), null);
+
+        assertTrue(applied.get(5, TimeUnit.SECONDS));
+        assertFalse(unknown.get(5, TimeUnit.SECONDS));
+
+        try {
+            rejected.get(5, TimeUnit.SECONDS);
+            fail("Rejected status was written");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof DataIntegrityViolationException);
+        }
+    }
+
+    @Test
+    public void auditRowFollowsCopyCsvTest() {
+
+        NotificationEvent event = new NotificationEvent();
+        event.setNotificationId("n\"1");
+        event.setTransactionId("transaction,1");
+        event.setStatusCode("charged");
+        event.setReasonCode("");
+        event.setPreviousStatusCode("line\nbreak \\.");
+        event.setTimestamp(1);
+        event.setReceivedAt(2);
+
+        StringBuilder rows = new StringBuilder();
+        NotificationStatusWriter.auditRow(event, true, rows);
+        NotificationStatusWriter.auditRow(event, false, rows);
+
+        // quotes doubled, separators and line breaks inside quotes, null unquoted and empty, the empty string quoted;
+        // a backslash is no escape in csv and a quoted \. no end of data
+        String row = "\"n\"\"1\",\"transaction,1\",,\"charged\",\"\",\"line\nbreak \\.\",1,2,";
+        assertEquals(row + "true\n" + row + "false\n", rows.toString());
+    }
+
+    @Test
+    public void csvQuotesEveryValueButNullTest() {
+
+        assertEquals("", NotificationStatusWriter.csv(new StringBuilder(), null).toString());
+        assertEquals("\"\"", NotificationStatusWriter.csv(new StringBuilder(), "").toString());
+        assertEquals("\"\"\"\"\"\"", NotificationStatusWriter.csv(new StringBuilder(), "\"\"").toString());
+        assertEquals("\"NULL\"", NotificationStatusWriter.csv(new StringBuilder(), "NULL").toString());
+    }
+
+    private static NotificationEvent event(String notificationId, String statusCode) {
+        NotificationEvent event = new NotificationEvent();
+        event.setNotificationId(notificationId);
+        event.setTransactionId("transaction-" + notificationId);
+        event.setLongId("longId-" + notificationId);
+        event.setStatusCode(statusCode);
+        event.setTimestamp(System.currentTimeMillis());
+        event.setReceivedAt(System.currentTimeMillis());
+        return event;
+    }
+
+    private static TransactionLogInfo log(long id) {
+        TransactionLogInfo transactionLogInfo = new TransactionLogInfo();
+        transactionLogInfo.setId(id + 1);
+        transactionLogInfo.setTimestamp(System.currentTimeMillis());
+        return transactionLogInfo;
+    }
+}
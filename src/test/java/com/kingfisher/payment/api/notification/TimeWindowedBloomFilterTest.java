@@ -0,0 +1,59 @@
+package com.kingfisher.payment.api.notification;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimeWindowedBloomFilterTest {
+
+    private static final long WINDOW = 1000;
+
+    private final AtomicLong now = new AtomicLong(1514764800000L);
+    // 10 bits per id for 100k ids per generation
+    private final TimeWindowedBloomFilter filter = new TimeWindowedBloomFilter(2 * 125000, WINDOW, now::get);
+
+    @Test
+    public void putIdsAreFoundForOneToTwoWindowsTest() {
+
+        filter.put("n1");
+        assertTrue(filter.mightContain("n1"));
+
+        now.addAndGet(WINDOW);
+        assertTrue(filter.mightContain("n1"));
+
+        now.addAndGet(WINDOW);
+        assertFalse(filter.mightContain("n1"));
+    }
+
+    @Test
+    public void idleWindowsDropEverythingTest() {
+
+        filter.put("n1");
+
+        now.addAndGet(2 * WINDOW);
+        assertFalse(filter.mightContain("n1"));
+    }
+
+    @Test
+    public void falsePositivesStayNearTheEstimateTest() {
+
+        for(int id = 0; id < 100000; id++) {
+            filter.put("notification-" + id);
+        }
+
+        int falsePositives = 0;
+        for(int id = 100000; id < 200000; id++) {
+            if(filter.mightContain("notification-" + id)) {
+                falsePositives++;
+            }
+        }
+
+        double estimate = filter.falsePositiveProbability();
+        assertEquals(0.01, estimate, 0.005);
+        assertEquals(estimate, falsePositives / 100000.0, 0.005);
+    }
+}
@@ -0,0 +1,101 @@
+package com.kingfisher.payment.api.optile.circuit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(5000);
+
+    private final AtomicLong clock = new AtomicLong();
+    private final List<CircuitBreaker.State> transitions = new ArrayList<>();
+    private CircuitBreaker circuitBreaker;
+
+    @Before
+    public void before() {
+        CircuitBreakerConfig config = new CircuitBreakerConfig()
+                .slidingWindowSize(10)
+                .minimumNumberOfCalls(10)
+                .failureRateThreshold(50)
+                .slowCallRateThreshold(80)
+                .slowCallDurationMillis(3000)
+                .waitDurationInOpenStateMillis(1000)
+                .permittedCallsInHalfOpenState(2);
+
+        circuitBreaker = new CircuitBreaker("LISTS", config, (cb, from, to) -> transitions.add(to), clock::get);
+    }
+
+    @Test
+    public void staysClosedBelowFailureRateTest() {
+        record(6, false, FAST);
+        record(4, true, FAST);
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void opensOnFailureRateTest() {
+        record(5, false, FAST);
+        record(5, true, FAST);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void opensOnSlowCallRateTest() {
+        record(2, false, FAST);
+        record(8, false, SLOW);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void halfOpenProbesCloseCircuitTest() {
+        record(10, true, FAST);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+
+        circuitBreaker.onResult(FAST, false);
+        circuitBreaker.onResult(FAST, false);
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(3, transitions.size());
+    }
+
+    @Test
+    public void failedHalfOpenProbeReopensCircuitTest() {
+        record(10, true, FAST);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.onResult(FAST, true);
+        circuitBreaker.onResult(FAST, false);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+    }
+
+    private void record(int calls, boolean failed, long duration) {
+        for(int i = 0; i < calls; i++) {
+            assertTrue(circuitBreaker.tryAcquirePermission());
+            circuitBreaker.onResult(duration, failed);
+        }
+    }
+}
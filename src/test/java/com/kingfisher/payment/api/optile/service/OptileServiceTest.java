@@ -15,6 +15,9 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
@@ -36,30 +39,46 @@ public class OptileServiceTest {
 
     @Test()
     public void postListRequestTest() {
-        given(customRestTemplate.execute(eq(NetworkList.class), any(String.class), any(HttpMethod.class), any(HttpEntity.class))).willReturn(ResponseEntity.ok(new NetworkList()));
+        given(customRestTemplate.execute(eq(OptileOperation.LISTS), eq(NetworkList.class), any(String.class), any(HttpMethod.class), any(HttpEntity.class))).willReturn(ResponseEntity.ok(new NetworkList()));
         NetworkList list = optileService.postListRequest(new Transaction());
-        verify(customRestTemplate, times(1)).execute(eq(NetworkList.class), any(String.class), any(HttpMethod.class), any(HttpEntity.class));
+        verify(customRestTemplate, times(1)).execute(eq(OptileOperation.LISTS), eq(NetworkList.class), any(String.class), any(HttpMethod.class), any(HttpEntity.class));
     }
 
     @Test()
     public void closePaymentChargeTest() {
-        given(customRestTemplate.execute(eq(Payout.class), any(String.class), any(HttpMethod.class), any(HttpEntity.class))).willReturn(ResponseEntity.ok(new Payout()));
+        given(customRestTemplate.execute(eq(OptileOperation.CLOSING), eq(Payout.class), any(String.class), any(HttpMethod.class), any(HttpEntity.class))).willReturn(ResponseEntity.ok(new Payout()));
         Payout chargePayout = optileService.closePaymentCharge(CHARGE_ID, new Transaction());
-        verify(customRestTemplate, times(1)).execute(eq(Payout.class), any(String.class), any(HttpMethod.class), any(HttpEntity.class));
+        verify(customRestTemplate, times(1)).execute(eq(OptileOperation.CLOSING), eq(Payout.class), any(String.class), any(HttpMethod.class), any(HttpEntity.class));
     }
 
     @Test()
     public void chargePaymentTest() {
-        given(customRestTemplate.execute(eq(Payout.class), any(String.class), any(HttpMethod.class), any(HttpEntity.class))).willReturn(ResponseEntity.ok(new Payout()));
+        given(customRestTemplate.execute(eq(OptileOperation.CHARGE), eq(Payout.class), any(String.class), any(HttpMethod.class), any(HttpEntity.class))).willReturn(ResponseEntity.ok(new Payout()));
         Payout chargePayout = optileService.chargePayment(LIST_ID, "{}");
-        verify(customRestTemplate, times(1)).execute(eq(Payout.class), any(String.class), any(HttpMethod.class), any(HttpEntity.class));
+        verify(customRestTemplate, times(1)).execute(eq(OptileOperation.CHARGE), eq(Payout.class), any(String.class), any(HttpMethod.class), any(HttpEntity.class));
     }
 
     @Test()
     public void refundPaymentTest() {
-        given(customRestTemplate.execute(eq(Payout.class), any(String.class), any(HttpMethod.class), any(HttpEntity.class))).willReturn(ResponseEntity.ok(new Payout()));
+        given(customRestTemplate.execute(eq(OptileOperation.PAYOUT), eq(Payout.class), any(String.class), any(HttpMethod.class), any(HttpEntity.class))).willReturn(ResponseEntity.ok(new Payout()));
         Payout refundPayment = optileService.refundPayment(LIST_ID, new Operation());
-        verify(customRestTemplate, times(1)).execute(eq(Payout.class), any(String.class), any(HttpMethod.class), any(HttpEntity.class));
+        verify(customRestTemplate, times(1)).execute(eq(OptileOperation.PAYOUT), eq(Payout.class), any(String.class), any(HttpMethod.class), any(HttpEntity.class));
+    }
+
+    @Test()
+    public void postListRequestAsyncTest() {
+        given(customRestTemplate.executeAsync(eq(OptileOperation.LISTS), eq(NetworkList.class), any(String.class), any(HttpMethod.class), any(HttpEntity.class))).willReturn(CompletableFuture.completedFuture(ResponseEntity.ok(new NetworkList())));
+        NetworkList list = optileService.postListRequestAsync(new Transaction()).join();
+        assertNotNull(list);
+        verify(customRestTemplate, times(1)).executeAsync(eq(OptileOperation.LISTS), eq(NetworkList.class), any(String.class), any(HttpMethod.class), any(HttpEntity.class));
+    }
+
+    @Test()
+    public void chargePaymentAsyncTest() {
+        given(customRestTemplate.executeAsync(eq(OptileOperation.CHARGE), eq(Payout.class), any(String.class), any(HttpMethod.class), any(HttpEntity.class))).willReturn(CompletableFuture.completedFuture(ResponseEntity.ok(new Payout())));
+        Payout chargePayout = optileService.chargePaymentAsync(LIST_ID, "{}").join();
+        assertNotNull(chargePayout);
+        verify(customRestTemplate, times(1)).executeAsync(eq(OptileOperation.CHARGE), eq(Payout.class), any(String.class), any(HttpMethod.class), any(HttpEntity.class));
     }
 
 }
\ No newline at end of file
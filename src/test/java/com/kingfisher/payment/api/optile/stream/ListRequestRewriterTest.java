@@ -0,0 +1,119 @@
+package com.kingfisher.payment.api.optile.stream;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kingfisher.payment.api.error.InputDTOValidationException;
+import com.kingfisher.payment.api.optile.model.Registration;
+import org.junit.Test;
+import org.springframework.util.StreamUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ListRequestRewriterTest {
+
+    private static final String NOTIFICATION_URL = "https://127.0.0.1:8080/notification";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ListRequestRewriter rewriter = new ListRequestRewriter("PURE_NATIVE", false, NOTIFICATION_URL,
+            () -> "1dbz2vm2x4kg0");
+
+    @Test
+    public void rewriteListRequestTest() throws Exception {
+
+        byte[] input = StreamUtils.copyToByteArray(this.getClass().getClassLoader().getResourceAsStream("expectedJson/optileListRequestInput.json"));
+
+        Registration registration = new Registration();
+        registration.setId("optileCustomerId");
+        registration.setPassword("password1");
+
+        RewrittenListRequest request = rewriter.rewrite(input, number -> Optional.of(registration));
+        JsonNode body = objectMapper.readTree(request.getBody());
+
+        assertEquals("o2314i91", request.getOrderId());
+        assertEquals("1011021666", request.getCustomerNumber());
+        assertEquals("1dbz2vm2x4kg0", request.getTransactionId());
+
+        assertFalse(body.has("orderId"));
+        assertEquals("PURE_NATIVE", body.get("integration").asText());
+        assertEquals("1dbz2vm2x4kg0", body.get("transactionId").asText());
+        assertFalse(body.get("updateOnly").asBoolean());
+        assertEquals(NOTIFICATION_URL, body.get("callback").get("notificationUrl").asText());
+        assertEquals("optileCustomerId", body.get("customer").get("registration").get("id").asText());
+        assertEquals("password1", body.get("customer").get("registration").get("password").asText());
+        assertEquals("GBP", body.get("payment").get("currency").asText());
+        assertEquals("DEFERRED", body.get("preselection").get("deferral").asText());
+    }
+
+    @Test
+    public void rewriteWithoutRegistrationTest() throws Exception {
+
+        String input = "{\"orderId\":\"o1\",\"country\":\"GB\",\"customer\":{\"number\":\"c1\"},"
+                + "\"payment\":{\"amount\":1,\"currency\":\"GBP\",\"reference\":\"r\"},"
+                + "\"callback\":{\"returnUrl\":\"r\",\"cancelUrl\":\"c\"}}";
+
+        JsonNode body = objectMapper.readTree(rewriter.rewrite(input.getBytes(StandardCharsets.UTF_8), number -> Optional.empty()).getBody());
+
+        assertFalse(body.get("customer").has("registration"));
+    }
+
+    @Test
+    public void rewriteMissingMandatoryFieldsTest() throws Exception {
+        try {
+            rewriter.rewrite("{}".getBytes(StandardCharsets.UTF_8), number -> Optional.empty());
+            fail();
+        } catch (InputDTOValidationException e) {
+            assertEquals("callback must not be null, country must not be null, customer must not be null, "
+                    + "orderId must not be empty, orderId must not be null, payment must not be null", e.getMessage());
+        }
+    }
+
+    @Test
+    public void rewriteDisallowedFieldsTest() throws Exception {
+
+        String input = "{\"orderId\":\"o1\",\"country\":\"GB\",\"transactionId\":\"t1\","
+                + "\"customer\":{\"number\":\"c1\",\"registration\":{\"id\":\"x\"}},"
+                + "\"payment\":{\"amount\":1,\"currency\":\"GBP\",\"reference\":\"r\"},"
+                + "\"callback\":{\"returnUrl\":\"r\",\"cancelUrl\":\"c\",\"notificationUrl\":\"n\"}}";
+
+        try {
+            rewriter.rewrite(input.getBytes(StandardCharsets.UTF_8), number -> Optional.empty());
+            fail();
+        } catch (InputDTOValidationException e) {
+            assertTrue(e.getMessage().contains("transactionId field is not allowed"));
+            assertTrue(e.getMessage().contains("customer.registration field is not allowed"));
+            assertTrue(e.getMessage().contains("callback.notificationUrl field is not allowed"));
+        }
+    }
+
+    @Test
+    public void rewriteNestedMandatoryFieldsTest() throws Exception {
+
+        String input = "{\"orderId\":\"\",\"country\":\"GB\",\"customer\":{\"number\":\"c1\"},"
+                + "\"payment\":{\"amount\":1,\"currency\":\"GBP\"},\"products\":[{\"name\":\"p\"},{\"amount\":1.0}],"
+                + "\"callback\":{\"returnUrl\":\"r\",\"cancelUrl\":\"c\"}}";
+
+        try {
+            rewriter.rewrite(input.getBytes(StandardCharsets.UTF_8), number -> Optional.empty());
+            fail();
+        } catch (InputDTOValidationException e) {
+            assertEquals("orderId must not be empty, payment.reference must not be null, products[1].name must not be null", e.getMessage());
+        }
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void rewriteValueOfWrongTypeTest() throws Exception {
+
+        String input = "{\"orderId\":\"o1\",\"country\":\"GB\",\"customer\":{\"number\":\"c1\"},"
+                + "\"payment\":{\"amount\":\"nineteen\",\"currency\":\"GBP\",\"reference\":\"r\"},"
+                + "\"callback\":{\"returnUrl\":\"r\",\"cancelUrl\":\"c\"}}";
+
+        rewriter.rewrite(input.getBytes(StandardCharsets.UTF_8), number -> Optional.empty());
+    }
+}
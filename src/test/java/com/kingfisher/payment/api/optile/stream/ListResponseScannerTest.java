@@ -0,0 +1,43 @@
+package com.kingfisher.payment.api.optile.stream;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+import org.springframework.util.StreamUtils;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class ListResponseScannerTest {
+
+    @Test
+    public void scanListResponseTest() throws Exception {
+
+        byte[] output = StreamUtils.copyToByteArray(this.getClass().getClassLoader().getResourceAsStream("expectedJson/optileListRequestOutput.json"));
+
+        ListResponseSummary summary = ListResponseScanner.scan(output);
+
+        assertEquals("da1a3771-0140-4104-9d31-e5cabe8b63e7", summary.getTransactionId());
+        assertEquals("5a43bba6148b512dfef551a4lav1gcb6roq13eb4225k899gn3", summary.getLongId());
+        assertEquals(new DateTime(2017, 12, 27, 15, 26, 30, 682, DateTimeZone.UTC).getMillis(), summary.getTimestamp());
+    }
+
+    @Test
+    public void scanIgnoresFieldOrderTest() {
+
+        String response = "{\"networks\":{\"applicable\":[{\"code\":\"VISA\",\"identification\":{\"longId\":\"nested\"}}]},"
+                + "\"identification\":{\"shortId\":\"1\",\"longId\":\"L1\",\"transactionId\":\"T1\"},"
+                + "\"timestamp\":\"2017-12-27T15:26:30.682+0000\"}";
+
+        ListResponseSummary summary = ListResponseScanner.scan(response.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("T1", summary.getTransactionId());
+        assertEquals("L1", summary.getLongId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void scanRejectsResponseWithoutIdentificationTest() {
+        ListResponseScanner.scan("{\"timestamp\":\"2017-12-27T15:26:30.682+0000\"}".getBytes(StandardCharsets.UTF_8));
+    }
+}